@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.bench;
+
+import java.lang.management.*;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.tree.ParseTreeProperty;
+
+import dijkstra.codegen.CodeGenVisitor;
+import dijkstra.lexparse.DijkstraParser;
+import dijkstra.lexparse.DijkstraParser.DijkstraTextContext;
+import dijkstra.semantic.*;
+import dijkstra.symbol.*;
+import dijkstra.utility.*;
+
+/**
+ * Compiles one large generated program the way the compiler used to, with the
+ * parse tree annotations kept in {@link ParseTreeProperty} hash maps and untrimmed
+ * child lists, and the way it does now, with the array backed {@link NodeProperty}
+ * and the tree from {@link ParallelParser}. Reports the time of the semantic
+ * passes and of code generation, and the live heap, measured after a full
+ * collection, once the tree is parsed, once it is annotated and checked, and at
+ * the peak of the measured phases as seen by the heap pools, which also counts
+ * garbage that was not yet collected.
+ * <p>
+ * Usage: java dijkstra.bench.AnnotationBenchmark [lines [rounds]]; defaults are
+ * 1000000 lines and 3 rounds. Run with a large heap, e.g. -Xmx8g.
+ */
+public class AnnotationBenchmark
+{
+	public static void main(String[] args)
+	{
+		final long lines = args.length > 0 ? Long.parseLong(args[0]) : 1000000;
+		final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		final String source = ProgramGenerator.generateLines(lines);
+		System.out.println("Source: " + lines + " lines, " + source.length() / (1024 * 1024) + " MB");
+
+		for (int round = 0; round < rounds; round++) {
+			measure("before", source, false);
+			measure("after ", source, true);
+		}
+	}
+
+	private static void measure(String name, String source, boolean compact)
+	{
+		final long baseline = liveHeap();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+		final DijkstraTextContext tree = compact ? PipelineBenchmark.parse(source) : parseUntrimmed(source);
+		final long parsed = liveHeap() - baseline;
+		final long start = System.nanoTime();
+		final DijkstraSymbolVisitor visitor = new DijkstraSymbolVisitor(new CompilationContext());
+		if (!compact) {
+			visitor.symbols = new ParseTreeProperty<Symbol>();
+			visitor.functions = new ParseTreeProperty<Symbol>();
+			visitor.arrays = new ParseTreeProperty<Symbol>();
+			visitor.types = new ParseTreeProperty<DijkstraType>();
+		}
+		tree.accept(visitor);
+		final DjikstraTypeResolutionVisitor resolver = PipelineBenchmark.resolve(tree, visitor);
+		final DijkstraTypeCheckVisitor checker = new DijkstraTypeCheckVisitor(resolver);
+		tree.accept(checker);
+		final long checked = System.nanoTime();
+		final long annotated = liveHeap() - baseline;
+		final long codegen = System.nanoTime();
+		final byte[] code = tree.accept(new CodeGenVisitor(checker));
+		final long end = System.nanoTime();
+		final long peak = peakHeapUsed() - baseline;
+		System.out.printf("%s  semantic %8.1f ms  codegen %8.1f ms  live heap: tree %6d MB, annotated %6d MB"
+				+ "  peak heap %6d MB  (%d bytes of code)%n",
+				name, (checked - start) / 1e6, (end - codegen) / 1e6, parsed / (1024 * 1024), 
+				annotated / (1024 * 1024), peak / (1024 * 1024), code.length);
+	}
+	
+	private static DijkstraTextContext parseUntrimmed(String source)
+	{
+		final DijkstraParser parser = DijkstraFactory.makeParser(new ANTLRInputStream(source));
+		parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+		return parser.dijkstraText();
+	}
+
+	/**
+	 * @return the heap in use after a full collection
+	 */
+	private static long liveHeap()
+	{
+		System.gc();
+		System.gc();
+		long used = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				used += pool.getUsage().getUsed();
+			}
+		}
+		return used;
+	}
+
+	private static long peakHeapUsed()
+	{
+		long used = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				used += pool.getPeakUsage().getUsed();
+			}
+		}
+		return used;
+	}
+}
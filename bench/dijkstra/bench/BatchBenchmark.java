@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.bench;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Wall-clock time to compile a directory of programs from the command line,
+ * either with one java dijkstra.Dijkstra process per file, as before batch mode,
+ * or with one process given the directory. Each operation compiles every file
+ * once, starting the JVMs from the benchmark's java.home and class path. The
+ * files are copies of the sample programs.
+ * <p>
+ * Run as described in {@link PipelineBenchmark}, e.g.
+ * <pre>
+ * java -cp CLASSPATH org.openjdk.jmh.Main BatchBenchmark -p files=100
+ * </pre>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchBenchmark
+{
+	private static final String[] SAMPLES = {"fibonacci", "fibonacci_arrays", "fibonacci_recursive"};
+
+	@Param({"10", "100"})
+	public int files;
+
+	private Path sources;
+	private Path output;
+	private List<Path> inputs;
+
+	@Setup(Level.Trial)
+	public void copy() throws IOException
+	{
+		sources = Files.createTempDirectory("djk-batch");
+		output = Files.createTempDirectory("djk-classes");
+		inputs = new ArrayList<Path>();
+		for (int i = 0; i < files; i++) {
+			final String sample = SAMPLES[i % SAMPLES.length];
+			final Path input = sources.resolve(sample + "_" + i + ".djk");
+			Files.copy(Paths.get("SamplePrograms", sample + ".djk"), input);
+			inputs.add(input);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void delete() throws IOException
+	{
+		for (Path dir : new Path[] {sources, output}) {
+			try (Stream<Path> paths = Files.walk(dir)) {
+				paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+
+	@Benchmark
+	public void processPerFile() throws IOException, InterruptedException
+	{
+		for (Path input : inputs) {
+			compile(input);
+		}
+	}
+
+	@Benchmark
+	public void oneProcess() throws IOException, InterruptedException
+	{
+		compile(sources);
+	}
+
+	private void compile(Path source) throws IOException, InterruptedException
+	{
+		final String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+		final Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+				"dijkstra.Dijkstra", "-o", output.toString(), source.toString())
+				.redirectOutput(ProcessBuilder.Redirect.DISCARD)
+				.redirectError(ProcessBuilder.Redirect.INHERIT)
+				.start();
+		if (process.waitFor() != 0) {
+			throw new IllegalStateException("Compiling " + source + " failed");
+		}
+	}
+}
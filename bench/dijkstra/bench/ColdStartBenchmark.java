@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.bench;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import dijkstra.CompiledProgram;
+import dijkstra.Dijkstra;
+import dijkstra.utility.DfaCache;
+
+/**
+ * Latency of the first compile in a fresh JVM, with cold DFA caches and with
+ * caches loaded from a file written by {@link DfaCache#save(Path)}. Each fork
+ * measures exactly one compile, so the score is the cold-start time averaged
+ * over the forks. Loading the file is part of the measured time.
+ * <p>
+ * Write the cache first, e.g. java dijkstra.Dijkstra -dfa-cache dfa.cache
+ * SamplePrograms, then run as described in {@link PipelineBenchmark}. The file
+ * is taken from the dijkstra.dfaCache system property, default dfa.cache.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+@State(Scope.Benchmark)
+public class ColdStartBenchmark
+{
+	@Param({"cold", "cached"})
+	public String dfa;
+
+	@Param({"fibonacci", "fibonacci_arrays", "fibonacci_recursive"})
+	public String source;
+
+	private String text;
+	private Path cache;
+
+	@Setup(Level.Trial)
+	public void load() throws IOException
+	{
+		text = Dijkstra.readSource(new File("SamplePrograms", source + ".djk")).toString();
+		cache = Paths.get(System.getProperty("dijkstra.dfaCache", "dfa.cache"));
+		if (dfa.equals("cached") && !Files.exists(cache)) {
+			throw new FileNotFoundException(cache + ": write it with dijkstra.Dijkstra -dfa-cache");
+		}
+	}
+
+	@Benchmark
+	public CompiledProgram firstCompile() throws IOException
+	{
+		if (dfa.equals("cached")) {
+			DfaCache.load(cache);
+		}
+		return Dijkstra.compile(text, "djkcode");
+	}
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import dijkstra.lexparse.DijkstraParser.DijkstraTextContext;
+import dijkstra.symbol.*;
+import dijkstra.utility.CompilationContext;
+import dijkstra.utility.DijkstraFactory;
+import dijkstra.utility.IncrementalParser;
+
+/**
+ * Latency of parsing a large generated program again after a one character edit
+ * in the middle, from scratch against {@link IncrementalParser}, alone and
+ * followed by the symbol pass, which takes the untouched method bodies from a
+ * {@link BodyCache}. Each operation toggles the edit, so every parse sees a
+ * changed text. Run as described in {@link PipelineBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class EditBenchmark
+{
+	@Param({"10000", "100000"})
+	public int lines;
+
+	private char[][] versions;
+	private int version = 0;
+	private int at;
+	private IncrementalParser incremental;
+	private BodyCache cache;
+
+	@Setup(Level.Trial)
+	public void generate()
+	{
+		final String text = ProgramGenerator.generateLines(lines);
+		at = text.indexOf(" + ", text.length() / 2) + 3;
+		versions = new char[][] {text.toCharArray(),
+				(text.substring(0, at) + "1" + text.substring(at)).toCharArray()};
+		incremental = new IncrementalParser();
+		cache = new BodyCache();
+		ParallelSymbolAnalyzer.analyze(incremental.parse(versions[0], versions[0].length),
+				new CompilationContext(), cache);
+	}
+
+	@Benchmark
+	public DijkstraTextContext fromScratch()
+	{
+		final char[] text = next();
+		return DijkstraFactory.parse(DijkstraFactory.makeScanner(text, text.length));
+	}
+
+	@Benchmark
+	public DijkstraTextContext incremental()
+	{
+		final char[] text = next();
+		return incremental.edit(text, text.length, at, 1 - version, version);
+	}
+
+	@Benchmark
+	public DijkstraSymbolVisitor fromScratchWithSymbols()
+	{
+		return ParallelSymbolAnalyzer.analyze(fromScratch(), new CompilationContext());
+	}
+
+	@Benchmark
+	public DijkstraSymbolVisitor incrementalWithSymbols()
+	{
+		return ParallelSymbolAnalyzer.analyze(incremental(), new CompilationContext(), cache);
+	}
+
+	private char[] next()
+	{
+		version = 1 - version;
+		return versions[version];
+	}
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import dijkstra.semantic.DjikstraTypeResolutionVisitor;
+
+/**
+ * Type resolution time for a chain of N dependent assignments written backwards,
+ * x1 &lt;- x2 + 1 ... xN &lt;- 1.5, so every type is only known once the one
+ * after it is. The constraint solver should stay linear in N. Parsing and the
+ * symbol pass are done before each operation and not timed. Run as described
+ * in {@link PipelineBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class InferenceChainBenchmark
+{
+	@Param({"1000", "2000", "4000"})
+	public int length;
+
+	private String text;
+	private DjikstraTypeResolutionVisitor resolver;
+
+	@Setup(Level.Trial)
+	public void generate()
+	{
+		StringBuilder program = new StringBuilder("program chain\ninput x1");
+		for (int i = 2; i <= length; i++) {
+			program.append(", x").append(i);
+		}
+		program.append('\n');
+		for (int i = 1; i < length; i++) {
+			program.append('x').append(i).append(" <- x").append(i + 1).append(" + 1\n");
+		}
+		program.append('x').append(length).append(" <- 1.5\n");
+		text = program.toString();
+	}
+
+	@Setup(Level.Invocation)
+	public void symbols()
+	{
+		resolver = new DjikstraTypeResolutionVisitor(PipelineBenchmark.symbolPass(PipelineBenchmark.parse(text)));
+	}
+
+	@Benchmark
+	public DjikstraTypeResolutionVisitor resolve()
+	{
+		resolver.resolve();
+		return resolver;
+	}
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.antlr.v4.runtime.*;
+import org.openjdk.jmh.annotations.*;
+
+import dijkstra.lexparse.*;
+
+/**
+ * Tokenizing throughput on large generated programs, the generated
+ * {@link DijkstraLexer} against the hand-written {@link DijkstraScanner}. Each
+ * operation pulls every token from the source once. Run as described in
+ * {@link PipelineBenchmark}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class LexerBenchmark
+{
+	@Param({"10000", "100000"})
+	public int lines;
+
+	private char[] text;
+
+	@Setup(Level.Trial)
+	public void generate()
+	{
+		text = ProgramGenerator.generateLines(lines).toCharArray();
+	}
+
+	@Benchmark
+	public int generated()
+	{
+		return count(new DijkstraLexer(new ANTLRInputStream(text, text.length)));
+	}
+
+	@Benchmark
+	public int handWritten()
+	{
+		return count(new DijkstraScanner(text, text.length));
+	}
+
+	private static int count(TokenSource tokens)
+	{
+		int count = 0;
+		while (tokens.nextToken().getType() != Token.EOF) {
+			count++;
+		}
+		return count;
+	}
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.openjdk.jmh.annotations.*;
+
+import dijkstra.lexparse.DijkstraParser.DijkstraTextContext;
+import dijkstra.semantic.*;
+import dijkstra.utility.DijkstraFactory;
+
+/**
+ * Front end time (parse through type check) for one long list: a simultaneous
+ * assignment with N targets, or a compound statement with N statements. With
+ * flat list rules the time per element should stay constant as N grows. Code
+ * generation is left out because the JVM's method size and operand stack limits
+ * cap these lists independently of the compiler. Run as described in
+ * {@link PipelineBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class ListScalingBenchmark
+{
+	@Param({"1000", "10000", "100000"})
+	public int length;
+	
+	@Param({"assignment", "body"})
+	public String shape;
+	
+	private String text;
+	
+	@Setup(Level.Trial)
+	public void generate()
+	{
+		StringBuilder program = new StringBuilder("program lists\n");
+		if (shape.equals("assignment")) {
+			StringBuilder values = new StringBuilder();
+			for (int i = 0; i < length; i++) {
+				program.append(i == 0 ? "" : ", ").append('x').append(i);
+				values.append(i == 0 ? "" : ", ").append(i % 100);
+			}
+			program.append(" <- ").append(values).append(";\n");
+		} else {
+			program.append("x <- 0;\n{\n");
+			for (int i = 0; i < length; i++) {
+				program.append("x <- x + ").append(i % 100).append(";\n");
+			}
+			program.append("}\n");
+		}
+		text = program.toString();
+	}
+	
+	@Benchmark
+	public DijkstraTypeCheckVisitor frontEnd()
+	{
+		DijkstraTextContext tree = DijkstraFactory.parse(new ANTLRInputStream(text));
+		DjikstraTypeResolutionVisitor resolver = 
+				new DjikstraTypeResolutionVisitor(PipelineBenchmark.symbolPass(tree));
+		resolver.resolve();
+		DijkstraTypeCheckVisitor checker = new DijkstraTypeCheckVisitor(resolver);
+		tree.accept(checker);
+		return checker;
+	}
+}
@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.bench;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import dijkstra.lexparse.DijkstraParser.DijkstraTextContext;
+import dijkstra.utility.ParallelParser;
+
+/**
+ * Parse throughput of {@link ParallelParser} on a large generated program
+ * against the number of worker threads, to see how close to linear it scales.
+ * Run as described in {@link PipelineBenchmark}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class ParallelParseBenchmark
+{
+	@Param({"100000"})
+	public int lines;
+
+	@Param({"1", "2", "4", "8"})
+	public int threads;
+
+	private char[] text;
+	private ForkJoinPool pool;
+
+	@Setup(Level.Trial)
+	public void generate()
+	{
+		text = ProgramGenerator.generateLines(lines).toCharArray();
+		pool = new ForkJoinPool(threads);
+	}
+
+	@TearDown(Level.Trial)
+	public void shutdown()
+	{
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public DijkstraTextContext parse()
+	{
+		return ParallelParser.parse(text, text.length, pool);
+	}
+}
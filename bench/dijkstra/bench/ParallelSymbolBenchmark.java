@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.bench;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import dijkstra.lexparse.DijkstraParser.DijkstraTextContext;
+import dijkstra.symbol.*;
+import dijkstra.utility.CompilationContext;
+
+/**
+ * Symbol pass time of {@link ParallelSymbolAnalyzer} on generated programs with
+ * hundreds of procedures of 500 lines, against the number of worker threads, with
+ * one {@link DijkstraSymbolVisitor} pass as the baseline. The tree is parsed once;
+ * each operation analyses it in a new context. Run as described in
+ * {@link PipelineBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class ParallelSymbolBenchmark
+{
+	@Param({"100000", "400000"})
+	public int lines;
+
+	@Param({"1", "2", "4", "8"})
+	public int threads;
+
+	private DijkstraTextContext tree;
+	private ForkJoinPool pool;
+
+	@Setup(Level.Trial)
+	public void generate()
+	{
+		tree = PipelineBenchmark.parse(ProgramGenerator.generateLines(lines));
+		pool = new ForkJoinPool(threads);
+	}
+
+	@TearDown(Level.Trial)
+	public void shutdown()
+	{
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public DijkstraSymbolVisitor onePass()
+	{
+		DijkstraSymbolVisitor visitor = new DijkstraSymbolVisitor(new CompilationContext());
+		tree.accept(visitor);
+		return visitor;
+	}
+
+	@Benchmark
+	public DijkstraSymbolVisitor parallel()
+	{
+		return ParallelSymbolAnalyzer.analyze(tree, new CompilationContext(), pool);
+	}
+}
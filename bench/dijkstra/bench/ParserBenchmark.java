@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.openjdk.jmh.annotations.*;
+
+import dijkstra.lexparse.DijkstraParser.DijkstraTextContext;
+import dijkstra.utility.DijkstraFactory;
+
+/**
+ * Parse throughput on large generated programs, full LL prediction against the
+ * two-stage SLL-then-LL strategy of {@link DijkstraFactory#parse(ANTLRInputStream)}.
+ * Run as described in {@link PipelineBenchmark}, e.g.
+ * <pre>
+ * java -cp CLASSPATH org.openjdk.jmh.Main ParserBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class ParserBenchmark
+{
+	@Param({"10000", "100000"})
+	public int lines;
+	
+	private String text;
+	
+	@Setup(Level.Trial)
+	public void generate()
+	{
+		text = ProgramGenerator.generateLines(lines);
+	}
+	
+	@Benchmark
+	public DijkstraTextContext fullLL()
+	{
+		return DijkstraFactory.makeParser(new ANTLRInputStream(text)).dijkstraText();
+	}
+	
+	@Benchmark
+	public DijkstraTextContext sllThenLL()
+	{
+		return DijkstraFactory.parse(new ANTLRInputStream(text));
+	}
+}
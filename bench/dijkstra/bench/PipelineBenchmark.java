@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.bench;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import dijkstra.Dijkstra;
+import dijkstra.codegen.CodeGenVisitor;
+import dijkstra.lexparse.DijkstraParser.DijkstraTextContext;
+import dijkstra.semantic.*;
+import dijkstra.symbol.DijkstraSymbolVisitor;
+import dijkstra.utility.*;
+
+/**
+ * JMH benchmarks for each phase of the compiler pipeline, over the sample
+ * programs and generated programs of 1K to 1M lines. Every phase gets fresh
+ * input from the phases before it, prepared outside the measured time. Parsing
+ * goes through {@link ParallelParser}, the hand-written scanner and chunked parse
+ * that {@link Dijkstra#compile(String, String)} uses.
+ * <p>
+ * Build the bench source root with jmh-core and jmh-generator-annprocess on the
+ * class path (the annotation processor generates the harness), then run from the
+ * project root, e.g.
+ * <pre>
+ * java -cp CLASSPATH org.openjdk.jmh.Main PipelineBenchmark -prof gc
+ * java -cp CLASSPATH org.openjdk.jmh.Main PipelineBenchmark.parse -p source=fibonacci,10000
+ * </pre>
+ * -prof gc adds the allocation rate and bytes allocated per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class PipelineBenchmark
+{
+	/**
+	 * The program text and its parse tree. Names of sample programs select a file
+	 * in SamplePrograms; numbers select a generated program with that many lines.
+	 */
+	@State(Scope.Thread)
+	public static class Input
+	{
+		@Param({"fibonacci", "fibonacci_arrays", "fibonacci_recursive", 
+			"1000", "10000", "100000", "1000000"})
+		public String source;
+		
+		String text;
+		char[] chars;
+		DijkstraTextContext tree;
+		
+		@Setup(Level.Trial)
+		public void load() throws IOException
+		{
+			if (Character.isDigit(source.charAt(0))) {
+				text = ProgramGenerator.generateLines(Long.parseLong(source));
+			} else {
+				text = Dijkstra.readSource(new File("SamplePrograms", source + ".djk")).toString();
+			}
+			chars = text.toCharArray();
+			tree = parse(text);
+		}
+	}
+	
+	/**
+	 * The symbol pass, run afresh before every invocation.
+	 */
+	@State(Scope.Thread)
+	public static class Symbols
+	{
+		DijkstraTextContext tree;
+		DijkstraSymbolVisitor visitor;
+		
+		@Setup(Level.Invocation)
+		public void run(Input input)
+		{
+			tree = input.tree;
+			visitor = symbolPass(tree);
+		}
+	}
+	
+	/**
+	 * The symbol pass and type resolution, run afresh before every invocation.
+	 */
+	@State(Scope.Thread)
+	public static class Resolved
+	{
+		DijkstraTextContext tree;
+		DjikstraTypeResolutionVisitor resolver;
+		
+		@Setup(Level.Invocation)
+		public void run(Input input)
+		{
+			tree = input.tree;
+			resolver = resolve(tree, symbolPass(tree));
+		}
+	}
+	
+	/**
+	 * Everything up to the type check, run afresh before every invocation.
+	 */
+	@State(Scope.Thread)
+	public static class Checked
+	{
+		DijkstraTextContext tree;
+		DijkstraTypeCheckVisitor checker;
+		
+		@Setup(Level.Invocation)
+		public void run(Input input)
+		{
+			tree = input.tree;
+			checker = new DijkstraTypeCheckVisitor(resolve(tree, symbolPass(tree)));
+			tree.accept(checker);
+		}
+	}
+	
+	@Benchmark
+	public DijkstraTextContext parse(Input input)
+	{
+		return ParallelParser.parse(input.chars, input.chars.length);
+	}
+	
+	@Benchmark
+	public DijkstraSymbolVisitor symbols(Input input)
+	{
+		return symbolPass(input.tree);
+	}
+	
+	@Benchmark
+	public DjikstraTypeResolutionVisitor resolution(Symbols symbols)
+	{
+		return resolve(symbols.tree, symbols.visitor);
+	}
+	
+	@Benchmark
+	public DijkstraTypeCheckVisitor finalizeAndCheck(Resolved resolved)
+	{
+		DijkstraTypeCheckVisitor checker = new DijkstraTypeCheckVisitor(resolved.resolver);
+		resolved.tree.accept(checker);
+		return checker;
+	}
+	
+	@Benchmark
+	public byte[] codegen(Checked checked)
+	{
+		return checked.tree.accept(new CodeGenVisitor(checked.checker));
+	}
+	
+	static DijkstraTextContext parse(String text)
+	{
+		final char[] chars = text.toCharArray();
+		return ParallelParser.parse(chars, chars.length);
+	}
+	
+	static DijkstraSymbolVisitor symbolPass(DijkstraTextContext tree)
+	{
+		DijkstraSymbolVisitor visitor = new DijkstraSymbolVisitor(new CompilationContext());
+		tree.accept(visitor);
+		return visitor;
+	}
+	
+	static DjikstraTypeResolutionVisitor resolve(DijkstraTextContext tree, DijkstraSymbolVisitor visitor)
+	{
+		DjikstraTypeResolutionVisitor resolver = new DjikstraTypeResolutionVisitor(visitor);
+		resolver.resolve();
+		return resolver;
+	}
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.bench;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Generates synthetic Dijkstra programs of a requested size for the benchmarks.
+ * The programs are valid and type check: a function and a procedure followed
+ * by assignments, guarded commands, calls and prints over a fixed pool of global
+ * variables. The statements are split into procedures of a few hundred lines,
+ * each called once from the main program, so the generated methods stay below
+ * the JVM's 64 KB code size limit however large the program is.
+ */
+public class ProgramGenerator
+{
+	private static final int VARIABLES = 64;
+	private static final int PART_LINES = 500;
+	
+	private final Appendable out;
+	private long length = 0;
+	private long lines = 0;
+	
+	private ProgramGenerator(Appendable out)
+	{
+		this.out = out;
+	}
+	
+	/**
+	 * Generate a program in memory.
+	 * @param approximateChars the size to stop after
+	 * @return the program text
+	 */
+	public static String generate(long approximateChars)
+	{
+		return generate(approximateChars, Long.MAX_VALUE);
+	}
+	
+	/**
+	 * Generate a program in memory.
+	 * @param lineCount the number of lines to generate
+	 * @return the program text
+	 */
+	public static String generateLines(long lineCount)
+	{
+		return generate(Long.MAX_VALUE, lineCount);
+	}
+	
+	private static String generate(long approximateChars, long lineCount)
+	{
+		StringBuilder text = new StringBuilder();
+		try {
+			new ProgramGenerator(text).program(approximateChars, lineCount);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);		// cannot happen for a StringBuilder
+		}
+		return text.toString();
+	}
+	
+	/**
+	 * Generate a program into a UTF-8 file.
+	 * @param file the file to write
+	 * @param approximateBytes the size to stop after
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void generate(File file, long approximateBytes) throws IOException
+	{
+		try (Writer writer = new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+			new ProgramGenerator(writer).program(approximateBytes, Long.MAX_VALUE);
+		}
+	}
+	
+	private void program(long size, long lineCount) throws IOException
+	{
+		emit("program generated\n");
+		for (int i = 0; i < VARIABLES; i++) {
+			emit("int v" + i + ";\n");
+		}
+		emit("fun twice(int a) : int { return a * 2; }\n");
+		emit("proc show(int a, int b) { print a + b; }\n");
+		int part = 0;
+		for (int i = 0; length < size && lines < lineCount; i++) {
+			if (i % PART_LINES == 0) {
+				if (i > 0) {
+					endPart(part++);
+				}
+				emit("proc part" + part + "() {\n");
+			}
+			final String a = "v" + (i % VARIABLES);
+			final String b = "v" + ((i * 7 + 3) % VARIABLES);
+			switch (i % 4) {
+				case 0:
+					emit(a + " <- " + b + " + " + i % 1000 + ";\n");
+					break;
+				case 1:
+					emit("if " + a + " > " + b + " :: " + a + " <- twice(" + b + ") " 
+							+ a + " <= " + b + " :: print " + a + "; fi\n");
+					break;
+				case 2:
+					emit(a + ", " + b + " <- " + b + " mod 7, " + a + " - 1;\n");
+					break;
+				default:
+					emit("show(" + a + ", " + b + ");\n");
+					break;
+			}
+		}
+		endPart(part);
+	}
+	
+	private void endPart(int part) throws IOException
+	{
+		emit("}\n");
+		emit("part" + part + "();\n");
+	}
+	
+	private void emit(String text) throws IOException
+	{
+		out.append(text);
+		length += text.length();
+		lines++;		// every piece is one line
+	}
+}
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import dijkstra.lexparse.DijkstraParser.DijkstraTextContext;
+import dijkstra.symbol.DijkstraSymbolVisitor;
+
+/**
+ * The symbol pass over the two shapes of scope that generated code produces.
+ * "deep" nests size blocks in each procedure, each declaring a local and reading
+ * a global, so a lookup that searches the chain of scopes costs the depth. "wide"
+ * declares size locals in one block and reads each of them. Run at this commit
+ * and at its parent to compare chained and constant time lookup, as described in
+ * {@link PipelineBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g", "-Xss64m"})
+@State(Scope.Thread)
+public class ScopeBenchmark
+{
+	private static final int PROCEDURES = 20;
+
+	@Param({"16", "128", "512"})
+	public int size;
+
+	@Param({"deep", "wide"})
+	public String shape;
+
+	private DijkstraTextContext tree;
+
+	@Setup(Level.Trial)
+	public void generate()
+	{
+		StringBuilder program = new StringBuilder("program scopes\nint global;\n");
+		for (int p = 0; p < PROCEDURES; p++) {
+			program.append("proc procedure").append(p).append("() {\n");
+			if (shape.equals("deep")) {
+				for (int d = 0; d < size; d++) {
+					program.append("{ int local").append(d).append("; local").append(d)
+							.append(" <- global + ").append(p).append(";\n");
+				}
+				for (int d = 0; d < size; d++) {
+					program.append("}\n");
+				}
+			} else {
+				for (int i = 0; i < size; i++) {
+					program.append("int local").append(i).append(";\n");
+				}
+				for (int i = 0; i < size; i++) {
+					program.append("local").append(i).append(" <- local")
+							.append((i + p) % size).append(" + global;\n");
+				}
+			}
+			program.append("}\n");
+		}
+		tree = PipelineBenchmark.parse(program.toString());
+	}
+
+	@Benchmark
+	public DijkstraSymbolVisitor symbols()
+	{
+		return PipelineBenchmark.symbolPass(tree);
+	}
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.bench;
+
+import java.io.*;
+import java.lang.management.*;
+import java.nio.CharBuffer;
+import java.util.Scanner;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+
+import dijkstra.Dijkstra;
+
+/**
+ * Compares the old Scanner based source loading with the memory mapped loader in
+ * {@link Dijkstra#readSource(File)}, measuring the time to get from a file to a
+ * lexer input stream and the peak heap used on the way.
+ * <p>
+ * Usage: java dijkstra.bench.SourceLoadBenchmark [MB [rounds]]; defaults are 100 MB
+ * and 5 rounds. Run with a heap of at least 2 GB, e.g. -Xmx2g.
+ */
+public class SourceLoadBenchmark
+{
+	private interface Loader
+	{
+		ANTLRInputStream load(File file) throws IOException;
+	}
+	
+	public static void main(String[] args) throws Exception
+	{
+		final int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		final File file = File.createTempFile("generated", ".djk");
+		file.deleteOnExit();
+		ProgramGenerator.generate(file, megabytes * 1024L * 1024L);
+		System.out.println("Source: " + file.length() / (1024 * 1024) + " MB");
+		
+		for (int round = 0; round < rounds; round++) {
+			measure("scanner", file, SourceLoadBenchmark::loadWithScanner);
+			measure("mapped ", file, SourceLoadBenchmark::loadMapped);
+		}
+	}
+	
+	/**
+	 * The loading code the driver used before: a regex Scanner into a String, which
+	 * ANTLRInputStream then copies into its own array.
+	 */
+	static ANTLRInputStream loadWithScanner(File file) throws IOException
+	{
+		try (Scanner scanner = new Scanner(file)) {
+			return new ANTLRInputStream(scanner.useDelimiter("\\A").next());
+		}
+	}
+	
+	static ANTLRInputStream loadMapped(File file) throws IOException
+	{
+		final CharBuffer source = Dijkstra.readSource(file);
+		return new ANTLRInputStream(source.array(), source.limit());
+	}
+	
+	private static void measure(String name, File file, Loader loader) throws IOException
+	{
+		System.gc();
+		final long baseline = heapUsed();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+		final long start = System.nanoTime();
+		final ANTLRInputStream input = loader.load(file);
+		final long elapsed = System.nanoTime() - start;
+		final long peak = peakHeapUsed() - baseline;
+		System.out.printf("%s  %8.1f ms  peak heap %6d MB  (%d chars)%n", 
+				name, elapsed / 1e6, peak / (1024 * 1024), input.size());
+	}
+	
+	private static long heapUsed()
+	{
+		long used = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				used += pool.getUsage().getUsed();
+			}
+		}
+		return used;
+	}
+	
+	private static long peakHeapUsed()
+	{
+		long used = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				used += pool.getPeakUsage().getUsed();
+			}
+		}
+		return used;
+	}
+}
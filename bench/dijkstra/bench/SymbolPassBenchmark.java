@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.bench;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.antlr.v4.runtime.*;
+import org.openjdk.jmh.annotations.*;
+
+import dijkstra.lexparse.DijkstraParser.DijkstraTextContext;
+import dijkstra.symbol.DijkstraSymbolVisitor;
+import dijkstra.utility.*;
+
+/**
+ * The symbol pass alone over identifier-heavy programs: a number of distinct
+ * global variables, and procedures whose bodies nest a few blocks deep and
+ * reference those globals, so every use is looked up through several scopes.
+ * With interning "tokens" the identifiers are interned from the scanned
+ * characters before the pass, as the compiler does, and that is timed with it;
+ * with "text" each ID occurrence is interned from its token's text during the
+ * pass. Run as described in {@link PipelineBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class SymbolPassBenchmark
+{
+	private static final int DEPTH = 4;
+	private static final int PROCEDURES = 20;
+
+	@Param({"100", "1000", "10000"})
+	public int identifiers;
+
+	@Param({"tokens", "text"})
+	public String interning;
+
+	private char[] text;
+	private List<Token> tokens;
+	private DijkstraTextContext tree;
+
+	@Setup(Level.Trial)
+	public void generate()
+	{
+		StringBuilder program = new StringBuilder("program names\n");
+		for (int i = 0; i < identifiers; i++) {
+			program.append("int variable").append(i).append(";\n");
+		}
+		for (int p = 0; p < PROCEDURES; p++) {
+			program.append("proc procedure").append(p).append("() {\n");
+			for (int d = 1; d < DEPTH; d++) {
+				program.append("{\n");
+			}
+			for (int i = 0; i < identifiers; i++) {
+				program.append("variable").append(i).append(" <- variable")
+						.append((i + p) % identifiers).append(" + 1;\n");
+			}
+			for (int d = 1; d < DEPTH; d++) {
+				program.append("}\n");
+			}
+			program.append("}\n");
+		}
+		text = program.toString().toCharArray();
+		tokens = new ArrayList<Token>();
+		final TokenSource scanner = DijkstraFactory.makeScanner(text, text.length);
+		for (Token token = scanner.nextToken(); ; token = scanner.nextToken()) {
+			tokens.add(token);
+			if (token.getType() == Token.EOF) {
+				break;
+			}
+		}
+		tree = DijkstraFactory.parse(new ListTokenSource(tokens));
+	}
+
+	@Benchmark
+	public DijkstraSymbolVisitor symbols()
+	{
+		final CompilationContext context = new CompilationContext();
+		if (interning.equals("tokens")) {
+			context.getSymbolTableManager().getNames().internIds(text, tokens);
+		}
+		final DijkstraSymbolVisitor visitor = new DijkstraSymbolVisitor(context);
+		tree.accept(visitor);
+		return visitor;
+	}
+}
@@ -27,15 +27,15 @@
  arrayDeclaration :			type LBRACK expression RBRACK idList separator;
  functionDeclaration :		FUN ID LPAR parameterList? RPAR COLON type compoundStatement;
  procedureDeclaration :		PROC ID LPAR parameterList? RPAR compoundStatement;
- 	parameterList :			parameter | parameterList COMMA parameter;
+ 	parameterList :			parameter (COMMA parameter)*;
  	parameter :				ID | type ID;
  
  //Some utils
  type : 					FLOAT | INT | BOOLEAN;
  typeList :					type | typeList COMMA type;
  separator :				SEMICOLON?;
- idList :					ID | idList COMMA ID;
- expressionList :			expression | expressionList COMMA expression;
+ idList :					ID (COMMA ID)*;
+ expressionList :			expression (COMMA expression)*;
  
  //Statements
  statement :				assignStatement separator
@@ -49,7 +49,7 @@
  								
  assignStatement :			varList ASSIGN expressionList;
  	var :					ID | arrayAccessor;
- 	varList :				var | varList COMMA var;
+ 	varList :				var (COMMA var)*;
  
  alternativeStatement :		IF guard+ FI;
  iterativeStatement :		DO guard+ OD;
@@ -58,15 +58,14 @@
  inputStatement :			INPUT idList;
  outputStatement :			PRINT expression;
  compoundStatement :		LBRACE compoundBody RBRACE;
- 	compoundBody :			cpdDeclOrStatement
- 								| compoundBody cpdDeclOrStatement;
+ 	compoundBody :			cpdDeclOrStatement+;
  	cpdDeclOrStatement:		variableDeclaration
  								| arrayDeclaration
  								| statement;
  					
  returnStatement :			RETURN expression?;
  procedureCall :			ID LPAR argList? RPAR;
- argList :		 			expression | argList COMMA expression;
+ argList :		 			expression (COMMA expression)*;
  
  //Expressions
  expression :				LPAR expression RPAR #compound
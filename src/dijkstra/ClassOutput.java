@@ -0,0 +1,27 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra;
+
+import java.io.*;
+
+/**
+ * Destination for the classes compiled in one batch.
+ */
+public interface ClassOutput extends Closeable
+{
+	/**
+	 * Write one compiled class.
+	 * @param program the compiled program
+	 * @throws IOException if the class could not be written
+	 */
+	void write(CompiledProgram program) throws IOException;
+}
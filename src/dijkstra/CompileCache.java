@@ -0,0 +1,296 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.*;
+import java.util.stream.*;
+
+import dijkstra.utility.DijkstraException;
+
+/**
+ * On-disk cache of compiled classes, keyed by a SHA-256 hash of the source text, the
+ * package name and a fingerprint of every class file under dijkstra/ in the jar or
+ * directory the compiler was loaded from, so any change to the compiler invalidates
+ * every entry. Entries are written to a temporary file and
+ * renamed into place, so several compilers can share one cache directory. When the
+ * directory grows past its size bound the least recently used entries are deleted;
+ * a hit refreshes the entry's modification time. A compiler whose classes cannot
+ * be read as a plain jar or directory, such as one in a nested jar or a runtime
+ * image, cannot open a cache.
+ */
+public class CompileCache
+{
+	private static final String SUFFIX = ".djc";
+	private static final String COMPILER_PACKAGE = "dijkstra/";
+	private static byte[] compilerFingerprint = null;
+	
+	private final Path directory;
+	private final byte[] fingerprint;
+	private final long maxBytes;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong size;
+	
+	/**
+	 * Open a cache directory, creating it if needed.
+	 * @param directory the cache directory
+	 * @param maxBytes the size the cache is trimmed back to, or 0 for no bound
+	 * @throws IOException if the directory cannot be created or read, or the
+	 * 		compiler's own classes cannot be
+	 */
+	public CompileCache(Path directory, long maxBytes) throws IOException
+	{
+		this.directory = directory;
+		fingerprint = fingerprint();
+		this.maxBytes = maxBytes;
+		Files.createDirectories(directory);
+		size = new AtomicLong(currentSize());
+	}
+	
+	/**
+	 * Look up a previously compiled program.
+	 * @param programText the Dijkstra source
+	 * @param packageName the package the class is generated in
+	 * @return the cached program, or null on a miss
+	 */
+	public CompiledProgram get(CharSequence programText, String packageName)
+	{
+		final Path entry = entryFor(programText, packageName);
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(Files.newInputStream(entry)))) {
+			final String programName = in.readUTF();
+			final byte[] code = new byte[in.readInt()];
+			in.readFully(code);
+			entry.toFile().setLastModified(System.currentTimeMillis());
+			hits.incrementAndGet();
+			return new CompiledProgram(programName, packageName, code);
+		} catch (IOException e) {	// missing, or removed by another compiler's eviction
+			misses.incrementAndGet();
+			return null;
+		}
+	}
+	
+	/**
+	 * Store a compiled program. Failures to write are ignored; the cache is only
+	 * an optimization.
+	 * @param programText the Dijkstra source the program was compiled from
+	 * @param program the compiled program
+	 */
+	public void put(CharSequence programText, CompiledProgram program)
+	{
+		final Path entry = entryFor(programText, program.getPackageName());
+		Path temp = null;
+		try {
+			temp = Files.createTempFile(directory, entry.getFileName().toString(), ".tmp");
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.writeUTF(program.getProgramName());
+				out.writeInt(program.getCode().length);
+				out.write(program.getCode());
+			}
+			final long bytes = Files.size(temp);
+			try {
+				Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE, 
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+			}
+			if (maxBytes > 0 && size.addAndGet(bytes) > maxBytes) {
+				evict();
+			}
+		} catch (IOException e) {
+			if (temp != null) {
+				temp.toFile().delete();
+			}
+		}
+	}
+	
+	/**
+	 * Delete least recently used entries until the cache is back under 90% of its bound.
+	 */
+	private synchronized void evict() throws IOException
+	{
+		final List<File> entries = entries();
+		long total = 0;
+		for (File file : entries) {
+			total += file.length();
+		}
+		final long target = maxBytes / 10 * 9;
+		entries.sort((a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+		for (Iterator<File> it = entries.iterator(); total > target && it.hasNext(); ) {
+			final File file = it.next();
+			final long length = file.length();
+			if (file.delete()) {
+				total -= length;
+			}
+		}
+		size.set(total);
+	}
+	
+	private long currentSize() throws IOException
+	{
+		long total = 0;
+		for (File file : entries()) {
+			total += file.length();
+		}
+		return total;
+	}
+	
+	private List<File> entries() throws IOException
+	{
+		final List<File> entries = new ArrayList<File>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+			for (Path path : stream) {
+				entries.add(path.toFile());
+			}
+		}
+		return entries;
+	}
+	
+	private Path entryFor(CharSequence programText, String packageName)
+	{
+		final MessageDigest digest = newDigest();
+		digest.update(fingerprint);
+		digest.update(packageName.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		final CharBuffer chars = CharBuffer.wrap(programText);
+		final ByteBuffer bytes = ByteBuffer.allocate(8192);
+		while (encoder.encode(chars, bytes, true).isOverflow()) {	// chunks, so a large source is never copied whole
+			bytes.flip();
+			digest.update(bytes);
+			bytes.clear();
+		}
+		encoder.flush(bytes);
+		bytes.flip();
+		digest.update(bytes);
+		final StringBuilder name = new StringBuilder();
+		for (byte b : digest.digest()) {
+			name.append(String.format("%02x", b));
+		}
+		return directory.resolve(name.append(SUFFIX).toString());
+	}
+	
+	/**
+	 * @return a hash of the compiler's own class files, computed once per process
+	 * @throws IOException if they cannot be found or read
+	 */
+	private static synchronized byte[] fingerprint() throws IOException
+	{
+		if (compilerFingerprint == null) {
+			compilerFingerprint = fingerprint(codeSource());
+		}
+		return compilerFingerprint;
+	}
+	
+	/**
+	 * @return the jar or class directory the compiler was loaded from
+	 * @throws IOException if it has no code source, or one that is not a file
+	 */
+	static Path codeSource() throws IOException
+	{
+		final CodeSource source = CompileCache.class.getProtectionDomain().getCodeSource();
+		try {
+			return Paths.get(source.getLocation().toURI());
+		} catch (Exception e) {		// no code source, or not a file
+			throw new IOException("Cannot locate the compiler's classes", e);
+		}
+	}
+	
+	/**
+	 * @param codeSource a jar or class directory
+	 * @return a hash of the names and contents of every class file under dijkstra/ in it
+	 * @throws IOException if it is not a readable jar or directory of class files
+	 */
+	static byte[] fingerprint(Path codeSource) throws IOException
+	{
+		final MessageDigest digest = newDigest();
+		try {
+			if (Files.isDirectory(codeSource)) {
+				for (String name : compilerClasses(codeSource)) {
+					digest.update(name.getBytes(StandardCharsets.UTF_8));
+					digest.update(Files.readAllBytes(codeSource.resolve(name)));
+				}
+			} else {
+				try (JarFile jar = new JarFile(codeSource.toFile())) {
+					for (String name : compilerClasses(codeSource)) {
+						digest.update(name.getBytes(StandardCharsets.UTF_8));
+						try (InputStream in = jar.getInputStream(jar.getEntry(name))) {
+							digest.update(in.readAllBytes());
+						}
+					}
+				}
+			}
+		} catch (IOException | RuntimeException e) {	// RuntimeException: a path on another file system
+			throw new IOException("Cannot read the compiler's classes in " + codeSource, e);
+		}
+		return digest.digest();
+	}
+	
+	/**
+	 * @param codeSource a jar or class directory
+	 * @return the sorted paths of the class files under dijkstra/ in it
+	 * @throws IOException if the code source cannot be read
+	 */
+	static List<String> compilerClasses(Path codeSource) throws IOException
+	{
+		if (Files.isDirectory(codeSource)) {
+			try (Stream<Path> files = Files.walk(codeSource.resolve(COMPILER_PACKAGE))) {
+				return files.map(path -> codeSource.relativize(path).toString().replace(File.separatorChar, '/'))
+						.filter(name -> name.endsWith(".class"))
+						.sorted()
+						.collect(Collectors.toList());
+			}
+		}
+		try (JarFile jar = new JarFile(codeSource.toFile())) {
+			return jar.stream()
+					.map(JarEntry::getName)
+					.filter(name -> name.startsWith(COMPILER_PACKAGE) && name.endsWith(".class"))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+	}
+	
+	private static MessageDigest newDigest()
+	{
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new DijkstraException("SHA-256 is not available", e);
+		}
+	}
+
+	/**
+	 * @return the number of lookups that found an entry
+	 */
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of lookups that did not find an entry
+	 */
+	public long getMisses()
+	{
+		return misses.get();
+	}
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra;
+
+/**
+ * The result of compiling one Dijkstra program: the generated class bytes and
+ * the names needed to write or load them. This is a simple entity data structure.
+ */
+public class CompiledProgram
+{
+	private final String programName;
+	private final String packageName;
+	private final byte[] code;
+
+	/**
+	 * Sole constructor.
+	 * @param programName the name given after the program keyword
+	 * @param packageName the package the class was generated in
+	 * @param code the class file bytes
+	 */
+	public CompiledProgram(String programName, String packageName, byte[] code)
+	{
+		this.programName = programName;
+		this.packageName = packageName;
+		this.code = code;
+	}
+
+	/**
+	 * @return the program name, which is also the simple class name
+	 */
+	public String getProgramName()
+	{
+		return programName;
+	}
+
+	/**
+	 * @return the package name
+	 */
+	public String getPackageName()
+	{
+		return packageName;
+	}
+
+	/**
+	 * @return the class file bytes
+	 */
+	public byte[] getCode()
+	{
+		return code;
+	}
+
+	/**
+	 * @return the binary class name, e.g. djkcode.fibonacci
+	 */
+	public String getClassName()
+	{
+		return packageName + "." + programName;
+	}
+
+	/**
+	 * @return the class file path relative to an output root, e.g. djkcode/fibonacci.class
+	 */
+	public String getClassFileName()
+	{
+		return packageName.replace('.', '/') + "/" + programName + ".class";
+	}
+}
@@ -14,29 +14,53 @@ package dijkstra;
 import static org.junit.Assert.assertTrue;
 
 import java.io.*;
-import java.util.Scanner;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
 
 import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.objectweb.asm.*;
 
 import dijkstra.codegen.CodeGenVisitor;
-import dijkstra.lexparse.DijkstraParser;
+import dijkstra.lexparse.DijkstraParser.DijkstraTextContext;
 import dijkstra.semantic.DijkstraTypeCheckVisitor;
-import dijkstra.semantic.DjikstraTypeFinalizerVisitor;
 import dijkstra.semantic.DjikstraTypeResolutionVisitor;
 import dijkstra.symbol.DijkstraSymbolVisitor;
+import dijkstra.symbol.ParallelSymbolAnalyzer;
+import dijkstra.utility.CompilationContext;
+import dijkstra.utility.CompilerStats;
+import dijkstra.utility.DfaCache;
 import dijkstra.utility.DijkstraFactory;
+import dijkstra.utility.ParallelParser;
+import dijkstra.utility.ParserProfile;
 
 /**
- * This is the driver for the Dijkstra compiler.
+ * This is the driver for the Dijkstra compiler. Any number of source files,
+ * directories, glob patterns and @argfiles may be given; they are all compiled
+ * in the same JVM so the lexer and parser DFA caches stay warm, and a failure in
+ * one file is reported without stopping the rest of the batch.
  * @version October 22, 2012
  */
 public class Dijkstra
 {
-	private static String programName = new String();
-	private static String customPackage = "djkcode";	// default
-	private static String outputDirectory = ".";		// default
-	private static String fileContents = null;
-	
+	private String customPackage = "djkcode";	// default
+	private String outputDirectory;
+	private final PrintStream out;
+	private final PrintStream err;
+	private final String workingDirectory;
+	private String jarFile = null;
+	private boolean stored = false;
+	private String cacheDirectory = null;
+	private long cacheSize = 256L * 1024 * 1024;	// default bound in bytes
+	private CompileCache cache = null;
+	private CompilerStats stats = new CompilerStats(false);
+	private boolean jsonStats = false;
+	private String dfaCacheFile = null;
+	private ParserProfile parserProfile = null;
 	
 	/**
 	 * Main program to run compiler.
@@ -45,97 +69,498 @@ public class Dijkstra
 	 */
 	public static void main(String[] args) throws Exception
 	{
-		String fileName = parseArgs(args);
-		//read the input file containing the actual Dijkstra code
+		int status = new Dijkstra(System.out, System.err, "").run(args);
+		if (status != 0) {
+			System.exit(status);
+		}
+	}
+	
+	/**
+	 * Create a driver for one command line.
+	 * @param out where messages and the batch summary are printed
+	 * @param err where compile errors are printed
+	 * @param workingDirectory the directory relative paths are resolved against, 
+	 * 		or the empty string for the process working directory
+	 */
+	public Dijkstra(PrintStream out, PrintStream err, String workingDirectory)
+	{
+		this.out = out;
+		this.err = err;
+		this.workingDirectory = workingDirectory;
+		outputDirectory = resolve(".");		// default
+	}
+	
+	/**
+	 * Compile everything named on a command line.
+	 * @param args the command line arguments
+	 * @return the exit status: 0 if every file compiled, 1 otherwise
+	 */
+	public int run(String[] args)
+	{
+		List<String> sources = parseArgs(args);
+		if (sources == null) {
+			return 0;
+		}
+		List<File> files = new ArrayList<File>();
 		try
 		{
-			fileContents = new Scanner(new File(fileName)).useDelimiter("\\A").next();
+			files = expandSources(sources);
 		}
-		catch(Exception e)
+		catch(IOException e)
 		{
-			System.out.println("Either no input file was specified or it could not be read.");
+			out.println(e.getMessage());
+		}
+		if (files.isEmpty()) {
+			out.println("Either no input file was specified or it could not be read.");
 			showHelp();
-			System.exit(1);
+			return 1;
 		}
 		
-		doCompile();
+		if (cacheDirectory != null) {
+			try {
+				cache = new CompileCache(Paths.get(cacheDirectory), cacheSize);
+			} catch (IOException e) {
+				err.println("Cannot use cache " + cacheDirectory + ": " + e.getMessage());
+			}
+		}
+		int loadedStates = loadDfaCache();
+		int failures = parserProfile != null ? profileAll(files) : compileAll(files);
+		saveDfaCache(loadedStates);
+		return failures > 0 ? 1 : 0;
 	}
 
 	
 	/**
 	 * Parser for arguments to the main function
 	 * @param args Array of strings
-	 * @return name of the source file to compile from
+	 * @return the source files, directories, globs and @argfiles to compile, 
+	 * 		or null if only help was asked for
 	 */
-	static private String parseArgs(String[] args)
+	private List<String> parseArgs(String[] args)
 	{
 		int i = 0;
 		String s = null;
+		List<String> sources = new ArrayList<String>();
 		while (i < args.length) {
 			s = args[i++];
 			if (s.equals("-h")) {
 				showHelp();
-				System.exit(0);
+				return null;
 			}
 			else if (s.equals("-o")) {
-				outputDirectory = args[i++];
+				outputDirectory = resolve(args[i++]);
 			}
 			else if (s.equals("-p")) {
 				customPackage = args[i++];
 			}
+			else if (s.equals("-jar")) {
+				jarFile = resolve(args[i++]);
+			}
+			else if (s.equals("-stored")) {
+				stored = true;
+			}
+			else if (s.equals("-stats") || s.equals("-stats-json")) {
+				stats = new CompilerStats(true);
+				jsonStats = s.equals("-stats-json");
+			}
+			else if (s.equals("-cache")) {
+				cacheDirectory = resolve(args[i++]);
+			}
+			else if (s.equals("-cache-size")) {
+				cacheSize = Long.parseLong(args[i++]) * 1024 * 1024;
+			}
+			else if (s.equals("-dfa-cache")) {
+				dfaCacheFile = resolve(args[i++]);
+			}
+			else if (s.equals("-profile-parser")) {
+				parserProfile = new ParserProfile();
+			}
+			else {
+				sources.add(s);
+			}
 		}
-		return s;
+		return sources;
 	}
 	
 	/**
 	 * Prints help information
 	 */
-	static private void showHelp()
+	private void showHelp()
 	{
-		System.out.println("Arguments: [-h] [-cp CLASSPATH] [-p PACKAGE_NAME] sourceFile");
-		System.out.println("Takes in Base Dijkstra code written in sourceFile and prints compiled code to the screen.\n" +
+		out.println("Arguments: [-h] [-o DIRECTORY] [-p PACKAGE_NAME] [-jar FILE [-stored]] [-stats|-stats-json] [-cache DIRECTORY [-cache-size MB]] [-dfa-cache FILE] [-profile-parser] source...");
+		out.println("Takes in Base Dijkstra code written in each source and writes the compiled classes.\n" +
 				"\t-h Show this text\n" +
 				"\t-o<directory> compiles to the specified directory\n" +
-				"\t-p<package> Sets the package to <package>\n");
+				"\t-p<package> Sets the package to <package>\n" +
+				"\t-jar<file> writes all classes into one JAR instead of a directory\n" +
+				"\t-stored writes the JAR entries uncompressed\n" +
+				"\t-stats prints the time, allocation and counts for each compiler phase\n" +
+				"\t-stats-json prints the same statistics as JSON\n" +
+				"\t-cache<directory> reuses classes compiled earlier from identical sources\n" +
+				"\t-cache-size<MB> bounds the cache directory (default 256)\n" +
+				"\t-dfa-cache<file> starts the parser from the prediction DFAs saved by an\n" +
+				"\t\tearlier run and saves them again when they have grown\n" +
+				"\t-profile-parser only parses the sources, with ANTLR's profiler, and prints\n" +
+				"\t\tthe parser decisions ranked by prediction time\n" +
+				"A source is a .djk file, a directory (searched for .djk files), a glob\n" +
+				"such as src/**/*.djk, or @file naming a file that lists one source per line.\n");
+	}
+	
+	/**
+	 * Load the parser DFAs saved by an earlier run, if a DFA cache was given.
+	 * A missing, stale or unreadable cache only costs the cold start it would save.
+	 * @return the number of DFA states before compiling
+	 */
+	private int loadDfaCache()
+	{
+		if (dfaCacheFile != null) {
+			try {
+				DfaCache.load(Paths.get(dfaCacheFile));
+			} catch (IOException e) {
+				err.println("Cannot use DFA cache " + dfaCacheFile + ": " + e.getMessage());
+			}
+		}
+		return DfaCache.getNumberOfStates();
+	}
+	
+	/**
+	 * Save the parser DFAs if a DFA cache was given and this run added states.
+	 * @param loadedStates the number of DFA states before compiling
+	 */
+	private void saveDfaCache(int loadedStates)
+	{
+		if (dfaCacheFile != null && DfaCache.getNumberOfStates() > loadedStates) {
+			try {
+				DfaCache.save(Paths.get(dfaCacheFile));
+			} catch (IOException e) {
+				err.println("Cannot save DFA cache " + dfaCacheFile + ": " + e.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * @return the path resolved against the working directory
+	 */
+	private String resolve(String path)
+	{
+		if (workingDirectory.isEmpty() || new File(path).isAbsolute()) {
+			return path;
+		}
+		return workingDirectory + File.separator + path;
+	}
+	
+	/**
+	 * Expand the command line sources into the list of files to compile. Directories
+	 * are searched recursively for .djk files, globs are matched below their fixed
+	 * prefix, and @argfiles are read one source per line (blank lines and lines
+	 * starting with # are ignored).
+	 * @param sources the sources given on the command line
+	 * @return the files to compile, in order and without duplicates
+	 * @throws IOException if an @argfile or directory cannot be read
+	 */
+	List<File> expandSources(List<String> sources) throws IOException
+	{
+		Set<File> files = new LinkedHashSet<File>();
+		for (String source : sources) {
+			expandSource(source, files);
+		}
+		return new ArrayList<File>(files);
+	}
+	
+	private void expandSource(String source, Set<File> files) throws IOException
+	{
+		if (source.startsWith("@")) {
+			for (String line : Files.readAllLines(Paths.get(resolve(source.substring(1))))) {
+				line = line.trim();
+				if (!line.isEmpty() && !line.startsWith("#")) {
+					expandSource(line, files);
+				}
+			}
+			return;
+		}
+		source = resolve(source);
+		if (isGlob(source)) {
+			int fixed = 0;
+			while (fixed < source.length() && "*?[{".indexOf(source.charAt(fixed)) < 0) {
+				fixed++;
+			}
+			String base = source.substring(0, Math.max(0, source.lastIndexOf('/', fixed) + 1));
+			final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + source);
+			List<File> matches = new ArrayList<File>();
+			for (Path path : walk(Paths.get(base))) {
+				if (matcher.matches(path)) {
+					matches.add(path.toFile());
+				}
+			}
+			files.addAll(matches);
+		} else {
+			File file = new File(source);
+			if (file.isDirectory()) {
+				for (Path path : walk(file.toPath())) {
+					if (path.toString().endsWith(".djk")) {
+						files.add(path.toFile());
+					}
+				}
+			} else {
+				files.add(file);
+			}
+		}
+	}
+	
+	static private boolean isGlob(String source)
+	{
+		for (char c : "*?[{".toCharArray()) {
+			if (source.indexOf(c) >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @return the regular files below the directory, sorted by path
+	 */
+	static private List<Path> walk(Path directory) throws IOException
+	{
+		List<Path> paths = new ArrayList<Path>();
+		try (java.util.stream.Stream<Path> stream = Files.walk(directory)) {
+			stream.filter(Files::isRegularFile).sorted().forEach(paths::add);
+		}
+		return paths;
+	}
+	
+	/**
+	 * Compile every file, reporting each failure on standard error and carrying on
+	 * with the rest of the batch.
+	 * @param files the files to compile
+	 * @return the number of files that failed to compile
+	 */
+	private int compileAll(List<File> files)
+	{
+		final long start = System.nanoTime();
+		int failures = 0;
+		try (ClassOutput output = jarFile != null 
+				? new JarClassOutput(new File(jarFile), stored) 
+				: new DirectoryClassOutput(outputDirectory)) {
+			for (File file : files) {
+				try {
+					stats.setProgram(file.getName().replaceFirst("\\.[^.]*$", ""));
+					stats.beginPhase("read");
+					CharBuffer source = readSource(file);
+					CompiledProgram program = compileCached(source);
+					stats.beginPhase("write");
+					output.write(program);
+					stats.endPhase();
+					stats.count("files", 1);
+				} catch (Exception e) {
+					stats.endPhase();
+					failures++;
+					err.println(file.getPath() + ": " + e.getMessage());
+				}
+			}
+		} catch (IOException e) {
+			err.println((jarFile != null ? jarFile : outputDirectory) + ": " + e.getMessage());
+			return Math.max(failures, 1);
+		}
+		if (files.size() > 1) {
+			out.println("Compiled " + (files.size() - failures) + " of " + files.size() 
+					+ " files in " + (System.nanoTime() - start) / 1000000 + " ms" 
+					+ (failures > 0 ? " (" + failures + " failed)" : "")
+					+ (cache != null ? ", cache " + cache.getHits() + " hits, " 
+							+ cache.getMisses() + " misses" : ""));
+		}
+		if (stats.isEnabled()) {
+			if (jsonStats) {
+				stats.printJson(out);
+			} else {
+				stats.print(out);
+			}
+		}
+		return failures;
+	}
+	
+	/**
+	 * Parse every file with the parser profiler instead of compiling it, then print
+	 * the decision report. Files with syntax errors are reported and still counted.
+	 * @param files the files to parse
+	 * @return the number of files that failed to parse
+	 */
+	private int profileAll(List<File> files)
+	{
+		int failures = 0;
+		for (File file : files) {
+			try {
+				CharBuffer source = readSource(file);
+				parserProfile.parse(DijkstraFactory.makeScanner(source.array(), source.limit()));
+			} catch (Exception e) {
+				failures++;
+				err.println(file.getPath() + ": " + e.getMessage());
+			}
+		}
+		parserProfile.print(out);
+		return failures;
+	}
+	
+	/**
+	 * Compile one program, going through the cache when one was given.
+	 */
+	private CompiledProgram compileCached(CharBuffer programText)
+	{
+		if (cache == null) {
+			return compile(programText, customPackage, stats);
+		}
+		CompiledProgram program = cache.get(programText, customPackage);
+		if (program == null) {
+			program = compile(programText, customPackage, stats);
+			cache.put(programText, program);
+		}
+		return program;
+	}
+	
+	/**
+	 * Read the input file containing the actual Dijkstra code. The file is memory
+	 * mapped and decoded as UTF-8 straight into the character array the lexer reads,
+	 * so the source is never held as a byte[] or String as well.
+	 * @param file the source file
+	 * @return the program text, from position 0 to the limit of a heap buffer
+	 * @throws IOException if the file could not be read or is not valid UTF-8
+	 */
+	public static CharBuffer readSource(File file) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			final long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Source file is too large");
+			}
+			final MappedByteBuffer bytes = channel.map(MapMode.READ_ONLY, 0, size);
+			final CharBuffer chars = CharBuffer.allocate((int) size);	// UTF-8 never decodes to more chars than bytes
+			final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+			CoderResult result = decoder.decode(bytes, chars, true);
+			if (!result.isUnderflow()) {
+				result.throwException();
+			}
+			decoder.flush(chars);
+			chars.flip();
+			return chars;
+		}
 	}
 	
-	static private void doCompile()
+	/**
+	 * Run the whole compiler pipeline over one program. All compilation state lives
+	 * in a fresh {@link CompilationContext}, so this may be called from several
+	 * threads at once.
+	 * @param programText the Dijkstra source
+	 * @param packageName the package to generate the class in
+	 * @return the compiled program
+	 */
+	public static CompiledProgram compile(String programText, String packageName)
 	{
-		//Parse
-		DijkstraParser parser = DijkstraFactory.makeParser(new ANTLRInputStream(fileContents));
-		ParserRuleContext tree = parser.dijkstraText();
-		DijkstraSymbolVisitor visitor = new DijkstraSymbolVisitor();
-		tree.accept(visitor);
+		return compile(programText, packageName, false);
+	}
+	
+	/**
+	 * Compile a program, optionally emitting checks of 
+	 * {@link dijkstra.runtime.DijkstraRuntime#stopRequested} at every loop iteration
+	 * and call so a host can stop it.
+	 * @param programText the Dijkstra source
+	 * @param packageName the package to generate the class in
+	 * @param stoppable whether to emit the stop checks
+	 * @return the compiled program
+	 */
+	public static CompiledProgram compile(String programText, String packageName, 
+			boolean stoppable)
+	{
+		return compile(programText.toCharArray(), programText.length(), packageName, 
+				new CompilerStats(false), stoppable);
+	}
+	
+	/**
+	 * Compile a program held in a character buffer, such as one returned by 
+	 * {@link #readSource(File)}. A heap buffer starting at index 0 of its array is
+	 * scanned in place without copying.
+	 * @param programText the Dijkstra source, from position to limit
+	 * @param packageName the package to generate the class in
+	 * @param stats where phase timings and counters are added
+	 * @return the compiled program
+	 */
+	public static CompiledProgram compile(CharBuffer programText, String packageName, 
+			CompilerStats stats)
+	{
+		if (programText.hasArray() && programText.arrayOffset() == 0 && programText.position() == 0) {
+			return compile(programText.array(), programText.limit(), packageName, stats, false);
+		}
+		char[] text = programText.toString().toCharArray();
+		return compile(text, text.length, packageName, stats, false);
+	}
+	
+	private static CompiledProgram compile(char[] text, int length, String packageName, 
+			CompilerStats stats, boolean stoppable)
+	{
+		CompilationContext context = new CompilationContext(stats);
+		
+		//Parse, large programs on several threads
+		stats.beginPhase("parse");
+		DijkstraTextContext tree = ParallelParser.parse(text, length, context.getSymbolTableManager().getNames());
+		stats.setProgram(tree.program().ID().getText());
+		//Symbols, with the method bodies of large programs on several threads
+		stats.beginPhase("symbols");
+		DijkstraSymbolVisitor visitor = ParallelSymbolAnalyzer.analyze(tree, context);
 		
 		//Typecheck
 		DjikstraTypeResolutionVisitor resolver = new DjikstraTypeResolutionVisitor(visitor);
-		while(!resolver.isComplete()) {
-			tree.accept(resolver);
-		}
-		DjikstraTypeFinalizerVisitor finalizer = new DjikstraTypeFinalizerVisitor(resolver);
-		tree.accept(finalizer);
-		DijkstraTypeCheckVisitor checker = new DijkstraTypeCheckVisitor(finalizer);
+		stats.beginPhase("resolve");
+		int evaluations = resolver.resolve();
+		stats.beginPhase("check");
+		DijkstraTypeCheckVisitor checker = new DijkstraTypeCheckVisitor(resolver);
 		tree.accept(checker);
 		
 		//Code generation
-		CodeGenVisitor generator = new CodeGenVisitor(finalizer);
-		//set package
-		if (customPackage != null) {
-			generator.setClassPackage(customPackage);
-		}
+		stats.beginPhase("codegen");
+		CodeGenVisitor generator = new CodeGenVisitor(checker);
+		generator.setClassPackage(packageName);
+		generator.setStoppable(stoppable);
 		//compile
 		byte[] code = tree.accept(generator);
-		programName = generator.getProgramName();
-		FileOutputStream fos;
-		try {
-			fos = new FileOutputStream(outputDirectory + "/" 
-					+ customPackage + "/" + programName + ".class");
-			fos.write(code);
-			fos.close();
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
+		stats.endPhase();
+		if (stats.isEnabled()) {
+			stats.count("tokens", tree.getStop().getTokenIndex() + 1);
+			stats.count("parse tree nodes", countNodes(tree));
+			stats.count("symbols", context.getSymbolTableManager().getNumberOfSymbols());
+			stats.count("scopes", context.getSymbolTableManager().getNumberOfScopes());
+			stats.count("constraint evaluations", evaluations);
+			stats.count("methods", countMethods(code));
+			stats.count("bytecode bytes", code.length);
+		}
+		return new CompiledProgram(generator.getProgramName(), packageName, code);
+	}
+	
+	private static long countNodes(ParseTree tree)
+	{
+		long count = 0;
+		Deque<ParseTree> pending = new ArrayDeque<ParseTree>();
+		pending.push(tree);
+		while (!pending.isEmpty()) {
+			ParseTree node = pending.pop();
+			count++;
+			for (int i = 0; i < node.getChildCount(); i++) {
+				pending.push(node.getChild(i));
+			}
 		}
+		return count;
+	}
+	
+	private static int countMethods(byte[] code)
+	{
+		final int[] count = new int[1];
+		new ClassReader(code).accept(new ClassVisitor(Opcodes.ASM5) {
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String desc, 
+					String signature, String[] exceptions)
+			{
+				count[0]++;
+				return null;
+			}
+		}, ClassReader.SKIP_CODE);
+		return count[0];
 	}
 }
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra;
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+/**
+ * Thin command line client for {@link DijkstraServer}. The arguments are forwarded
+ * to the server unchanged along with the current directory, the server's output is
+ * printed, and the client exits with the server's status. The request latency
+ * measured by the server is printed on standard error.
+ */
+public class DijkstraClient
+{
+	/**
+	 * Main program to run the client.
+	 * @param args [-socket PATH] [-run | -shutdown] arguments for the server...
+	 * @throws IOException if the connection fails part way through
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		Path socket = DijkstraServer.defaultSocket();
+		String command = "compile";
+		int i = 0;
+		for (; i < args.length; i++) {
+			if (args[i].equals("-socket")) {
+				socket = Paths.get(args[++i]);
+			} else if (args[i].equals("-run")) {
+				command = "run";
+			} else if (args[i].equals("-shutdown")) {
+				command = "shutdown";
+			} else {
+				break;
+			}
+		}
+		StringBuilder request = new StringBuilder(command);
+		request.append('\t').append(new File("").getAbsolutePath());
+		for (; i < args.length; i++) {
+			if (args[i].indexOf('\t') >= 0 || args[i].indexOf('\n') >= 0) {
+				System.err.println("Arguments may not contain tabs or newlines: " + args[i]);
+				System.exit(2);
+			}
+			request.append('\t').append(args[i]);
+		}
+		
+		final SocketChannel channel;
+		try {
+			channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+		} catch (SocketException e) {
+			System.err.println("No Dijkstra server on " + socket 
+					+ "; start one with: java dijkstra.DijkstraServer -socket " + socket);
+			System.exit(2);
+			return;
+		}
+		int status = 1;
+		try (SocketChannel c = channel) {
+			Writer writer = new OutputStreamWriter(Channels.newOutputStream(c), "UTF-8");
+			writer.write(request.append('\n').toString());
+			writer.flush();
+			BufferedReader reader = new BufferedReader(
+					new InputStreamReader(Channels.newInputStream(c), "UTF-8"));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("out ")) {
+					System.out.println(line.substring(4));
+				} else if (line.startsWith("err ")) {
+					System.err.println(line.substring(4));
+				} else if (line.startsWith("end ")) {
+					String[] end = line.split(" ");
+					status = Integer.parseInt(end[1]);
+					System.err.println("[dijkstra server " + (Long.parseLong(end[2]) / 1000.0) + " ms]");
+					break;
+				}
+			}
+		}
+		System.exit(status);
+	}
+}
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra;
+
+/**
+ * Entry point for embedding the compiler. Programs are compiled in memory and
+ * defined as hidden classes, so a program's class is unloaded once its
+ * {@link DijkstraProgram} handle is no longer referenced. A compiler has no
+ * mutable state and may be shared between threads.
+ */
+public class DijkstraCompiler
+{
+	private final String packageName;
+	private final boolean stoppable;
+	
+	/**
+	 * Create a compiler that generates classes in the default djkcode package.
+	 */
+	public DijkstraCompiler()
+	{
+		this("djkcode");
+	}
+	
+	/**
+	 * @param packageName the package generated classes are placed in
+	 */
+	public DijkstraCompiler(String packageName)
+	{
+		this(packageName, false);
+	}
+	
+	/**
+	 * @param packageName the package generated classes are placed in
+	 * @param stoppable whether generated code checks 
+	 * 		{@link dijkstra.runtime.DijkstraRuntime#stopRequested} at every loop 
+	 * 		iteration and call, so a host can stop a program that does not finish
+	 */
+	public DijkstraCompiler(String packageName, boolean stoppable)
+	{
+		this.packageName = packageName;
+		this.stoppable = stoppable;
+	}
+	
+	/**
+	 * Compile a program without loading it.
+	 * @param programText the Dijkstra source
+	 * @return the compiled program
+	 */
+	public CompiledProgram compile(String programText)
+	{
+		return Dijkstra.compile(programText, packageName, stoppable);
+	}
+	
+	/**
+	 * Compile a program and load it.
+	 * @param programText the Dijkstra source
+	 * @return a handle on the loaded program
+	 */
+	public DijkstraProgram load(String programText)
+	{
+		return load(compile(programText));
+	}
+	
+	/**
+	 * Load a program compiled earlier, for example one taken from a {@link CompileCache}.
+	 * @param program the compiled program
+	 * @return a handle on the loaded program
+	 */
+	public DijkstraProgram load(CompiledProgram program)
+	{
+		return new DijkstraProgram(program.getProgramName(), PackageLookup.define(program));
+	}
+}
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra;
+
+import java.lang.invoke.*;
+import java.lang.reflect.*;
+import java.util.*;
+
+import dijkstra.utility.DijkstraException;
+
+/**
+ * A loaded Dijkstra program. The main method and every procedure (p*) and
+ * function (f*) are available as method handles. Holding this handle keeps the
+ * program's class loaded; dropping it lets the class be unloaded.
+ */
+public class DijkstraProgram
+{
+	private final String name;
+	private final Class<?> programClass;
+	private final MethodHandle main;
+	private final Map<String, MethodHandle> methods = new TreeMap<String, MethodHandle>();
+	
+	/**
+	 * @param name the program name
+	 * @param lookup a lookup on the program's class
+	 */
+	DijkstraProgram(String name, MethodHandles.Lookup lookup)
+	{
+		this.name = name;
+		this.programClass = lookup.lookupClass();
+		MethodHandle mainHandle = null;
+		try {
+			for (Method method : programClass.getDeclaredMethods()) {
+				if (!Modifier.isStatic(method.getModifiers())) {
+					continue;
+				}
+				if (method.getName().equals("main")) {
+					mainHandle = lookup.unreflect(method);
+				} else {
+					methods.put(method.getName(), lookup.unreflect(method));
+				}
+			}
+		} catch (IllegalAccessException e) {
+			throw new DijkstraException("Cannot access program " + name, e);
+		}
+		main = mainHandle;
+	}
+	
+	/**
+	 * Run the program's main method.
+	 * @throws DijkstraException if the program aborts, or wrapping any checked exception
+	 */
+	public void run()
+	{
+		try {
+			main.invokeExact(new String[0]);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new DijkstraException("Program " + name + " failed", e);
+		}
+	}
+
+	/**
+	 * @return the program name
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * @return the loaded class
+	 */
+	Class<?> getProgramClass()
+	{
+		return programClass;
+	}
+
+	/**
+	 * @return the main method, of type (String[])void
+	 */
+	public MethodHandle getMain()
+	{
+		return main;
+	}
+	
+	/**
+	 * @param methodName the generated method name, p or f followed by the Dijkstra name
+	 * @return the procedure or function, or null if the program has no such method
+	 */
+	public MethodHandle getMethod(String methodName)
+	{
+		return methods.get(methodName);
+	}
+
+	/**
+	 * @return every procedure and function by generated method name, in name order
+	 */
+	public Map<String, MethodHandle> getMethods()
+	{
+		return Collections.unmodifiableMap(methods);
+	}
+}
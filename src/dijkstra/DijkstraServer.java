@@ -0,0 +1,335 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra;
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+
+import dijkstra.runtime.DijkstraRuntime;
+import dijkstra.utility.DijkstraException;
+
+/**
+ * A resident Dijkstra compiler. Keeping one JVM running means ANTLR, ASM and the
+ * compiler itself are loaded and JIT compiled once, and the parser's DFA cache
+ * stays warm between requests. Every request is compiled with its own
+ * {@link dijkstra.utility.CompilationContext}, so no symbol table state is shared.
+ * <p>
+ * The server listens on a Unix domain socket (-socket) or reads requests from
+ * standard input and answers on standard output (-stdio). A compile request can
+ * write any file the server's user can and a run request executes the program,
+ * so only that user may connect: the socket is made in a directory nobody else
+ * can enter and is itself readable and writable by its owner alone. A request
+ * is one line of tab separated fields:
+ * <pre>
+ *   compile  cwd  args...                           same arguments as the Dijkstra command line
+ *   run      cwd  [-p package] source [input...]    compile one program and run its main method
+ *   shutdown
+ * </pre>
+ * Relative paths are resolved against cwd. The response is any number of
+ * "out text" and "err text" lines followed by "end status microseconds".
+ * <p>
+ * Programs run one at a time, each on a thread of its own. One that has not
+ * finished within the run timeout (-run-timeout, default 30 seconds) is
+ * stopped: server programs are compiled with checks of
+ * {@link DijkstraRuntime#stopRequested} at every loop iteration and call, and the
+ * request fails with status 1.
+ * @see DijkstraClient
+ */
+public class DijkstraServer
+{
+	private static final Set<PosixFilePermission> OWNER_ONLY_DIRECTORY =
+			PosixFilePermissions.fromString("rwx------");
+	private static final Set<PosixFilePermission> OWNER_ONLY_SOCKET =
+			PosixFilePermissions.fromString("rw-------");
+	
+	private static final long DEFAULT_RUN_TIMEOUT = 30000;
+	
+	private final Object runLock = new Object();
+	private final PrintStream log;
+	private final long runTimeout;
+	private volatile boolean running = true;
+	private ServerSocketChannel serverChannel = null;
+	
+	/**
+	 * Main program to run the server.
+	 * @param args [-socket PATH | -stdio] [-run-timeout SECONDS]
+	 * @throws IOException if the socket cannot be opened
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		Path socket = defaultSocket();
+		long runTimeout = DEFAULT_RUN_TIMEOUT;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-socket")) {
+				socket = Paths.get(args[++i]);
+			} else if (args[i].equals("-stdio")) {
+				socket = null;
+			} else if (args[i].equals("-run-timeout")) {
+				runTimeout = (long) (Double.parseDouble(args[++i]) * 1000);
+			} else {
+				System.out.println("Arguments: [-socket PATH | -stdio] [-run-timeout SECONDS]");
+				System.exit(args[i].equals("-h") ? 0 : 1);
+			}
+		}
+		DijkstraServer server = new DijkstraServer(System.err, runTimeout);
+		if (socket == null) {
+			server.serve(System.in, System.out);
+		} else {
+			server.listen(socket);
+		}
+	}
+	
+	/**
+	 * @return the socket the server and client use when none is given: server.sock
+	 * 	in a directory of the temporary directory named for the user
+	 */
+	public static Path defaultSocket()
+	{
+		return Paths.get(System.getProperty("java.io.tmpdir"), 
+				"dijkstra-" + System.getProperty("user.name"), "server.sock");
+	}
+	
+	/**
+	 * @param log where each request and its latency is logged
+	 */
+	public DijkstraServer(PrintStream log)
+	{
+		this(log, DEFAULT_RUN_TIMEOUT);
+	}
+	
+	/**
+	 * @param log where each request and its latency is logged
+	 * @param runTimeout the milliseconds a run request may take before its program
+	 * 		is stopped
+	 */
+	public DijkstraServer(PrintStream log, long runTimeout)
+	{
+		this.log = log;
+		this.runTimeout = runTimeout;
+	}
+	
+	/**
+	 * Accept connections on a Unix domain socket until a shutdown request arrives.
+	 * Each connection is served on its own thread. The socket's directory is created
+	 * if needed and must be owned by the server's user and closed to everyone else;
+	 * a stale socket left in it is replaced.
+	 * @param socket the path of the socket
+	 * @throws IOException if the directory is not private or the socket cannot be opened
+	 */
+	public void listen(Path socket) throws IOException
+	{
+		socket = socket.toAbsolutePath();
+		checkPrivate(socket.getParent());
+		Files.deleteIfExists(socket);
+		try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+			server.bind(UnixDomainSocketAddress.of(socket));
+			Files.setPosixFilePermissions(socket, OWNER_ONLY_SOCKET);
+			serverChannel = server;
+			log.println("Dijkstra server listening on " + socket);
+			while (running) {
+				final SocketChannel client;
+				try {
+					client = server.accept();
+				} catch (ClosedChannelException e) {
+					break;		// closed by shutdown
+				}
+				Thread thread = new Thread(() -> {
+					try (SocketChannel c = client) {
+						serve(Channels.newInputStream(c), Channels.newOutputStream(c));
+					} catch (IOException e) {
+						log.println("Connection failed: " + e.getMessage());
+					}
+				}, "dijkstra-server");
+				thread.setDaemon(true);
+				thread.start();
+			}
+		} finally {
+			Files.deleteIfExists(socket);
+		}
+	}
+	
+	/**
+	 * Create the socket's directory with owner only permissions, or check that an
+	 * existing one belongs to this user and gives nobody else any access.
+	 */
+	private static void checkPrivate(Path directory) throws IOException
+	{
+		if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+			throw new IOException("The socket needs POSIX file permissions; use -stdio instead");
+		}
+		if (Files.notExists(directory, LinkOption.NOFOLLOW_LINKS)) {
+			Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(OWNER_ONLY_DIRECTORY));
+		}
+		final UserPrincipal user = directory.getFileSystem().getUserPrincipalLookupService()
+				.lookupPrincipalByName(System.getProperty("user.name"));
+		final PosixFileAttributes attributes = Files.readAttributes(directory, 
+				PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		if (!attributes.isDirectory() || !attributes.owner().equals(user)
+				|| !OWNER_ONLY_DIRECTORY.containsAll(attributes.permissions())) {
+			throw new IOException(directory + " must be a directory owned by " + user.getName() 
+					+ " that no one else can access (chmod 700)");
+		}
+	}
+	
+	/**
+	 * Answer requests read from the input until it ends or the server is shut down.
+	 * @param in the request stream
+	 * @param out the response stream
+	 * @throws IOException if reading or writing fails
+	 */
+	public void serve(InputStream in, OutputStream out) throws IOException
+	{
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+		PrintStream writer = new PrintStream(new BufferedOutputStream(out), false, "UTF-8");
+		String line;
+		while (running && (line = reader.readLine()) != null) {
+			if (!line.isEmpty()) {
+				handle(line.split("\t", -1), writer);
+				writer.flush();
+			}
+		}
+	}
+	
+	/**
+	 * Handle one request and write its framed response.
+	 */
+	private void handle(String[] fields, PrintStream writer) throws IOException
+	{
+		final long start = System.nanoTime();
+		final ByteArrayOutputStream outBuffer = new ByteArrayOutputStream();
+		final ByteArrayOutputStream errBuffer = new ByteArrayOutputStream();
+		final PrintStream out = new PrintStream(outBuffer, true, "UTF-8");
+		final PrintStream err = new PrintStream(errBuffer, true, "UTF-8");
+		final String command = fields[0];
+		final String cwd = fields.length > 1 ? fields[1] : "";
+		final String[] args = Arrays.copyOfRange(fields, Math.min(2, fields.length), fields.length);
+		int status;
+		try {
+			if (command.equals("compile")) {
+				status = new Dijkstra(out, err, cwd).run(args);
+			} else if (command.equals("run")) {
+				status = runProgram(args, cwd, out, err);
+			} else if (command.equals("shutdown")) {
+				status = 0;
+				shutdown();
+			} else {
+				err.println("Unknown request: " + command);
+				status = 2;
+			}
+		} catch (Exception e) {
+			err.println(e.getMessage());
+			status = 1;
+		}
+		final long micros = (System.nanoTime() - start) / 1000;
+		writeFrames("out", outBuffer, writer);
+		writeFrames("err", errBuffer, writer);
+		writer.println("end " + status + " " + micros);
+		log.println(command + " " + String.join(" ", args) + ": status " + status 
+				+ " in " + (micros / 1000.0) + " ms");
+	}
+	
+	private void writeFrames(String kind, ByteArrayOutputStream buffer, PrintStream writer) 
+			throws IOException
+	{
+		if (buffer.size() == 0) {
+			return;
+		}
+		BufferedReader lines = new BufferedReader(new StringReader(buffer.toString("UTF-8")));
+		String line;
+		while ((line = lines.readLine()) != null) {
+			writer.println(kind + " " + line);
+		}
+	}
+	
+	/**
+	 * Compile one program in memory and run its main method on a thread of its own,
+	 * stopping it after the run timeout. Runs hold a lock because the generated
+	 * code prints through System.out and reads DijkstraRuntime's inputs; the lock is
+	 * held until the program's thread has ended, which a stopped program does at
+	 * its next loop iteration or call.
+	 * @return the exit status
+	 */
+	private int runProgram(String[] args, String cwd, PrintStream out, PrintStream err) 
+			throws Exception
+	{
+		String packageName = "djkcode";
+		int i = 0;
+		if (args.length > 1 && args[0].equals("-p")) {
+			packageName = args[1];
+			i = 2;
+		}
+		if (i >= args.length) {
+			err.println("A run request needs a source file");
+			return 2;
+		}
+		File file = new File(args[i]);
+		if (!file.isAbsolute() && !cwd.isEmpty()) {
+			file = new File(cwd, args[i]);
+		}
+		DijkstraProgram program = new DijkstraCompiler(packageName, true).load(Dijkstra.readSource(file).toString());
+		synchronized (runLock) {
+			final PrintStream oldOut = System.out;
+			final PrintStream oldErr = System.err;
+			System.setOut(out);
+			System.setErr(err);
+			DijkstraRuntime.setInputs(Arrays.copyOfRange(args, i + 1, args.length));
+			final Throwable[] failure = new Throwable[1];
+			final Thread thread = new Thread(() -> {
+				try {
+					program.run();
+				} catch (Throwable e) {
+					failure[0] = e;
+				}
+			}, "dijkstra-run");
+			thread.setDaemon(true);
+			try {
+				thread.start();
+				thread.join(runTimeout);
+				if (thread.isAlive()) {
+					DijkstraRuntime.setStopRequested(true);
+					thread.join();
+					err.println("Program " + program.getName() + " did not finish in " 
+							+ runTimeout + " ms and was stopped");
+					return 1;
+				}
+				if (failure[0] instanceof DijkstraException) {	// runtime aborts print their own message
+					return 1;
+				}
+				if (failure[0] != null) {
+					err.println(failure[0]);
+					return 1;
+				}
+				return 0;
+			} finally {
+				System.setOut(oldOut);
+				System.setErr(oldErr);
+				DijkstraRuntime.setInputs(null);
+				DijkstraRuntime.setStopRequested(false);
+			}
+		}
+	}
+	
+	/**
+	 * Stop accepting requests.
+	 */
+	public void shutdown() throws IOException
+	{
+		running = false;
+		if (serverChannel != null) {
+			serverChannel.close();
+		}
+	}
+}
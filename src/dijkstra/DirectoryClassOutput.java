@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra;
+
+import java.io.*;
+
+/**
+ * Writes each class to its own file below an output directory, creating the
+ * package directories as needed.
+ */
+public class DirectoryClassOutput implements ClassOutput
+{
+	private final String outputDirectory;
+	
+	/**
+	 * @param outputDirectory the root of the class file tree
+	 */
+	public DirectoryClassOutput(String outputDirectory)
+	{
+		this.outputDirectory = outputDirectory;
+	}
+	
+	@Override
+	public void write(CompiledProgram program) throws IOException
+	{
+		File file = new File(outputDirectory, program.getClassFileName());
+		file.getParentFile().mkdirs();
+		try (FileOutputStream fos = new FileOutputStream(file)) {
+			fos.write(program.getCode());
+		}
+	}
+	
+	@Override
+	public void close()
+	{
+	}
+}
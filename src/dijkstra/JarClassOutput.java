@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra;
+
+import java.io.*;
+import java.util.jar.*;
+import java.util.zip.*;
+
+/**
+ * Streams every class of a batch into one JAR file. Entries are deflated unless
+ * the output is created as stored, which makes the archive larger but faster to
+ * load from. If the batch turns out to hold exactly one program the JAR gets a
+ * manifest naming it as Main-Class; to keep the manifest the first entry, the
+ * first class is held back until a second one arrives or the output is closed.
+ */
+public class JarClassOutput implements ClassOutput
+{
+	private final JarOutputStream jar;
+	private final boolean stored;
+	private CompiledProgram pending = null;
+	private int count = 0;
+	
+	/**
+	 * @param jarFile the archive to create
+	 * @param stored true to write uncompressed entries
+	 * @throws IOException if the archive cannot be created
+	 */
+	public JarClassOutput(File jarFile, boolean stored) throws IOException
+	{
+		jar = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(jarFile), 1 << 16));
+		this.stored = stored;
+	}
+	
+	@Override
+	public void write(CompiledProgram program) throws IOException
+	{
+		if (count++ == 0) {
+			pending = program;
+			return;
+		}
+		if (pending != null) {
+			writeEntry(pending.getClassFileName(), pending.getCode());
+			pending = null;
+		}
+		writeEntry(program.getClassFileName(), program.getCode());
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		try {
+			if (pending != null) {
+				Manifest manifest = new Manifest();
+				manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+				manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, pending.getClassName());
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				manifest.write(bytes);
+				writeEntry(JarFile.MANIFEST_NAME, bytes.toByteArray());
+				writeEntry(pending.getClassFileName(), pending.getCode());
+				pending = null;
+			}
+		} finally {
+			jar.close();
+		}
+	}
+	
+	private void writeEntry(String name, byte[] data) throws IOException
+	{
+		JarEntry entry = new JarEntry(name);
+		if (stored) {
+			CRC32 crc = new CRC32();
+			crc.update(data);
+			entry.setMethod(ZipEntry.STORED);
+			entry.setSize(data.length);
+			entry.setCompressedSize(data.length);
+			entry.setCrc(crc.getValue());
+		}
+		jar.putNextEntry(entry);
+		jar.write(data);
+		jar.closeEntry();
+	}
+}
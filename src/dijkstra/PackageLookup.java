@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra;
+
+import static org.objectweb.asm.Opcodes.*;
+
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.objectweb.asm.*;
+
+import dijkstra.utility.DijkstraException;
+
+/**
+ * Defines compiled programs as hidden classes. A hidden class must be defined
+ * through a lookup on a class in its own package, so for each package programs
+ * are generated in, a small anchor class is generated into that package, loaded
+ * once in a loader of its own, and asked for its lookup. Programs are defined
+ * without the nestmate or strong options, so each is unloaded as soon as it is
+ * unreachable while the anchor stays loaded.
+ */
+class PackageLookup
+{
+	private static final String ANCHOR = "$DijkstraAnchor";
+	private static final ConcurrentHashMap<String, MethodHandles.Lookup> anchors =
+			new ConcurrentHashMap<String, MethodHandles.Lookup>();
+	
+	private PackageLookup()
+	{
+		// static methods only
+	}
+	
+	/**
+	 * Define a program as a hidden class and initialize it.
+	 * @param program the compiled program
+	 * @return a lookup with full access to the program's class
+	 */
+	static MethodHandles.Lookup define(CompiledProgram program)
+	{
+		try {
+			return anchors.computeIfAbsent(program.getPackageName(), PackageLookup::anchor)
+					.defineHiddenClass(program.getCode(), true);
+		} catch (IllegalAccessException e) {
+			throw new DijkstraException("Cannot define program " + program.getProgramName(), e);
+		}
+	}
+	
+	/**
+	 * @return the lookup of a new anchor class in the package
+	 */
+	private static MethodHandles.Lookup anchor(String packageName)
+	{
+		final String name = packageName.replace('.', '/') + "/" + ANCHOR;
+		final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(V1_8, ACC_PUBLIC + ACC_FINAL + ACC_SUPER, name, null, "java/lang/Object", null);
+		final MethodVisitor mv = cw.visitMethod(ACC_PUBLIC + ACC_STATIC, "lookup", 
+				"()Ljava/lang/invoke/MethodHandles$Lookup;", null, null);
+		mv.visitCode();
+		mv.visitMethodInsn(INVOKESTATIC, "java/lang/invoke/MethodHandles", "lookup", 
+				"()Ljava/lang/invoke/MethodHandles$Lookup;", false);
+		mv.visitInsn(ARETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+		cw.visitEnd();
+		final byte[] code = cw.toByteArray();
+		final ClassLoader loader = new ClassLoader(PackageLookup.class.getClassLoader()) {
+			{
+				defineClass(name.replace('/', '.'), code, 0, code.length);
+			}
+		};
+		try {
+			return (MethodHandles.Lookup) Class.forName(name.replace('/', '.'), true, loader)
+					.getMethod("lookup").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			throw new DijkstraException("Cannot create an anchor in package " + packageName, e);
+		}
+	}
+}
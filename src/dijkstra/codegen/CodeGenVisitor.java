@@ -3,15 +3,20 @@ package dijkstra.codegen;
 import static dijkstra.utility.DijkstraType.INT;
 import static org.objectweb.asm.Opcodes.*;
 
+import java.util.List;
 import java.util.Stack;
 
+import dijkstra.jfr.ClassGeneratedEvent;
+import jdk.jfr.FlightRecorder;
 import dijkstra.semantic.DjikstraTypeFinalizerVisitor;
 import dijkstra.symbol.MethodSymbol;
 import dijkstra.symbol.Symbol;
+import dijkstra.utility.CompilationContext;
 import dijkstra.utility.DijkstraType;
 
 import org.antlr.v4.runtime.misc.NotNull;
 import org.antlr.v4.runtime.tree.ParseTreeProperty;
+import org.antlr.v4.runtime.tree.TerminalNode;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.Label;
@@ -22,16 +27,19 @@ import dijkstra.lexparse.DijkstraParser;
 import dijkstra.lexparse.DijkstraParser.*;
 
 public class CodeGenVisitor extends DijkstraBaseVisitor<byte[]> {
-	public ParseTreeProperty<Symbol> symbols = new ParseTreeProperty<Symbol>();
-	public ParseTreeProperty<Symbol> functions = new ParseTreeProperty<Symbol>();
-	public ParseTreeProperty<Symbol> arrays = new ParseTreeProperty<Symbol>();
-	public ParseTreeProperty<DijkstraType> types = new ParseTreeProperty<DijkstraType>();
+	public ParseTreeProperty<Symbol> symbols;
+	public ParseTreeProperty<Symbol> functions;
+	public ParseTreeProperty<Symbol> arrays;
+	public ParseTreeProperty<DijkstraType> types;
+	public CompilationContext context;
+	private final JVMInfo jvmInfo;
 	private ClassWriter cw = null;
 	private MethodVisitor mv = null;
 	private MethodVisitor oldmv = null;
 	
 	private final String DEFAULT_PACKAGE = "djkcode";
 	private String classPackage;
+	private boolean stoppable = false;
 	private String classNameQualified;
 	//private boolean needValue;		// used to indicate whether we need an ID value or address
 	final private Stack<Label> guardLabelStack;
@@ -45,6 +53,8 @@ public class CodeGenVisitor extends DijkstraBaseVisitor<byte[]> {
 		this.symbols = oldTree.symbols;
 		this.arrays = oldTree.arrays;
 		this.functions = oldTree.functions;
+		this.context = oldTree.context;
+		jvmInfo = context.getJVMInfo();
 		classPackage = DEFAULT_PACKAGE;
 		guardLabelStack = new Stack<Label>();
 		typeNeeded = new Stack<DijkstraType>();
@@ -64,6 +74,11 @@ public class CodeGenVisitor extends DijkstraBaseVisitor<byte[]> {
 	@Override
 	public byte[] visitProgram(ProgramContext program) 
 	{
+		// Event classes are only touched once something has started Flight Recorder
+		final ClassGeneratedEvent event = FlightRecorder.isInitialized() ? new ClassGeneratedEvent() : null;
+		if (event != null) {
+			event.begin();
+		}
 		this.programName = program.ID().getText();
 		// prolog
 		cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES); 
@@ -90,7 +105,15 @@ public class CodeGenVisitor extends DijkstraBaseVisitor<byte[]> {
 		mv.visitEnd();
 		// Actual end of generation
 		cw.visitEnd();
-		return cw.toByteArray();
+		byte[] code = cw.toByteArray();
+		if (event != null && event.shouldCommit()) {
+			event.program = programName;
+			event.className = classNameQualified.replace('/', '.');
+			event.line = program.getStart().getLine();
+			event.bytecodeSize = code.length;
+			event.commit();
+		}
+		return code;
 	}
 	
 	@Override
@@ -113,20 +136,18 @@ public class CodeGenVisitor extends DijkstraBaseVisitor<byte[]> {
 	@Override
 	public byte[] visitAssignStatement(AssignStatementContext ctx) 
 	{
-		//iterate over var list and expressionList
-		VarListContext varList = ctx.varList();
-		ExpressionListContext exprList = ctx.expressionList();
-		Stack<Symbol> assignees = new Stack<Symbol>();
-		Stack<Boolean> isArrays = new Stack<Boolean>();
-		while(varList != null) {				
-			VarContext var = varList.var();
+		//evaluate every target and value first, then store from the top of the stack down
+		List<VarContext> vars = ctx.varList().var();
+		List<ExpressionContext> exprs = ctx.expressionList().expression();
+		Symbol[] assignees = new Symbol[vars.size()];
+		for(int i = 0; i < vars.size(); i++) {
+			VarContext var = vars.get(i);
 			Symbol curSymbol = symbols.get(var);
 			if(curSymbol != null) {
 				typeNeeded.push(curSymbol.getType());
-				exprList.expression().accept(this);
+				exprs.get(i).accept(this);
 				typeNeeded.pop();
-				assignees.push(curSymbol);
-				isArrays.push(false);
+				assignees[i] = curSymbol;
 			} else {
 				ArrayAccessorContext arr = var.arrayAccessor();
 				Symbol curArray = arrays.get(arr);
@@ -135,18 +156,14 @@ public class CodeGenVisitor extends DijkstraBaseVisitor<byte[]> {
 				arr.expression().accept(this);
 				typeNeeded.pop();
 				typeNeeded.push(curArray.getType());
-				exprList.expression().accept(this);
+				exprs.get(i).accept(this);
 				typeNeeded.pop();
-				assignees.push(curArray);
-				isArrays.push(true);
+				assignees[i] = curArray;
 			}
-			varList = varList.varList();
-			exprList = exprList.expressionList();
 		}
-		while(!assignees.isEmpty()) {
-			Symbol cur = assignees.pop();
-			Boolean isArray = isArrays.pop();
-			if(isArray) {
+		for(int i = assignees.length - 1; i >= 0; i--) {
+			Symbol cur = assignees[i];
+			if(vars.get(i).arrayAccessor() != null) {
 				if(cur.getType() == DijkstraType.FLOAT) {
 					mv.visitInsn(FASTORE);
 				} else {
@@ -162,15 +179,8 @@ public class CodeGenVisitor extends DijkstraBaseVisitor<byte[]> {
 	
 	@Override
 	public byte[] visitInputStatement(InputStatementContext ctx) {
-		IdListContext idlist = ctx.idList();
-		Stack<IdListContext> ids = new Stack<IdListContext>();
-		while(idlist != null) {
-			ids.push(idlist);
-			idlist = idlist.idList();
-		}
-		while(!ids.isEmpty()) {
-			idlist = ids.pop();
-			Symbol s = symbols.get(idlist);
+		for (TerminalNode idNode : ctx.idList().ID()) {
+			Symbol s = symbols.get(idNode);
 			mv.visitLdcInsn(s.getId());	// Name of the variable
 			if (s.getType() == INT) {
 				mv.visitMethodInsn(INVOKESTATIC, "dijkstra/runtime/DijkstraRuntime", "inputInt", 
@@ -209,6 +219,9 @@ public class CodeGenVisitor extends DijkstraBaseVisitor<byte[]> {
 	public byte[] visitIterativeStatement (IterativeStatementContext ctx) {
 		final Label startLabel = new Label();
 		mv.visitLabel(startLabel);
+		if (stoppable) {
+			checkStop();
+		}
 		guardLabelStack.push(startLabel);
 		visitChildren(ctx);
 		guardLabelStack.pop();
@@ -228,9 +241,8 @@ public class CodeGenVisitor extends DijkstraBaseVisitor<byte[]> {
 	
 	@Override
 	public byte[] visitArrayDeclaration (ArrayDeclarationContext ctx) {
-		IdListContext idlist = ctx.idList();
-		while(idlist != null) {
-			Symbol s = symbols.get(idlist);
+		for (TerminalNode idNode : ctx.idList().ID()) {
+			Symbol s = symbols.get(idNode);
 			typeNeeded.push(INT);
 			ctx.expression().accept(this);
 			typeNeeded.pop();
@@ -240,7 +252,6 @@ public class CodeGenVisitor extends DijkstraBaseVisitor<byte[]> {
 				mv.visitIntInsn(NEWARRAY, T_INT);
 			}
 			createArray(s);
-			idlist = idlist.idList();
 		}
 		return null;
 	}
@@ -248,21 +259,17 @@ public class CodeGenVisitor extends DijkstraBaseVisitor<byte[]> {
 	@Override
 	public byte[] visitProcedureDeclaration(ProcedureDeclarationContext ctx) {
 		oldmv = mv;
-		JVMInfo.enterScope();
+		jvmInfo.enterScope();
 		MethodSymbol proc = (MethodSymbol) symbols.get(ctx);
 		mv = cw.visitMethod(ACC_PUBLIC + ACC_STATIC, proc.getName(), proc.getSignature(), null, null); 
 		mv.visitCode();
-		//We have to visit the parameters in reverse order to get the proper locals
+		if (stoppable) {
+			checkStop();
+		}
+		//Parameters take the first locals, in order
 		if(ctx.parameterList() != null) {
-			Stack<ParameterContext> args = new Stack<ParameterContext>();
-			ParameterListContext params = ctx.parameterList();
-			while(params != null) {
-				args.push(params.parameter());
-				params = params.parameterList();
-			}
-			while(!args.isEmpty()) {
-				Symbol s = symbols.get(args.pop());
-				s.getAddress();
+			for (ParameterContext param : ctx.parameterList().parameter()) {
+				addressOf(symbols.get(param));
 			}
 		}
 		ctx.compoundStatement().accept(this);
@@ -271,28 +278,24 @@ public class CodeGenVisitor extends DijkstraBaseVisitor<byte[]> {
 		mv.visitMaxs(0, 0);
 		mv.visitEnd();
 		mv = oldmv;
-		JVMInfo.exitScope();
+		jvmInfo.exitScope();
 		return null;
 	}
 	
 	@Override
 	public byte[] visitFunctionDeclaration(FunctionDeclarationContext ctx) {
 		oldmv = mv;
-		JVMInfo.enterScope();
+		jvmInfo.enterScope();
 		MethodSymbol fun = (MethodSymbol) functions.get(ctx);
 		mv = cw.visitMethod(ACC_PUBLIC + ACC_STATIC, fun.getName(), fun.getSignature(), null, null); 
 		mv.visitCode();
-		//We have to visit the parameters in reverse order to get the proper locals
+		if (stoppable) {
+			checkStop();
+		}
+		//Parameters take the first locals, in order
 		if(ctx.parameterList() != null) {
-			Stack<ParameterContext> args = new Stack<ParameterContext>();
-			ParameterListContext params = ctx.parameterList();
-			while(params != null) {
-				args.push(params.parameter());
-				params = params.parameterList();
-			}
-			while(!args.isEmpty()) {
-				Symbol s = symbols.get(args.pop());
-				s.getAddress();
+			for (ParameterContext param : ctx.parameterList().parameter()) {
+				addressOf(symbols.get(param));
 			}
 		}
 		ctx.compoundStatement().accept(this);
@@ -305,7 +308,7 @@ public class CodeGenVisitor extends DijkstraBaseVisitor<byte[]> {
 		mv.visitMaxs(0, 0);
 		mv.visitEnd();
 		mv = oldmv;
-		JVMInfo.exitScope();
+		jvmInfo.exitScope();
 		return null;
 	}
 	
@@ -324,18 +327,13 @@ public class CodeGenVisitor extends DijkstraBaseVisitor<byte[]> {
 	public byte[] visitFunctionCall(FunctionCallContext ctx) {
 		MethodSymbol fun = (MethodSymbol) functions.get(ctx);
 		//put arguments
-		ArgListContext params = ctx.argList();
-		Stack<ExpressionContext> args = new Stack<ExpressionContext>();
-		while(params != null) {
-			args.push(params.expression());
-			params = params.argList();
-		}
-		int i = 0;
-		while(!args.isEmpty()) {
-			typeNeeded.push(fun.getParameter(i));
-			args.pop().accept(this);
-			typeNeeded.pop();
-			++i;
+		if(ctx.argList() != null) {
+			List<ExpressionContext> args = ctx.argList().expression();
+			for(int i = 0; i < args.size(); i++) {
+				typeNeeded.push(fun.getParameter(i));
+				args.get(i).accept(this);
+				typeNeeded.pop();
+			}
 		}
 		//call
 		mv.visitMethodInsn(INVOKESTATIC, classNameQualified, fun.getName(), fun.getSignature(), false);
@@ -346,18 +344,13 @@ public class CodeGenVisitor extends DijkstraBaseVisitor<byte[]> {
 	public byte[] visitProcedureCall(ProcedureCallContext ctx) {
 		MethodSymbol proc = (MethodSymbol) symbols.get(ctx);
 		//put arguments
-		ArgListContext params = ctx.argList();
-		Stack<ExpressionContext> args = new Stack<ExpressionContext>();
-		while(params != null) {
-			args.push(params.expression());
-			params = params.argList();
-		}
-		int i = 0;
-		while(!args.isEmpty()) {
-			typeNeeded.push(proc.getParameter(i));
-			args.pop().accept(this);
-			typeNeeded.pop();
-			++i;
+		if(ctx.argList() != null) {
+			List<ExpressionContext> args = ctx.argList().expression();
+			for(int i = 0; i < args.size(); i++) {
+				typeNeeded.push(proc.getParameter(i));
+				args.get(i).accept(this);
+				typeNeeded.pop();
+			}
 		}
 		//call
 		mv.visitMethodInsn(INVOKESTATIC, classNameQualified, proc.getName(), proc.getSignature(), false);
@@ -693,20 +686,20 @@ public class CodeGenVisitor extends DijkstraBaseVisitor<byte[]> {
 	public void getArray(Symbol s) {
 		if(s.isLocal()) {
 			//use locals if in method
-			mv.visitVarInsn(ALOAD, s.getAddress());
+			mv.visitVarInsn(ALOAD, addressOf(s));
 		} else {
-			mv.visitFieldInsn(GETSTATIC, classNameQualified, s.getFieldName(), "["+s.getTypeID());
+			mv.visitFieldInsn(GETSTATIC, classNameQualified, fieldNameOf(s), "["+s.getTypeID());
 		}
 	}
 	
 	public void createArray(Symbol s) {
 		if(s.isLocal()) {
-			mv.visitVarInsn(ASTORE, s.getAddress());
+			mv.visitVarInsn(ASTORE, addressOf(s));
 		} else {
-			FieldVisitor fv = cw.visitField(ACC_PUBLIC + ACC_STATIC, s.getFieldName(), "["+s.getTypeID(), null, null);
+			FieldVisitor fv = cw.visitField(ACC_PUBLIC + ACC_STATIC, fieldNameOf(s), "["+s.getTypeID(), null, null);
 			fv.visitEnd();
 			s.setFieldInitialized(true);
-			mv.visitFieldInsn(PUTSTATIC, classNameQualified, s.getFieldName(), "["+s.getTypeID());
+			mv.visitFieldInsn(PUTSTATIC, classNameQualified, fieldNameOf(s), "["+s.getTypeID());
 		}
 	}
 	
@@ -714,17 +707,17 @@ public class CodeGenVisitor extends DijkstraBaseVisitor<byte[]> {
 		if(s.isLocal()) {
 			//use locals if in method
 			if(s.getType() == DijkstraType.FLOAT) {
-				mv.visitVarInsn(FLOAD, s.getAddress());
+				mv.visitVarInsn(FLOAD, addressOf(s));
 			} else {
-				mv.visitVarInsn(ILOAD, s.getAddress());
+				mv.visitVarInsn(ILOAD, addressOf(s));
 			}
 		} else {
 			if(!s.fieldInitialized()){
-				FieldVisitor fv = cw.visitField(ACC_PUBLIC + ACC_STATIC, s.getFieldName(), s.getTypeID(), null, null);
+				FieldVisitor fv = cw.visitField(ACC_PUBLIC + ACC_STATIC, fieldNameOf(s), s.getTypeID(), null, null);
 				fv.visitEnd();
 				s.setFieldInitialized(true);
 			}
-			mv.visitFieldInsn(GETSTATIC, classNameQualified, s.getFieldName(), s.getTypeID());
+			mv.visitFieldInsn(GETSTATIC, classNameQualified, fieldNameOf(s), s.getTypeID());
 		}
 	}
 
@@ -733,24 +726,63 @@ public class CodeGenVisitor extends DijkstraBaseVisitor<byte[]> {
 		if(s.isLocal()) {
 			//use locals if in method
 			if(s.getType() == DijkstraType.FLOAT) {
-				mv.visitVarInsn(FSTORE, s.getAddress());
+				mv.visitVarInsn(FSTORE, addressOf(s));
 			} else {
-				mv.visitVarInsn(ISTORE, s.getAddress());
+				mv.visitVarInsn(ISTORE, addressOf(s));
 			}
 		} else {
 			if(!s.fieldInitialized()){
-				FieldVisitor fv = cw.visitField(ACC_PUBLIC + ACC_STATIC, s.getFieldName(), s.getTypeID(), null, null);
+				FieldVisitor fv = cw.visitField(ACC_PUBLIC + ACC_STATIC, fieldNameOf(s), s.getTypeID(), null, null);
 				fv.visitEnd();
 				s.setFieldInitialized(true);
 			}
-			mv.visitFieldInsn(PUTSTATIC, classNameQualified, s.getFieldName(), s.getTypeID());
+			mv.visitFieldInsn(PUTSTATIC, classNameQualified, fieldNameOf(s), s.getTypeID());
+		}
+	}
+
+	/**
+	 * @return the local variable slot of the symbol, allocating the next one on first use
+	 */
+	private int addressOf(Symbol s) {
+		if(s.getAddress() == Symbol.NO_ADDRESS) {
+			s.setAddress(jvmInfo.getNextAddress());
+		}
+		return s.getAddress();
+	}
+	
+	/**
+	 * Emit a check of the runtime's stop flag that aborts the program when it is set.
+	 */
+	private void checkStop() {
+		final Label go = new Label();
+		mv.visitFieldInsn(GETSTATIC, "dijkstra/runtime/DijkstraRuntime", "stopRequested", "Z");
+		mv.visitJumpInsn(IFEQ, go);
+		mv.visitMethodInsn(INVOKESTATIC, "dijkstra/runtime/DijkstraRuntime", 
+				"abortStopped", "()V", false);
+		mv.visitLabel(go);
+	}
+	
+	/**
+	 * @return the static field name of the symbol, allocating a new one on first use
+	 */
+	private String fieldNameOf(Symbol s) {
+		if(s.getFieldName() == null) {
+			s.setFieldName(jvmInfo.getNextFieldName());
 		}
+		return s.getFieldName();
 	}
 
 	public void setClassPackage(String customPackage) {
 		this.classPackage = customPackage;
 	}
 	
+	/**
+	 * @param stoppable whether loops and calls check the runtime's stop flag
+	 */
+	public void setStoppable(boolean stoppable) {
+		this.stoppable = stoppable;
+	}
+	
 	public String getProgramName() {
 		return this.programName;
 	}
@@ -12,27 +12,39 @@
 package dijkstra.codegen;
 
 /**
- * Description
+ * Allocates local variable slots and static field names for the class being
+ * generated. There is one instance per compilation, held by the
+ * {@link dijkstra.utility.CompilationContext}.
  * @version Feb 22, 2015
  */
 public class JVMInfo
 {
-	private static int nextAddress = 1;
-	private static int oldAddress = 1;
+	private int nextAddress = 1;
+	private int oldAddress = 1;
+	private int curFieldNum = 0;
 	
-	public static int getNextAddress()
+	public int getNextAddress()
 	{
 		return nextAddress++;
 	}
 	
-	public static void enterScope()
+	public void enterScope()
 	{
 		oldAddress = nextAddress;
 		nextAddress = 0;
 	}
 	
-	public static void exitScope()
+	public void exitScope()
 	{
 		nextAddress = oldAddress;
 	}
+	
+	/**
+	 * Gets a unique name for a field
+	 * @return the field name
+	 */
+	public String getNextFieldName()
+	{
+		return String.valueOf(++curFieldNum);
+	}
 }
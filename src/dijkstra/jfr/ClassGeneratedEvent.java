@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Flight Recorder event for each class the code generator produces; its
+ * duration is the time spent generating the class.
+ */
+@Name("dijkstra.ClassGenerated")
+@Label("Class Generated")
+@Category({"Dijkstra", "Compiler"})
+@Description("Bytecode generated for a Dijkstra program")
+@StackTrace(false)
+public class ClassGeneratedEvent extends Event
+{
+	@Label("Program")
+	public String program;
+	
+	@Label("Class Name")
+	public String className;
+	
+	@Label("Source Line")
+	public int line;
+	
+	@Label("Bytecode Size")
+	@DataAmount
+	public int bytecodeSize;
+}
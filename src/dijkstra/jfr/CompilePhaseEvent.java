@@ -0,0 +1,31 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Flight Recorder event covering one compiler phase of one program.
+ */
+@Name("dijkstra.CompilePhase")
+@Label("Compiler Phase")
+@Category({"Dijkstra", "Compiler"})
+@Description("One phase of compiling a Dijkstra program")
+@StackTrace(false)
+public class CompilePhaseEvent extends Event
+{
+	@Label("Program")
+	public String program;
+	
+	@Label("Phase")
+	public String phase;
+}
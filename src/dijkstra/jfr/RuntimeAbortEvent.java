@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Flight Recorder event for a generated program aborting, either because no
+ * guard of an if was true or because a function ended without returning.
+ */
+@Name("dijkstra.RuntimeAbort")
+@Label("Runtime Abort")
+@Category({"Dijkstra", "Runtime"})
+@Description("A Dijkstra program aborted")
+public class RuntimeAbortEvent extends Event
+{
+	@Label("Program")
+	public String program;
+	
+	@Label("Source Line")
+	public int line;
+	
+	@Label("Reason")
+	public String reason;
+}
@@ -0,0 +1,317 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.lexparse;
+
+import static dijkstra.lexparse.DijkstraLexer.*;
+
+import java.util.*;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.misc.Pair;
+
+/**
+ * A hand-written scanner for the Dijkstra token set that produces the same
+ * tokens as the generated {@link DijkstraLexer}: same types, positions and
+ * lines, with whitespace and comments skipped. It reads a char[] directly, and
+ * its tokens take their text from that array only when asked for it.
+ * <p>
+ * A character that starts no token is reported to the error listeners with the
+ * lexer's message and skipped, as the generated lexer does.
+ * @version Oct 18, 2026
+ */
+public class DijkstraScanner implements TokenSource
+{
+	private static final String[] KEYWORDS = new String[32];
+	private static final int[] KEYWORD_TYPES = new int[32];
+
+	static {
+		keyword("boolean", BOOLEAN);
+		keyword("false", FALSE);
+		keyword("fi", FI);
+		keyword("if", IF);
+		keyword("input", INPUT);
+		keyword("int", INT);
+		keyword("float", FLOAT);
+		keyword("print", PRINT);
+		keyword("program", PROGRAM);
+		keyword("proc", PROC);
+		keyword("fun", FUN);
+		keyword("true", TRUE);
+		keyword("do", DO);
+		keyword("od", OD);
+		keyword("div", DIV);
+		keyword("mod", MOD);
+		keyword("return", RETURN);
+	}
+
+	private final char[] data;
+	private final int length;
+	private final CharStream input;
+	private final Pair<TokenSource, CharStream> source;
+	private final List<ANTLRErrorListener> listeners = new ArrayList<ANTLRErrorListener>();
+	private TokenFactory<?> factory = CommonTokenFactory.DEFAULT;
+	private int position;
+	private int line;
+	private int lineStart;
+
+	/**
+	 * @param data the program text; it is not copied, so it must not change while
+	 * 		the tokens are in use
+	 * @param length the number of characters of text at the start of data
+	 */
+	public DijkstraScanner(char[] data, int length)
+	{
+		this(data, new ANTLRInputStream(data, length), 0, length, 1, 0);
+	}
+
+	/**
+	 * Scan only part of a text, as when an edited region is scanned again. The
+	 * region must start where a token, whitespace or a comment starts, and the
+	 * tokens are positioned in the whole text.
+	 * @param data the program text, which is not copied
+	 * @param input the stream the tokens read their text from, holding the same
+	 * 		characters as data
+	 * @param start the index of the first character to scan
+	 * @param end the index after the last character to scan; EOF is given there
+	 * @param line the line number at start
+	 * @param lineStart the index of the first character of that line
+	 */
+	public DijkstraScanner(char[] data, CharStream input, int start, int end, int line, int lineStart)
+	{
+		this.data = data;
+		this.length = end;
+		this.input = input;
+		source = new Pair<TokenSource, CharStream>(this, input);
+		listeners.add(ConsoleErrorListener.INSTANCE);
+		position = start;
+		this.line = line;
+		this.lineStart = lineStart;
+	}
+
+	@Override
+	public Token nextToken()
+	{
+		while (true) {
+			skipWhitespaceAndComments();
+			if (position >= length) {
+				return factory.create(source, Token.EOF, null, Token.DEFAULT_CHANNEL,
+						position, position - 1, line, position - lineStart);
+			}
+			final int start = position;
+			final int type = scan();
+			if (type != Token.INVALID_TYPE) {
+				return factory.create(source, type, null, Token.DEFAULT_CHANNEL,
+						start, position - 1, line, start - lineStart);
+			}
+			for (ANTLRErrorListener listener : listeners) {
+				listener.syntaxError(null, null, line, start - lineStart,
+						"token recognition error at: '" + data[start] + "'", null);
+			}
+			position = start + 1;
+		}
+	}
+
+	/**
+	 * Scan one token starting at the current position.
+	 * @return its type, or Token.INVALID_TYPE if no token starts here
+	 */
+	private int scan()
+	{
+		final int start = position;
+		final char c = data[position++];
+		switch (c) {
+		case '<':
+			return next('-') ? ASSIGN : next('=') ? LTE : LT;
+		case '>':
+			return next('=') ? GTE : GT;
+		case ':':
+			return next(':') ? GUARD : COLON;
+		case '~':
+			return next('=') ? NEQ : TILDE;
+		case '=': return EQ;
+		case '(': return LPAR;
+		case ')': return RPAR;
+		case '[': return LBRACK;
+		case ']': return RBRACK;
+		case '{': return LBRACE;
+		case '}': return RBRACE;
+		case '-': return MINUS;
+		case '+': return PLUS;
+		case ';': return SEMICOLON;
+		case '/': return SLASH;
+		case '*': return STAR;
+		case ',': return COMMA;
+		case '|': return OR;
+		case '&': return AND;
+		case '.': return PERIOD;
+		default:
+			if (isDigit(c)) {
+				while (position < length && isDigit(data[position])) {
+					position++;
+				}
+				return INTEGER;
+			}
+			if (isLetter(c)) {
+				while (position < length && isIdentifierPart(data[position])) {
+					position++;
+				}
+				return keywordOrId(start);
+			}
+			return Token.INVALID_TYPE;
+		}
+	}
+
+	private boolean next(char c)
+	{
+		if (position < length && data[position] == c) {
+			position++;
+			return true;
+		}
+		return false;
+	}
+
+	private void skipWhitespaceAndComments()
+	{
+		while (position < length) {
+			final char c = data[position];
+			if (c == ' ' || c == '\t' || c == '\r') {
+				position++;
+			} else if (c == '\n') {
+				position++;
+				newLine();
+			} else if (c == '#') {
+				while (position < length && data[position] != '\n') {
+					position++;
+				}
+				if (position < length) {
+					position++;
+					newLine();
+				}
+			} else {
+				return;
+			}
+		}
+	}
+
+	private void newLine()
+	{
+		line++;
+		lineStart = position;
+	}
+
+	/**
+	 * Look the identifier from start to the current position up in the perfect
+	 * hash table of keywords.
+	 */
+	private int keywordOrId(int start)
+	{
+		final int size = position - start;
+		final int slot = hash(data[start], data[position - 1], size);
+		final String keyword = KEYWORDS[slot];
+		if (keyword == null || keyword.length() != size) {
+			return ID;
+		}
+		for (int i = 0; i < size; i++) {
+			if (keyword.charAt(i) != data[start + i]) {
+				return ID;
+			}
+		}
+		return KEYWORD_TYPES[slot];
+	}
+
+	private static void keyword(String text, int type)
+	{
+		final int slot = hash(text.charAt(0), text.charAt(text.length() - 1), text.length());
+		if (KEYWORDS[slot] != null) {
+			throw new IllegalStateException("Keyword hash collision: " + text + " and " + KEYWORDS[slot]);
+		}
+		KEYWORDS[slot] = text;
+		KEYWORD_TYPES[slot] = type;
+	}
+
+	/**
+	 * A perfect hash for the seventeen keywords, found by search over the
+	 * multipliers of the first and last characters.
+	 */
+	private static int hash(char first, char last, int length)
+	{
+		return (first * 6 + last * 10 + length) & 31;
+	}
+
+	private static boolean isDigit(char c)
+	{
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isLetter(char c)
+	{
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	private static boolean isIdentifierPart(char c)
+	{
+		return isLetter(c) || isDigit(c) || c == '_' || c == '?';
+	}
+
+	/**
+	 * Add a listener for characters that start no token.
+	 * @param listener the listener
+	 */
+	public void addErrorListener(ANTLRErrorListener listener)
+	{
+		listeners.add(listener);
+	}
+
+	/**
+	 * Remove all error listeners, including the default console listener.
+	 */
+	public void removeErrorListeners()
+	{
+		listeners.clear();
+	}
+
+	@Override
+	public int getLine()
+	{
+		return line;
+	}
+
+	@Override
+	public int getCharPositionInLine()
+	{
+		return position - lineStart;
+	}
+
+	@Override
+	public CharStream getInputStream()
+	{
+		return input;
+	}
+
+	@Override
+	public String getSourceName()
+	{
+		return input.getSourceName();
+	}
+
+	@Override
+	public void setTokenFactory(TokenFactory<?> factory)
+	{
+		this.factory = factory;
+	}
+
+	@Override
+	public TokenFactory<?> getTokenFactory()
+	{
+		return factory;
+	}
+}
@@ -13,7 +13,9 @@
 package dijkstra.runtime;
 
 import java.io.*;
+import dijkstra.jfr.RuntimeAbortEvent;
 import dijkstra.utility.DijkstraException;
+import jdk.jfr.FlightRecorder;
 
 /**
  * This class contains static methods that are called from the generated Dijkstra code.
@@ -26,6 +28,7 @@ public class DijkstraRuntime
 	private static String lastMessage = null;		// used for testing
 	private static String[] inputs = null;
 	private static int inputIndex = 0;
+	public static volatile boolean stopRequested = false;		// read by generated code
 	
 	public static void printInt(int i)
 	{
@@ -120,9 +123,28 @@ public class DijkstraRuntime
 		return value;
 	}
 	
+	/**
+	 * @param stop true to make the running program stop at its next loop iteration
+	 * 		or call, which is where generated code reads the flag; false before the
+	 * 		next program runs
+	 */
+	public static void setStopRequested(boolean stop)
+	{
+		stopRequested = stop;
+	}
+	
+	/**
+	 * Called by generated code that found the stop flag set.
+	 */
+	public static void abortStopped()
+	{
+		throw new DijkstraException("Program stopped");
+	}
+	
 	public static void abortNoAlternative(int lineNo)
 	{
 		String msg = "No alternative evaluated to true (line " + lineNo + ")";
+		recordAbort(lineNo, "No alternative evaluated to true");
 		System.err.println(msg);
 		throw new DijkstraException(msg);
 	}
@@ -130,9 +152,35 @@ public class DijkstraRuntime
 	public static void abortNoFunctionReturn(int lineNo)
 	{
 		String msg = "No return statement in function at (line " + lineNo + ")";
+		recordAbort(lineNo, "No return statement in function");
 		System.err.println(msg);
 		throw new DijkstraException(msg);
 	}
+	
+	/**
+	 * Emit a Flight Recorder event for an abort if a recording wants one. The
+	 * program is the generated class that called into the runtime. Programs are
+	 * hidden classes, whose frames only a walker asked to show them can see, and
+	 * whose names end in a / and a suffix that is dropped. Nothing is done, and
+	 * the event class is not loaded, unless Flight Recorder has been started.
+	 */
+	private static void recordAbort(int lineNo, String reason)
+	{
+		if (!FlightRecorder.isInitialized()) {
+			return;
+		}
+		RuntimeAbortEvent event = new RuntimeAbortEvent();
+		if (event.shouldCommit()) {
+			event.program = StackWalker.getInstance(StackWalker.Option.SHOW_HIDDEN_FRAMES)
+					.walk(frames -> frames.map(StackWalker.StackFrame::getClassName)
+							.filter(name -> !name.equals(DijkstraRuntime.class.getName()))
+							.map(name -> name.indexOf('/') < 0 ? name : name.substring(0, name.indexOf('/')))
+							.findFirst().orElse(null));
+			event.line = lineNo;
+			event.reason = reason;
+			event.commit();
+		}
+	}
 
 	/**
 	 * @return the lastMessage
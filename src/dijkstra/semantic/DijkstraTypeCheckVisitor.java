@@ -1,10 +1,9 @@
 package dijkstra.semantic;
 
-import dijkstra.lexparse.DijkstraBaseVisitor;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 import org.antlr.v4.runtime.misc.NotNull;
-import org.antlr.v4.runtime.tree.ParseTreeProperty;
-import org.antlr.v4.runtime.tree.RuleNode;
 
 import dijkstra.lexparse.DijkstraParser;
 import dijkstra.lexparse.DijkstraParser.*;
@@ -18,48 +17,46 @@ import static dijkstra.utility.DijkstraType.*;
  * are normally compatible (float & int), which aren't visited during type resolution (return), or
  * require knowledge of the final type (equals). It would be possible to resolve these inline during
  * resolution but it would be excessively complicating to that visitor.
+ * <p>
+ * The checks run in the same traversal as finalization: each node's children are finalized
+ * before the node is checked, so the finalizer does not need a pass of its own. The function
+ * enclosing a return is kept on a stack rather than found by climbing the parents.
  * @author Jason Whitehouse
  *
  */
-public class DijkstraTypeCheckVisitor extends DijkstraBaseVisitor<DijkstraType> {
-	public ParseTreeProperty<Symbol> symbols = new ParseTreeProperty<Symbol>();
-	public ParseTreeProperty<Symbol> functions = new ParseTreeProperty<Symbol>();
-	public ParseTreeProperty<Symbol> arrays = new ParseTreeProperty<Symbol>();
-	public ParseTreeProperty<DijkstraType> types = new ParseTreeProperty<DijkstraType>();
+public class DijkstraTypeCheckVisitor extends DjikstraTypeFinalizerVisitor {
+	private final Deque<Symbol> enclosingFunctions;
 	
+	public DijkstraTypeCheckVisitor(DjikstraTypeResolutionVisitor resolver) {
+		super(resolver);
+		enclosingFunctions = new ArrayDeque<Symbol>();
+	}
 	
-	public DijkstraTypeCheckVisitor(DjikstraTypeFinalizerVisitor finalizer) {
-		super();
-		symbols = finalizer.symbols;
-		functions = finalizer.functions;
-		arrays = finalizer.arrays;
-		types = finalizer.types;
+	@Override
+	public DijkstraType visitFunctionDeclaration(@NotNull FunctionDeclarationContext ctx) {
+		enclosingFunctions.push(functions.get(ctx));
+		visitChildren(ctx);
+		enclosingFunctions.pop();
+		return null;
 	}
 	
 	@Override
 	public DijkstraType visitReturnStatement (@NotNull ReturnStatementContext ctx) {
-		RuleNode p = ctx.getParent();
-		while(p != null && p != ctx) {
-			if(p instanceof FunctionDeclarationContext) {
-				break;
-			}
-			p = (RuleNode) p.getParent();
-		}
-		if(p == null) {
+		if(enclosingFunctions.isEmpty()) {
 			throw new DijkstraSymbolException("Return call outside of a function!");
 		}
-		Symbol func = functions.get(p);
-		DijkstraType t = func.getType();
+		visitChildren(ctx);
+		DijkstraType t = enclosingFunctions.peek().getType();
 		if(t != types.get(ctx.expression())) {
 			throw new DijkstraSemanticException("Invalid return type, must be " + t);
 		}
 		types.put(ctx, t);
-		ctx.expression().accept(this);
 		return t;
 	}
 	
 	@Override
 	public DijkstraType visitMult(@NotNull MultContext ctx) {
+		visitChildren(ctx);
 		if(ctx.DIV() != null || ctx.MOD() != null) {
 			DijkstraType first = types.get(ctx.expression(0));
 			DijkstraType second = types.get(ctx.expression(1));
@@ -67,28 +64,27 @@ public class DijkstraTypeCheckVisitor extends DijkstraBaseVisitor<DijkstraType>
 				throw new DijkstraSemanticException("Cannot use div or mod with non-integer operands");
 			}
 		}
-		visitChildren(ctx);
 		return null;
 	}
 	
 	@Override
 	public DijkstraType visitEqual(@NotNull EqualContext ctx) {
+		visitChildren(ctx);
 		DijkstraType first = types.get(ctx.expression(0));
 		DijkstraType second = types.get(ctx.expression(1));
 		if(first != second) {
 			throw new DijkstraSemanticException("'=' and '~=' can only be used with operands of the same type");
 		}
-		visitChildren(ctx);
 		return null;
 	}
 	
 	@Override
 	public DijkstraType visitArrayAccessor(@NotNull DijkstraParser.ArrayAccessorContext ctx) {
+		visitChildren(ctx);
 		DijkstraType aType = types.get(ctx.expression());
 		if(aType != INT) {
 			throw new DijkstraSemanticException("Arrays can only be accessed with integer types!");
 		}
-		visitChildren(ctx);
 		return null;
 	}
 }
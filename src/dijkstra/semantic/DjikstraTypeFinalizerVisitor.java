@@ -3,7 +3,9 @@ package dijkstra.semantic;
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.misc.NotNull;
 import org.antlr.v4.runtime.tree.ParseTreeProperty;
+import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.RuleNode;
+import org.antlr.v4.runtime.tree.TerminalNode;
 
 import dijkstra.lexparse.DijkstraBaseVisitor;
 import dijkstra.lexparse.DijkstraParser;
@@ -11,14 +13,16 @@ import dijkstra.lexparse.DijkstraParser.*;
 import static dijkstra.utility.DijkstraType.*;
 import dijkstra.symbol.DijkstraSymbolException;
 import dijkstra.symbol.Symbol;
+import dijkstra.utility.CompilationContext;
 import dijkstra.utility.DijkstraType;
 
 //This class sets all NUM symbols to INT, and throws an error if there are any undefined symbols
 public class DjikstraTypeFinalizerVisitor extends DijkstraBaseVisitor<DijkstraType> {
-	public ParseTreeProperty<Symbol> symbols = new ParseTreeProperty<Symbol>();
-	public ParseTreeProperty<Symbol> functions = new ParseTreeProperty<Symbol>();
-	public ParseTreeProperty<Symbol> arrays = new ParseTreeProperty<Symbol>();
-	public ParseTreeProperty<DijkstraType> types = new ParseTreeProperty<DijkstraType>();
+	public ParseTreeProperty<Symbol> symbols;
+	public ParseTreeProperty<Symbol> functions;
+	public ParseTreeProperty<Symbol> arrays;
+	public ParseTreeProperty<DijkstraType> types;
+	public CompilationContext context;
 	
 	public DjikstraTypeFinalizerVisitor(DjikstraTypeResolutionVisitor resolver) {
 		super();
@@ -26,10 +30,25 @@ public class DjikstraTypeFinalizerVisitor extends DijkstraBaseVisitor<DijkstraTy
 		functions = resolver.functions;
 		arrays = resolver.arrays;
 		types = resolver.types;
+		context = resolver.context;
 	}
 	
 	@Override
 	public DijkstraType visitChildren(@NotNull RuleNode arg0) {
+		finalizeNode(arg0);
+		return super.visitChildren(arg0);
+	}
+	
+	/**
+	 * Identifiers in declaration and input lists are annotated on their terminal nodes.
+	 */
+	@Override
+	public DijkstraType visitTerminal(@NotNull TerminalNode node) {
+		finalizeNode(node);
+		return defaultResult();
+	}
+	
+	private void finalizeNode(ParseTree arg0) {
 		Symbol cur = symbols.get(arg0);
 		if(cur != null) {
 			if(cur.getType() == NUM) {
@@ -43,6 +62,5 @@ public class DjikstraTypeFinalizerVisitor extends DijkstraBaseVisitor<DijkstraTy
 		if(curType == NUM) {
 			types.put(arg0, INT);
 		}
-		return super.visitChildren(arg0);
 	}
 }
@@ -0,0 +1,608 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.semantic;
+
+import static dijkstra.utility.DijkstraType.*;
+
+import java.util.*;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.misc.NotNull;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import dijkstra.lexparse.DijkstraBaseVisitor;
+import dijkstra.lexparse.DijkstraParser.*;
+import dijkstra.symbol.DijkstraSymbolException;
+import dijkstra.symbol.MethodSymbol;
+import dijkstra.symbol.Symbol;
+import dijkstra.utility.DijkstraType;
+import dijkstra.utility.NodeIds;
+import dijkstra.utility.NodeProperty;
+
+/**
+ * Infers the types of symbols and expressions by solving constraints instead of
+ * walking the tree until nothing changes. One walk over the units recorded by
+ * the symbol visitor gives every symbol and expression node a type variable and
+ * collects two kinds of constraint:
+ * <ul>
+ * <li>equalities, such as an identifier and its symbol or a parenthesized
+ * expression and its contents, which merge the variables with union-find so
+ * they share one type;</li>
+ * <li>operator, assignment and argument constraints, which raise the types of
+ * their operands in the lattice UNDEFINED &lt; NUM &lt; INT, FLOAT and
+ * UNDEFINED &lt; BOOLEAN, the way {@link Symbol#updateType(DijkstraType)} does.</li>
+ * </ul>
+ * The constraints are evaluated once in source order, and after that only those
+ * reading a variable whose type went up. A type goes up at most twice, so the
+ * time is nearly linear in the size of the program.
+ */
+public class TypeConstraintSolver extends DijkstraBaseVisitor<Integer>
+{
+	// Constraint kinds
+	private static final int ADD = 0;		// result from both operands, pushed back into them
+	private static final int STAR = 1;		// both operands at least NUM, result FLOAT if either is
+	private static final int OPERANDS = 2;	// both operands at least the bound
+	private static final int EQUAL = 3;		// each operand at least the other
+	private static final int NEGATE = 4;	// operand at least NUM, result the operand's type
+	private static final int AT_LEAST = 5;	// left at least the bound
+	private static final int INDEX = 6;		// left at least INT if it is a symbol
+	private static final int ASSIGN = 7;	// right at least left
+
+	private final DjikstraTypeResolutionVisitor resolver;
+	private final NodeIds nodeIds;
+
+	// Type variables; a symbol's type is kept in the symbol itself
+	private int[] parent = new int[64];
+	private int[] size = new int[64];
+	private DijkstraType[] value = new DijkstraType[64];
+	private Symbol[] symbol = new Symbol[64];
+	private ParseTree[] node = new ParseTree[64];
+	private int[] nodeId = new int[64];
+	private int vars = 0;
+	private final Map<Symbol, Integer> symbolVars = new IdentityHashMap<Symbol, Integer>();
+
+	// Constraints
+	private int[] kind = new int[64];
+	private int[] left = new int[64];
+	private int[] right = new int[64];
+	private int[] result = new int[64];
+	private DijkstraType[] bound = new DijkstraType[64];
+	private int constraints = 0;
+
+	// Solving: the constraints reading each variable and a queue of those to evaluate
+	private int[] firstReader;
+	private int[] readers;
+	private int[] queue;
+	private boolean[] queued;
+	private int head = 0;
+	private int queueSize = 0;
+
+	/**
+	 * @param resolver the annotations to read symbols from and write types to
+	 */
+	public TypeConstraintSolver(DjikstraTypeResolutionVisitor resolver)
+	{
+		this.resolver = resolver;
+		nodeIds = resolver.context.getNodeIds();
+	}
+
+	/**
+	 * Collect the constraints of the units, solve them, and set the types of the
+	 * symbols and of the expression nodes.
+	 * @param units the units in source order
+	 * @return the number of constraint evaluations
+	 * @throws DijkstraSemanticException if the types conflict
+	 */
+	@SuppressWarnings("unchecked")
+	public int solve(List<ParserRuleContext> units)
+	{
+		for (ParserRuleContext unit : units) {
+			unit.accept(this);
+		}
+		index();
+		int evaluations = 0;
+		while (queueSize > 0) {
+			final int c = queue[head];
+			head = (head + 1) % queue.length;
+			queueSize--;
+			queued[c] = false;
+			evaluate(c);
+			evaluations++;
+		}
+		final NodeProperty<DijkstraType> types = resolver.types instanceof NodeProperty
+				? (NodeProperty<DijkstraType>) resolver.types : null;
+		for (int v = 0; v < vars; v++) {
+			if (node[v] == null) {
+				continue;
+			} else if (types != null) {
+				types.put(nodeId[v], typeOf(v));
+			} else {
+				resolver.types.put(node[v], typeOf(v));
+			}
+		}
+		return evaluations;
+	}
+
+	/* Units */
+
+	@Override
+	public Integer visitArrayDeclaration(@NotNull ArrayDeclarationContext ctx)
+	{
+		constrain(AT_LEAST, ctx.expression().accept(this), -1, -1, INT);
+		return null;
+	}
+
+	@Override
+	public Integer visitAssignStatement(@NotNull AssignStatementContext ctx)
+	{
+		// The lists alternate items and commas
+		final VarListContext vars = ctx.varList();
+		final ExpressionListContext exprs = ctx.expressionList();
+		for (int i = 0; i < vars.getChildCount(); i += 2) {
+			final int var = vars.getChild(i).accept(this);
+			constrain(ASSIGN, exprs.getChild(i).accept(this), var, -1, null);
+		}
+		return null;
+	}
+
+	/**
+	 * An identifier target gets its type from its symbol in the finalizer.
+	 */
+	@Override
+	public Integer visitVar(@NotNull VarContext ctx)
+	{
+		if (ctx.ID() != null) {
+			return symbolVar(resolver.symbols.get(ctx));
+		}
+		return annotate(ctx, ctx.arrayAccessor().accept(this));
+	}
+
+	@Override
+	public Integer visitOutputStatement(@NotNull OutputStatementContext ctx)
+	{
+		return annotate(ctx, ctx.expression().accept(this));
+	}
+
+	@Override
+	public Integer visitReturnStatement(@NotNull ReturnStatementContext ctx)
+	{
+		if (ctx.expression() != null) {
+			ctx.expression().accept(this);
+		}
+		return null;
+	}
+
+	/**
+	 * Only the expression; the statement is made of units of its own.
+	 */
+	@Override
+	public Integer visitGuard(@NotNull GuardContext ctx)
+	{
+		constrain(AT_LEAST, ctx.expression().accept(this), -1, -1, BOOLEAN);
+		return null;
+	}
+
+	@Override
+	public Integer visitProcedureCall(@NotNull ProcedureCallContext ctx)
+	{
+		arguments((MethodSymbol) resolver.symbols.get(ctx), ctx.argList());
+		return null;
+	}
+
+	/*
+	 * Expressions. The symbol visitor has already given literals, function calls
+	 * and array elements their types, which never change, so they are not
+	 * annotated again.
+	 */
+
+	@Override
+	public Integer visitCompound(@NotNull CompoundContext ctx)
+	{
+		return annotate(ctx, ctx.expression().accept(this));
+	}
+
+	@Override
+	public Integer visitUnary(@NotNull UnaryContext ctx)
+	{
+		final int operand = ctx.expression().accept(this);
+		if (ctx.MINUS() != null) {
+			final int v = newVar(ctx, UNDEFINED);
+			constrain(NEGATE, operand, -1, v, null);
+			return v;
+		}
+		constrain(AT_LEAST, operand, -1, -1, BOOLEAN);
+		return newVar(ctx, BOOLEAN);
+	}
+
+	@Override
+	public Integer visitMult(@NotNull MultContext ctx)
+	{
+		final int l = ctx.expression(0).accept(this);
+		final int r = ctx.expression(1).accept(this);
+		if (ctx.SLASH() != null) {
+			return operands(ctx, l, r, FLOAT, FLOAT);
+		} else if (ctx.DIV() != null || ctx.MOD() != null) {
+			return operands(ctx, l, r, INT, INT);
+		}
+		final int v = newVar(ctx, UNDEFINED);
+		constrain(STAR, l, r, v, null);
+		return v;
+	}
+
+	@Override
+	public Integer visitAdd(@NotNull AddContext ctx)
+	{
+		final int l = ctx.expression(0).accept(this);
+		final int r = ctx.expression(1).accept(this);
+		final int v = newVar(ctx, UNDEFINED);
+		constrain(ADD, l, r, v, null);
+		return v;
+	}
+
+	@Override
+	public Integer visitRelational(@NotNull RelationalContext ctx)
+	{
+		return operands(ctx, ctx.expression(0).accept(this), ctx.expression(1).accept(this), NUM, BOOLEAN);
+	}
+
+	@Override
+	public Integer visitEqual(@NotNull EqualContext ctx)
+	{
+		final int l = ctx.expression(0).accept(this);
+		final int r = ctx.expression(1).accept(this);
+		constrain(EQUAL, l, r, -1, null);
+		return newVar(ctx, BOOLEAN);
+	}
+
+	@Override
+	public Integer visitOr(@NotNull OrContext ctx)
+	{
+		return operands(ctx, ctx.expression(0).accept(this), ctx.expression(1).accept(this), BOOLEAN, BOOLEAN);
+	}
+
+	@Override
+	public Integer visitAnd(@NotNull AndContext ctx)
+	{
+		return operands(ctx, ctx.expression(0).accept(this), ctx.expression(1).accept(this), BOOLEAN, BOOLEAN);
+	}
+
+	@Override
+	public Integer visitInteger(@NotNull IntegerContext ctx)
+	{
+		return newVar(null, INT);
+	}
+
+	@Override
+	public Integer visitFloat(@NotNull FloatContext ctx)
+	{
+		return newVar(null, FLOAT);
+	}
+
+	@Override
+	public Integer visitBool(@NotNull BoolContext ctx)
+	{
+		return newVar(null, BOOLEAN);
+	}
+
+	@Override
+	public Integer visitIdexp(@NotNull IdexpContext ctx)
+	{
+		return annotate(ctx, symbolVar(resolver.symbols.get(ctx)));
+	}
+
+	@Override
+	public Integer visitFCall(@NotNull FCallContext ctx)
+	{
+		return annotate(ctx, ctx.functionCall().accept(this));
+	}
+
+	@Override
+	public Integer visitFunctionCall(@NotNull FunctionCallContext ctx)
+	{
+		final Symbol function = resolver.functions.get(ctx);
+		if (function.getType() == PROCEDURE) {
+			throw new DijkstraSymbolException("Attempted to call procedure " + ctx.ID().getText() + " as a function!");
+		}
+		arguments((MethodSymbol) function, ctx.argList());
+		return newVar(null, function.getType());
+	}
+
+	@Override
+	public Integer visitArrayAccess(@NotNull ArrayAccessContext ctx)
+	{
+		return annotate(ctx, ctx.arrayAccessor().accept(this));
+	}
+
+	@Override
+	public Integer visitArrayAccessor(@NotNull ArrayAccessorContext ctx)
+	{
+		constrain(INDEX, ctx.expression().accept(this), -1, -1, null);
+		return newVar(null, resolver.arrays.get(ctx).getType());
+	}
+
+	private void arguments(MethodSymbol method, ArgListContext args)
+	{
+		if (args != null) {
+			final List<ExpressionContext> list = args.expression();
+			for (int i = 0; i < list.size(); i++) {
+				constrain(AT_LEAST, list.get(i).accept(this), -1, -1, method.getParameter(i));
+			}
+		}
+	}
+
+	private int operands(ParserRuleContext ctx, int l, int r, DijkstraType operand, DijkstraType type)
+	{
+		constrain(OPERANDS, l, r, -1, operand);
+		return newVar(ctx, type);
+	}
+
+	/* Type variables */
+
+	/**
+	 * @param annotated the node to give the type of the variable, or null
+	 */
+	private int newVar(ParseTree annotated, DijkstraType type)
+	{
+		if (vars == parent.length) {
+			final int n = 2 * vars;
+			parent = Arrays.copyOf(parent, n);
+			size = Arrays.copyOf(size, n);
+			value = Arrays.copyOf(value, n);
+			symbol = Arrays.copyOf(symbol, n);
+			node = Arrays.copyOf(node, n);
+			nodeId = Arrays.copyOf(nodeId, n);
+		}
+		parent[vars] = vars;
+		size[vars] = 1;
+		value[vars] = type;
+		node[vars] = annotated;
+		if (annotated != null) {
+			nodeId[vars] = nodeIds.idOf(annotated);
+		}
+		return vars++;
+	}
+
+	private int symbolVar(Symbol s)
+	{
+		Integer v = symbolVars.get(s);
+		if (v == null) {
+			v = newVar(null, null);
+			symbol[v] = s;
+			symbolVars.put(s, v);
+		}
+		return v;
+	}
+
+	/**
+	 * Give a node a variable of its own that is equal to another.
+	 */
+	private int annotate(ParseTree annotated, int same)
+	{
+		final int v = newVar(annotated, UNDEFINED);
+		union(v, same);
+		return v;
+	}
+
+	private int find(int v)
+	{
+		while (parent[v] != v) {
+			parent[v] = parent[parent[v]];
+			v = parent[v];
+		}
+		return v;
+	}
+
+	/**
+	 * Merge two classes before solving. At most one of them has a symbol, and
+	 * only one of them has a type other than UNDEFINED, since the new variable
+	 * of an annotated node is merged into the class of what it equals.
+	 */
+	private void union(int a, int b)
+	{
+		int ra = find(a);
+		int rb = find(b);
+		if (ra == rb) {
+			return;
+		}
+		if (size[ra] < size[rb]) {
+			final int t = ra;
+			ra = rb;
+			rb = t;
+		}
+		parent[rb] = ra;
+		size[ra] += size[rb];
+		if (symbol[ra] == null) {
+			symbol[ra] = symbol[rb];
+		}
+		if (value[ra] == UNDEFINED) {
+			value[ra] = value[rb];
+		}
+	}
+
+	private DijkstraType typeOf(int v)
+	{
+		final int r = find(v);
+		return symbol[r] != null ? symbol[r].getType() : value[r];
+	}
+
+	/* Constraints */
+
+	private void constrain(int k, int l, int r, int res, DijkstraType b)
+	{
+		if (constraints == kind.length) {
+			final int n = 2 * constraints;
+			kind = Arrays.copyOf(kind, n);
+			left = Arrays.copyOf(left, n);
+			right = Arrays.copyOf(right, n);
+			result = Arrays.copyOf(result, n);
+			bound = Arrays.copyOf(bound, n);
+		}
+		kind[constraints] = k;
+		left[constraints] = l;
+		right[constraints] = r;
+		result[constraints] = res;
+		bound[constraints] = b;
+		constraints++;
+	}
+
+	/**
+	 * Point every constraint at the class roots it reads, list the readers of
+	 * each root, and queue every constraint in source order.
+	 */
+	private void index()
+	{
+		firstReader = new int[vars + 1];
+		for (int c = 0; c < constraints; c++) {
+			left[c] = find(left[c]);
+			firstReader[left[c]]++;
+			if (right[c] >= 0) {
+				right[c] = find(right[c]);
+				firstReader[right[c]]++;
+			}
+			if (result[c] >= 0) {
+				result[c] = find(result[c]);
+			}
+		}
+		for (int v = 0, total = 0; v <= vars; v++) {
+			final int count = firstReader[v];
+			firstReader[v] = total;
+			total += count;
+		}
+		readers = new int[firstReader[vars]];
+		final int[] next = Arrays.copyOf(firstReader, vars);
+		for (int c = 0; c < constraints; c++) {
+			readers[next[left[c]]++] = c;
+			if (right[c] >= 0) {
+				readers[next[right[c]]++] = c;
+			}
+		}
+		queue = new int[Math.max(1, constraints)];
+		queued = new boolean[constraints];
+		for (int c = 0; c < constraints; c++) {
+			queue[c] = c;
+			queued[c] = true;
+		}
+		queueSize = constraints;
+	}
+
+	private void evaluate(int c)
+	{
+		final int l = left[c];
+		final int r = right[c];
+		switch (kind[c]) {
+			case ADD: {
+				final DijkstraType t1 = typeOf(l);
+				final DijkstraType t2 = typeOf(r);
+				DijkstraType t = NUM;
+				if (t1 == FLOAT || t2 == FLOAT) {
+					t = FLOAT;
+				} else if (t1 == INT && t2 == INT) {
+					t = INT;
+				}
+				raise(l, t);
+				raise(r, t);
+				set(result[c], t);
+				break;
+			}
+			case STAR: {
+				final boolean isFloat = typeOf(l) == FLOAT || typeOf(r) == FLOAT;
+				raise(l, NUM);
+				raise(r, NUM);
+				set(result[c], isFloat ? FLOAT : NUM);
+				break;
+			}
+			case OPERANDS:
+				raise(l, bound[c]);
+				raise(r, bound[c]);
+				break;
+			case EQUAL: {
+				final DijkstraType t1 = typeOf(l);
+				final DijkstraType t2 = typeOf(r);
+				if (t2 != UNDEFINED) {
+					raise(l, t2);
+				}
+				if (t1 != UNDEFINED) {
+					raise(r, t1);
+				}
+				break;
+			}
+			case NEGATE: {
+				DijkstraType t = typeOf(l);
+				if (t == UNDEFINED) {
+					t = NUM;
+				}
+				raise(l, t);
+				set(result[c], t);
+				break;
+			}
+			case AT_LEAST:
+				raise(l, bound[c]);
+				break;
+			case INDEX:
+				if (symbol[l] != null) {
+					raise(l, INT);
+				}
+				break;
+			case ASSIGN:
+				raise(r, typeOf(l));
+				break;
+		}
+	}
+
+	/**
+	 * Raise the type of a symbol's class, or check an expression's type against
+	 * the one it is used as.
+	 */
+	private void raise(int root, DijkstraType t)
+	{
+		final Symbol s = symbol[root];
+		if (s != null) {
+			if (s.updateType(t)) {
+				changed(root);
+			}
+			return;
+		}
+		final DijkstraType existing = value[root];
+		if (existing == NUM || existing == FLOAT || existing == INT) {
+			if (t == BOOLEAN) {
+				throw new DijkstraSemanticException("Attempted to use type " + existing + " for " + t);
+			}
+		} else if (existing == BOOLEAN) {
+			if (t == NUM || t == FLOAT || t == INT) {
+				throw new DijkstraSemanticException("Attempted to use type " + existing + " for " + t);
+			}
+		}
+	}
+
+	/**
+	 * Set the type an operator gives its expression.
+	 */
+	private void set(int root, DijkstraType t)
+	{
+		if (value[root] != t) {
+			value[root] = t;
+			changed(root);
+		}
+	}
+
+	private void changed(int root)
+	{
+		for (int i = firstReader[root]; i < firstReader[root + 1]; i++) {
+			final int c = readers[i];
+			if (!queued[c]) {
+				queued[c] = true;
+				queue[(head + queueSize) % queue.length] = c;
+				queueSize++;
+			}
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.symbol;
+
+import java.util.*;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import dijkstra.lexparse.DijkstraParser.*;
+import dijkstra.utility.DijkstraType;
+
+/**
+ * What the symbol pass found in each procedure and function body, kept from
+ * one analysis of a program to the next by
+ * {@link ParallelSymbolAnalyzer#analyze(ParserRuleContext, dijkstra.utility.CompilationContext, BodyCache)}.
+ * A body is recognized by its parse tree node, which
+ * {@link dijkstra.utility.IncrementalParser} keeps for the methods an edit did
+ * not touch. Only the bodies of the last analysis are kept. Not thread safe.
+ */
+public class BodyCache
+{
+	private Map<CompoundStatementContext, Entry> entries = new IdentityHashMap<CompoundStatementContext, Entry>();
+	private Map<CompoundStatementContext, Entry> kept = new IdentityHashMap<CompoundStatementContext, Entry>();
+	private int reused = 0;
+	private int analyzed = 0;
+
+	/**
+	 * @return the number of bodies the last analysis took from the cache
+	 */
+	public int getReused()
+	{
+		return reused;
+	}
+
+	/**
+	 * @return the number of bodies the last analysis visited
+	 */
+	public int getAnalyzed()
+	{
+		return analyzed;
+	}
+
+	/**
+	 * Forget every body, as after an analysis that failed.
+	 */
+	public void clear()
+	{
+		entries.clear();
+		kept.clear();
+		reused = 0;
+		analyzed = 0;
+	}
+
+	void begin()
+	{
+		kept.clear();
+		reused = 0;
+		analyzed = 0;
+	}
+
+	Entry get(CompoundStatementContext body)
+	{
+		return entries.get(body);
+	}
+
+	void keep(CompoundStatementContext body, Entry entry, boolean wasReused)
+	{
+		kept.put(body, entry);
+		if (wasReused) {
+			reused++;
+		} else {
+			analyzed++;
+		}
+	}
+
+	void end()
+	{
+		final Map<CompoundStatementContext, Entry> last = entries;
+		entries = kept;
+		kept = last;
+		kept.clear();
+	}
+
+	/**
+	 * The annotations, units and scope counts of one body, the globals it looked
+	 * up and the types of its locals when the symbol pass left it.
+	 */
+	static class Entry
+	{
+		static final int PROPERTIES = 4;		// symbols, functions, arrays, types
+		final ParameterListContext parameters;
+		final List<List<ParseTree>> nodes = new ArrayList<List<ParseTree>>(PROPERTIES);
+		final List<List<Object>> values = new ArrayList<List<Object>>(PROPERTIES);
+		final List<Lookup> lookups = new ArrayList<Lookup>();
+		final Map<Symbol, DijkstraType> locals = new IdentityHashMap<Symbol, DijkstraType>();
+		List<ParserRuleContext> units;
+		int scopes;
+		int symbols;
+
+		Entry(ParameterListContext parameters)
+		{
+			this.parameters = parameters;
+			for (int p = 0; p < PROPERTIES; p++) {
+				nodes.add(new ArrayList<ParseTree>());
+				values.add(new ArrayList<Object>());
+			}
+		}
+	}
+
+	/**
+	 * A name a body looked up among the globals, what it found, and its type then.
+	 */
+	static class Lookup
+	{
+		final int kind;
+		final String name;
+		final Symbol symbol;
+		final DijkstraType type;
+
+		Lookup(int kind, String name, Symbol symbol)
+		{
+			this.kind = kind;
+			this.name = name;
+			this.symbol = symbol;
+			type = symbol == null ? null : symbol.getType();
+		}
+	}
+}
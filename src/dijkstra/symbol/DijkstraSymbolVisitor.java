@@ -1,22 +1,57 @@
 package dijkstra.symbol;
 
+import java.util.List;
+
 import org.antlr.v4.runtime.misc.NotNull;
 import org.antlr.v4.runtime.tree.ParseTreeProperty;
+import org.antlr.v4.runtime.tree.TerminalNode;
 
 import dijkstra.lexparse.DijkstraBaseVisitor;
 import dijkstra.lexparse.DijkstraParser;
 import dijkstra.lexparse.DijkstraParser.*;
 import dijkstra.semantic.DijkstraSemanticException;
+import dijkstra.utility.CompilationContext;
 import dijkstra.utility.DijkstraType;
+import dijkstra.utility.NodeProperty;
 import static dijkstra.utility.DijkstraType.*;
 
 public class DijkstraSymbolVisitor extends DijkstraBaseVisitor<DijkstraType> {
-	public ParseTreeProperty<Symbol> symbols = new ParseTreeProperty<Symbol>();
-	public ParseTreeProperty<Symbol> functions = new ParseTreeProperty<Symbol>();
-	public ParseTreeProperty<Symbol> arrays = new ParseTreeProperty<Symbol>();
-	public ParseTreeProperty<DijkstraType> types = new ParseTreeProperty<DijkstraType>();
+	public ParseTreeProperty<Symbol> symbols;
+	public ParseTreeProperty<Symbol> functions;
+	public ParseTreeProperty<Symbol> arrays;
+	public ParseTreeProperty<DijkstraType> types;
+	public CompilationContext context;
+	public ResolutionUnits units;
 
-	private SymbolTableManager stm = SymbolTableManager.getInstance();
+	private final SymbolTableManager stm;
+	
+	public DijkstraSymbolVisitor(CompilationContext context) {
+		super();
+		this.context = context;
+		stm = context.getSymbolTableManager();
+		symbols = new NodeProperty<Symbol>(context.getNodeIds());
+		functions = new NodeProperty<Symbol>(context.getNodeIds());
+		arrays = new NodeProperty<Symbol>(context.getNodeIds());
+		types = new NodeProperty<DijkstraType>(context.getNodeIds());
+		units = new ResolutionUnits();
+	}
+	
+	/**
+	 * Constructor for analysing part of the tree with its own symbol tables and
+	 * resolution units, adding to another visitor's annotations.
+	 * @param annotations the visitor whose annotations are shared
+	 * @param stm the symbol tables to declare in and look up from
+	 */
+	DijkstraSymbolVisitor(DijkstraSymbolVisitor annotations, SymbolTableManager stm) {
+		super();
+		context = annotations.context;
+		this.stm = stm;
+		symbols = annotations.symbols;
+		functions = annotations.functions;
+		arrays = annotations.arrays;
+		types = annotations.types;
+		units = new ResolutionUnits();
+	}
 	
 	@Override 
 	public DijkstraType visitVariableDeclaration(@NotNull DijkstraParser.VariableDeclarationContext ctx) 
@@ -26,12 +61,9 @@ public class DijkstraSymbolVisitor extends DijkstraBaseVisitor<DijkstraType> {
 		TypeContext type = ctx.type();
 		t = type.accept(this);
 		//Now get all of the ids and add them as symbols
-		IdListContext idlist = ctx.idList();
-		while(idlist != null) {
-			String id = idlist.ID().getText();
-			Symbol symbol = stm.add(id, t);		
-			symbols.put(idlist, symbol);
-			idlist = idlist.idList();
+		for (TerminalNode idNode : ctx.idList().ID()) {
+			Symbol symbol = stm.add(name(idNode), t);		
+			symbols.put(idNode, symbol);
 		}
 		types.put(ctx, t);
 		return t;
@@ -43,8 +75,7 @@ public class DijkstraSymbolVisitor extends DijkstraBaseVisitor<DijkstraType> {
 		if(ctx.type() != null) {
 			t = ctx.type().accept(this);
 		}
-		String id = ctx.ID().getText();
-		Symbol s = stm.add(id, t);
+		Symbol s = stm.add(name(ctx.ID()), t);
 		symbols.put(ctx, s);
 		types.put(ctx, t);
 		return t;
@@ -58,14 +89,12 @@ public class DijkstraSymbolVisitor extends DijkstraBaseVisitor<DijkstraType> {
 		TypeContext type = ctx.type();
 		t = type.accept(this);
 		//Now get all of the ids and add them as symbols
+		units.add(ctx);
 		ctx.expression().accept(this);
-		IdListContext idlist = ctx.idList();
-		while(idlist != null) {
-			String id = idlist.ID().getText();
-			Symbol symbol = stm.addArray(id, t);
+		for (TerminalNode idNode : ctx.idList().ID()) {
+			Symbol symbol = stm.addArray(name(idNode), t);
 			arrays.put(ctx, symbol);
-			symbols.put(idlist, symbol);
-			idlist = idlist.idList();
+			symbols.put(idNode, symbol);
 		}
 		types.put(ctx, t);
 		return t;
@@ -75,52 +104,69 @@ public class DijkstraSymbolVisitor extends DijkstraBaseVisitor<DijkstraType> {
 	public DijkstraType visitAssignStatement(@NotNull DijkstraParser.AssignStatementContext ctx)
 	{
 		//iterate over var list and expressionList
-		VarListContext varList = ctx.varList();
-		ExpressionListContext exprList = ctx.expressionList();
-		while(varList != null) {
+		List<VarContext> vars = ctx.varList().var();
+		List<ExpressionContext> exprs = ctx.expressionList().expression();
+		if(exprs.size() < vars.size()) {
+			throw new DijkstraSemanticException("Too few expressions in assign statement [" + ctx.getStart().getLine() + "]");
+		}
+		if(exprs.size() > vars.size()) {
+			throw new DijkstraSemanticException("Too many expressions in assign statement [" + ctx.getStart().getLine() + "]");
+		}
+		units.add(ctx);
+		for(int i = 0; i < vars.size(); i++) {
 			//Get name from var
-			VarContext var = varList.var();
+			VarContext var = vars.get(i);
 			var.accept(this);
 			//Get type from expression
-			if(exprList == null) {
-				throw new DijkstraSemanticException("Too few expressions in assign statement [" + ctx.getStart().getLine() + "]");
-			}
-			DijkstraType t = exprList.expression().accept(this);
+			DijkstraType t = exprs.get(i).accept(this);
 			//Now get id
-			String id;
 			if(var.ID() != null) {
-				id = var.ID().getText();
+				int id = name(var.ID());
 				//create the symbol if it is not an accessor
 				//addifNew
 				Symbol symbol = stm.getSymbol(id);
 				if(symbol == null) {
 					symbol = stm.add(id, t);
 				} else {
-					symbol.updateType(t);
+					updateType(symbol, t);
 				}
 				symbols.put(var, symbol);
 			}
-			varList = varList.varList();
-			exprList = exprList.expressionList();
 		}
-		
-		if(exprList != null) {
-			throw new DijkstraSemanticException("Too many expressions in assign statement [" + ctx.getStart().getLine() + "]");
-		}
-		
+		return null;
+	}
+	
+	@Override
+	public DijkstraType visitOutputStatement(@NotNull OutputStatementContext ctx) {
+		units.add(ctx);
+		visitChildren(ctx);
+		return null;
+	}
+	
+	@Override
+	public DijkstraType visitReturnStatement(@NotNull ReturnStatementContext ctx) {
+		units.add(ctx);
+		visitChildren(ctx);
+		return null;
+	}
+	
+	@Override
+	public DijkstraType visitGuard(@NotNull GuardContext ctx) {
+		//only the expression is resolved with the guard
+		units.add(ctx);
+		ctx.expression().accept(this);
+		ctx.statement().accept(this);
 		return null;
 	}
 	
 	@Override
 	public DijkstraType visitInputStatement(@NotNull DijkstraParser.InputStatementContext ctx) {
-		IdListContext idlist = ctx.idList();
-		while(idlist != null) {
-			String id = idlist.ID().getText();
+		for (TerminalNode idNode : ctx.idList().ID()) {
+			int id = name(idNode);
 			Symbol symbol = stm.getSymbol(id);
 			if(symbol == null)
 				symbol = stm.add(id);
-			symbols.put(idlist, symbol);
-			idlist = idlist.idList();
+			symbols.put(idNode, symbol);
 		}
 		return null;
 	}
@@ -128,16 +174,15 @@ public class DijkstraSymbolVisitor extends DijkstraBaseVisitor<DijkstraType> {
 	/* Scope changing declarations */
 	@Override
 	public DijkstraType visitProcedureDeclaration(@NotNull DijkstraParser.ProcedureDeclarationContext ctx) {
-		MethodSymbol symbol = stm.addProcedure(ctx.ID().getText(), PROCEDURE);
+		MethodSymbol symbol = stm.addProcedure(name(ctx.ID()), PROCEDURE);
 		symbols.put(ctx, symbol);
 		stm.enterScope();
 		stm.setInMethod(true);
 		//Handle parameters
-		ParameterListContext param = ctx.parameterList();
-		while(param != null) {
-			DijkstraType p_t = param.parameter().accept(this);
-			symbol.addParameter(p_t);
-			param = param.parameterList();
+		if(ctx.parameterList() != null) {
+			for (ParameterContext param : ctx.parameterList().parameter()) {
+				symbol.addParameter(param.accept(this));
+			}
 		}
 		//Visit body
 		ctx.compoundStatement().accept(this);
@@ -150,16 +195,15 @@ public class DijkstraSymbolVisitor extends DijkstraBaseVisitor<DijkstraType> {
 	@Override
 	public DijkstraType visitFunctionDeclaration(@NotNull DijkstraParser.FunctionDeclarationContext ctx) {
 		DijkstraType t = ctx.type().accept(this);
-		MethodSymbol symbol = stm.addFunction(ctx.ID().getText(), t);
+		MethodSymbol symbol = stm.addFunction(name(ctx.ID()), t);
 		functions.put(ctx, symbol);
 		stm.enterScope();
 		stm.setInMethod(true);
 		//Handle parameters
-		ParameterListContext param = ctx.parameterList();
-		while(param != null) {
-			DijkstraType p_t = param.parameter().accept(this);
-			symbol.addParameter(p_t);
-			param = param.parameterList();
+		if(ctx.parameterList() != null) {
+			for (ParameterContext param : ctx.parameterList().parameter()) {
+				symbol.addParameter(param.accept(this));
+			}
 		}
 		//Visit body
 		ctx.compoundStatement().accept(this);
@@ -229,7 +273,7 @@ public class DijkstraSymbolVisitor extends DijkstraBaseVisitor<DijkstraType> {
 	/* Primary Expression Types */
 	@Override
 	public DijkstraType visitArrayAccessor(@NotNull DijkstraParser.ArrayAccessorContext ctx) {
-		Symbol arr = stm.getArray(ctx.ID().getText());
+		Symbol arr = stm.getArray(name(ctx.ID()));
 		if(arr == null) {
 			throw new DijkstraSymbolException("No array with name " + ctx.ID().getText() + " has been defined");
 		}
@@ -249,7 +293,7 @@ public class DijkstraSymbolVisitor extends DijkstraBaseVisitor<DijkstraType> {
 	
 	@Override
 	public DijkstraType visitFunctionCall(@NotNull DijkstraParser.FunctionCallContext ctx) {
-		Symbol fun = stm.getFunction(ctx.ID().getText());
+		Symbol fun = stm.getFunction(name(ctx.ID()));
 		if(fun == null) {
 			throw new DijkstraSymbolException("No function with name " + ctx.ID().getText() + " has been defined");
 		}
@@ -263,11 +307,12 @@ public class DijkstraSymbolVisitor extends DijkstraBaseVisitor<DijkstraType> {
 	
 	@Override
 	public DijkstraType visitProcedureCall(@NotNull DijkstraParser.ProcedureCallContext ctx) {
-		Symbol proc = stm.getProcedure(ctx.ID().getText());
+		Symbol proc = stm.getProcedure(name(ctx.ID()));
 		if(proc == null) {
 			throw new DijkstraSymbolException("No procedure with name " + ctx.ID().getText() + " has been defined");
 		}
 		symbols.put(ctx, proc);
+		units.add(ctx);
 		if(ctx.argList() != null) {
 			ctx.argList().accept(this);
 		}
@@ -276,9 +321,8 @@ public class DijkstraSymbolVisitor extends DijkstraBaseVisitor<DijkstraType> {
 	
 	@Override
 	public DijkstraType visitArgList(@NotNull ArgListContext ctx) {
-		ctx.expression().accept(this);
-		if(ctx.argList() != null) {
-			ctx.argList().accept(this);
+		for (ExpressionContext arg : ctx.expression()) {
+			arg.accept(this);
 		}
 		return null;
 	}
@@ -303,7 +347,7 @@ public class DijkstraSymbolVisitor extends DijkstraBaseVisitor<DijkstraType> {
 	
 	@Override
 	public DijkstraType visitIdexp(@NotNull DijkstraParser.IdexpContext ctx) {
-		Symbol s = stm.getSymbol(ctx.ID().getText());
+		Symbol s = stm.getSymbol(name(ctx.ID()));
 		if(s == null){
 			throw new DijkstraSymbolException("Reference to symbol " + ctx.ID().getText() + ", which does not exist.");
 		}
@@ -328,4 +372,19 @@ public class DijkstraSymbolVisitor extends DijkstraBaseVisitor<DijkstraType> {
 		return t;
 	}
 	
+	/**
+	 * Widen the type of an existing symbol that is assigned to.
+	 */
+	void updateType(Symbol symbol, DijkstraType t)
+	{
+		symbol.updateType(t);
+	}
+	
+	/**
+	 * @return the interned name of the identifier, hashed once per token
+	 */
+	private int name(TerminalNode id)
+	{
+		return stm.getNames().intern(id);
+	}
 }
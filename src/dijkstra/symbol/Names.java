@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.symbol;
+
+import java.util.*;
+
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import dijkstra.lexparse.DijkstraParser;
+
+/**
+ * Interns the identifiers of one compilation into dense integer names, starting
+ * at 0. Symbol tables are keyed on these names, so the text of an identifier is
+ * hashed once when it is interned instead of once per table searched.
+ * <p>
+ * The table is keyed on characters, so an identifier can be interned straight
+ * from the scanner's character array; its String is only built the first time
+ * it is seen. {@link #internIds(char[], List)} does this for every ID token of
+ * a program after it is scanned and remembers each token's name by its index,
+ * so the symbol pass never asks a token for its text. Tokens that were not
+ * interned that way are interned from their text when first asked about.
+ * <p>
+ * Several threads may intern at once. A token that has already been named is
+ * looked up without the lock; naming a new one, and growing the table of token
+ * names, happen under it, as does every change to the identifier table.
+ * @version Oct 18, 2026
+ */
+public class Names
+{
+	private String[] text = new String[64];		// by name
+	private int[] hashes = new int[64];			// by name
+	private int[] slots = new int[128];			// name + 1, 0 for a free slot
+	private int size = 0;
+	private int[] byToken = new int[0];			// name + 1, so 0 means not interned yet
+
+	/**
+	 * @param id the identifier
+	 * @return its name, which is new if the identifier has not been seen before
+	 */
+	public synchronized int intern(String id)
+	{
+		final int hash = id.hashCode();
+		final int mask = slots.length - 1;
+		int i = mix(hash) & mask;
+		for (int slot; (slot = slots[i]) != 0; i = (i + 1) & mask) {
+			if (hashes[slot - 1] == hash && text[slot - 1].equals(id)) {
+				return slot - 1;
+			}
+		}
+		return add(i, id, hash);
+	}
+
+	/**
+	 * Intern the identifier held in part of a character array, without building
+	 * its String unless it is new.
+	 * @param data the characters
+	 * @param start the index of the identifier's first character
+	 * @param end the index after its last character
+	 * @return its name, which is new if the identifier has not been seen before
+	 */
+	public synchronized int intern(char[] data, int start, int end)
+	{
+		int hash = 0;
+		for (int k = start; k < end; k++) {
+			hash = 31 * hash + data[k];		// String.hashCode, so both intern methods agree
+		}
+		final int mask = slots.length - 1;
+		int i = mix(hash) & mask;
+		for (int slot; (slot = slots[i]) != 0; i = (i + 1) & mask) {
+			if (hashes[slot - 1] == hash && matches(text[slot - 1], data, start, end)) {
+				return slot - 1;
+			}
+		}
+		return add(i, new String(data, start, end - start), hash);
+	}
+
+	/**
+	 * Intern every ID token of a scanned program from the characters it was
+	 * scanned from, remembering each token's name by its index in the list, which
+	 * is the index the parser gives it.
+	 * @param data the program text the tokens' start and stop indexes refer to
+	 * @param tokens every token of the program, in order
+	 */
+	public synchronized void internIds(char[] data, List<? extends Token> tokens)
+	{
+		reserve(tokens.size());
+		for (int index = 0; index < tokens.size(); index++) {
+			final Token token = tokens.get(index);
+			if (token.getType() == DijkstraParser.ID) {
+				byToken[index] = intern(data, token.getStartIndex(), token.getStopIndex() + 1) + 1;
+			}
+		}
+	}
+
+	/**
+	 * @param node an ID terminal
+	 * @return the name of its identifier
+	 */
+	public int intern(TerminalNode node)
+	{
+		final Token token = node.getSymbol();
+		final int index = token.getTokenIndex();
+		if (index < 0) {
+			return intern(token.getText());
+		}
+		final int[] names = byToken;
+		if (index < names.length && names[index] != 0) {
+			return names[index] - 1;		// set once under the lock and never changed
+		}
+		return internToken(index, token);
+	}
+
+	/**
+	 * Intern a token that has not been named yet, growing the table if its index
+	 * was not reserved.
+	 */
+	private synchronized int internToken(int index, Token token)
+	{
+		if (index >= byToken.length) {
+			byToken = Arrays.copyOf(byToken, Math.max(index + 1, Math.max(64, byToken.length * 2)));
+		}
+		if (byToken[index] == 0) {
+			byToken[index] = intern(token.getText()) + 1;
+		}
+		return byToken[index] - 1;
+	}
+
+	/**
+	 * Make room to remember the names of tokens with smaller indexes, so that
+	 * interning them from several threads does not grow the table.
+	 * @param tokens one more than the largest token index that will be interned
+	 */
+	public synchronized void reserve(int tokens)
+	{
+		if (tokens > byToken.length) {
+			byToken = Arrays.copyOf(byToken, tokens);
+		}
+	}
+
+	/**
+	 * Look up an identifier without interning it.
+	 * @param id the identifier
+	 * @return its name or -1 if it has never been interned
+	 */
+	public synchronized int find(String id)
+	{
+		final int hash = id.hashCode();
+		final int mask = slots.length - 1;
+		for (int i = mix(hash) & mask, slot; (slot = slots[i]) != 0; i = (i + 1) & mask) {
+			if (hashes[slot - 1] == hash && text[slot - 1].equals(id)) {
+				return slot - 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param name a name returned by this table
+	 * @return the identifier it stands for
+	 */
+	public synchronized String textOf(int name)
+	{
+		if (name >= size) {
+			throw new IndexOutOfBoundsException("No name " + name);
+		}
+		return text[name];
+	}
+
+	/**
+	 * @return the number of distinct identifiers interned
+	 */
+	public synchronized int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Give the identifier the next name, in the free slot its probe ended at.
+	 */
+	private int add(int slot, String id, int hash)
+	{
+		final int name = size++;
+		if (name == text.length) {
+			text = Arrays.copyOf(text, 2 * name);
+			hashes = Arrays.copyOf(hashes, 2 * name);
+		}
+		text[name] = id;
+		hashes[name] = hash;
+		slots[slot] = name + 1;
+		if (2 * size > slots.length) {
+			rehash();
+		}
+		return name;
+	}
+
+	private void rehash()
+	{
+		slots = new int[2 * slots.length];
+		final int mask = slots.length - 1;
+		for (int name = 0; name < size; name++) {
+			int i = mix(hashes[name]) & mask;
+			while (slots[i] != 0) {
+				i = (i + 1) & mask;
+			}
+			slots[i] = name + 1;
+		}
+	}
+
+	private static boolean matches(String id, char[] data, int start, int end)
+	{
+		if (id.length() != end - start) {
+			return false;
+		}
+		for (int k = 0; k < id.length(); k++) {
+			if (id.charAt(k) != data[start + k]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int mix(int hash)
+	{
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -0,0 +1,661 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.symbol;
+
+import static dijkstra.utility.DijkstraType.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.misc.NotNull;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeProperty;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import dijkstra.lexparse.DijkstraParser.*;
+import dijkstra.utility.*;
+
+/**
+ * Runs the symbol pass of {@link DijkstraSymbolVisitor} with the bodies of procedures
+ * and functions analysed on several threads. A serial pass over the program declares
+ * the globals and the methods with their parameter types and sets the bodies aside.
+ * Each body is then analysed on a ForkJoinPool in scopes of its own, which see the
+ * globals and methods declared before it, as they would in one pass. The bodies'
+ * scopes and resolution units are merged back in program order, so the resolver
+ * gets the same constraints in the same order as after one pass.
+ * <p>
+ * A body reads the types of globals, so the result only matches one pass if no
+ * global a body can see changes its type after the body is declared. If one does,
+ * or anything goes wrong, the program is analysed again on one thread, so errors
+ * are reported exactly as by one pass. Small programs are always analysed on one
+ * thread. The context's symbol tables must be empty, as in a new context.
+ * <p>
+ * Since each body only depends on the globals it can see, what one body's pass
+ * found can be kept in a {@link BodyCache} and used again for the next version
+ * of the program, as long as its node is unchanged and its names still find
+ * globals of the same kinds and types.
+ */
+public class ParallelSymbolAnalyzer
+{
+	private static final int MIN_BODY_TOKENS = 4096;
+	// Kinds of global a body looks up
+	private static final int GLOBAL = 0, GLOBAL_ARRAY = 1, GLOBAL_FUNCTION = 2, GLOBAL_PROCEDURE = 3;
+
+	private ParallelSymbolAnalyzer()
+	{
+		// static methods only
+	}
+
+	/**
+	 * Analyse a program on the common ForkJoinPool.
+	 * @param tree the parse tree
+	 * @param context the compilation context
+	 * @return the visitor holding the annotations, as if it had visited the tree
+	 */
+	public static DijkstraSymbolVisitor analyze(ParserRuleContext tree, CompilationContext context)
+	{
+		return analyze(tree, context, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Analyse a program on the given pool.
+	 * @param tree the parse tree
+	 * @param context the compilation context
+	 * @param pool where the bodies are analysed
+	 * @return the visitor holding the annotations, as if it had visited the tree
+	 */
+	public static DijkstraSymbolVisitor analyze(ParserRuleContext tree, CompilationContext context,
+			ForkJoinPool pool)
+	{
+		return analyze(tree, context, pool, MIN_BODY_TOKENS);
+	}
+
+	/**
+	 * Analyse a program, on one thread unless its bodies have at least minBodyTokens tokens.
+	 */
+	static DijkstraSymbolVisitor analyze(ParserRuleContext tree, CompilationContext context,
+			ForkJoinPool pool, int minBodyTokens)
+	{
+		final int tokens = tree.getStop().getTokenIndex() + 1;
+		if (tokens < minBodyTokens) {
+			return serial(tree, context);
+		}
+		final Declarations declarations = new Declarations(context);
+		try {
+			tree.accept(declarations);
+			if (declarations.bodies.size() < 2 || declarations.bodyTokens < minBodyTokens) {
+				declarations.finishBodies();
+				return declarations;
+			}
+		} catch (RuntimeException e) {
+			return again(tree, context);
+		}
+
+		final NodeIds nodeIds = context.getNodeIds();
+		nodeIds.beginShared(declarations.bodyTokens);
+		final int nodes = nodeIds.size() + declarations.bodyTokens;
+		reserve(declarations.symbols, nodes, tokens);
+		reserve(declarations.functions, nodes, tokens);
+		reserve(declarations.arrays, nodes, tokens);
+		reserve(declarations.types, nodes, tokens);
+		context.getSymbolTableManager().getNames().reserve(tokens);
+		final List<ForkJoinTask<BodyVisitor>> tasks = new ArrayList<ForkJoinTask<BodyVisitor>>();
+		for (Body body : declarations.bodies) {
+			tasks.add(pool.submit(() -> body.analyze(declarations)));
+		}
+		boolean failed = false;
+		for (ForkJoinTask<BodyVisitor> task : tasks) {
+			task.quietlyJoin();		// every body must finish before the node IDs are private again
+			failed |= task.isCompletedAbnormally();
+		}
+		nodeIds.endShared();
+		if (failed) {
+			return again(tree, context);
+		}
+
+		final List<BodyVisitor> visitors = new ArrayList<BodyVisitor>();
+		for (ForkJoinTask<BodyVisitor> task : tasks) {
+			visitors.add(task.join());
+		}
+		declarations.merge(visitors);
+		return declarations;
+	}
+
+	/**
+	 * Analyse a version of a program on this thread, taking the results for the
+	 * bodies that have not changed since the last analysis with the same cache
+	 * from the cache. The rest of the program is analysed again. The context
+	 * must be new, as for the other methods, and the result is the same as theirs.
+	 * @param tree the parse tree
+	 * @param context the compilation context
+	 * @param cache the bodies of the last analysis, replaced by the bodies of this one
+	 * @return the visitor holding the annotations, as if it had visited the tree
+	 */
+	public static DijkstraSymbolVisitor analyze(ParserRuleContext tree, CompilationContext context,
+			BodyCache cache)
+	{
+		if (context.getSymbolTableManager().getKeepScopes()) {
+			cache.clear();		// kept scopes hold the locals, which are not cached
+			return serial(tree, context);
+		}
+		final Declarations declarations = new Declarations(context);
+		try {
+			tree.accept(declarations);
+			declarations.reuseBodies(cache);
+			return declarations;
+		} catch (RuntimeException e) {
+			cache.clear();
+			return again(tree, context);
+		}
+	}
+
+	private static DijkstraSymbolVisitor serial(ParserRuleContext tree, CompilationContext context)
+	{
+		final DijkstraSymbolVisitor visitor = new DijkstraSymbolVisitor(context);
+		tree.accept(visitor);
+		return visitor;
+	}
+
+	/**
+	 * Throw away what was declared and analyse the program on this thread.
+	 */
+	private static DijkstraSymbolVisitor again(ParserRuleContext tree, CompilationContext context)
+	{
+		context.getSymbolTableManager().restart();
+		return serial(tree, context);
+	}
+
+	/**
+	 * The visitor's annotations are always node properties; see its constructor.
+	 */
+	private static void reserve(ParseTreeProperty<?> property, int nodes, int tokens)
+	{
+		((NodeProperty<?>) property).reserve(nodes, tokens);
+	}
+
+	/**
+	 * Thrown when a global that a body can see changes its type after the body is declared.
+	 */
+	@SuppressWarnings("serial")
+	private static class DependentBodies extends RuntimeException
+	{
+		DependentBodies()
+		{
+			super(null, null, false, false);
+		}
+	}
+
+	/**
+	 * A procedure or function body set aside by the declaration pass.
+	 */
+	private static class Body
+	{
+		final int index;				// the number of bodies set aside before this one
+		final ParameterListContext parameters;
+		final CompoundStatementContext statement;
+		final int unitIndex;			// where its units go among the declaration pass's
+		final int scopeIndex;			// where its scopes go among the declaration pass's
+
+		Body(int index, ParameterListContext parameters, CompoundStatementContext statement,
+				int unitIndex, int scopeIndex)
+		{
+			this.index = index;
+			this.parameters = parameters;
+			this.statement = statement;
+			this.unitIndex = unitIndex;
+			this.scopeIndex = scopeIndex;
+		}
+
+		BodyVisitor analyze(Declarations declarations)
+		{
+			final BodyScopes scopes = new BodyScopes(declarations, index, null);
+			final BodyVisitor visitor = new BodyVisitor(declarations, scopes);
+			visit(visitor);
+			return visitor;
+		}
+
+		/**
+		 * Analyse the body on its own, recording its annotations for the cache
+		 * instead of adding them to the declaration pass's.
+		 */
+		BodyCache.Entry record(Declarations declarations)
+		{
+			final BodyCache.Entry entry = new BodyCache.Entry(parameters);
+			final BodyScopes scopes = new BodyScopes(declarations, index, entry.lookups);
+			final BodyVisitor visitor = new BodyVisitor(declarations, scopes);
+			visitor.symbols = new RecordingProperty<Symbol>(entry, 0);
+			visitor.functions = new RecordingProperty<Symbol>(entry, 1);
+			visitor.arrays = new RecordingProperty<Symbol>(entry, 2);
+			visitor.types = new RecordingProperty<DijkstraType>(entry, 3);
+			visit(visitor);
+			for (List<Object> values : entry.values) {
+				for (Object value : values) {
+					if (value instanceof Symbol && ((Symbol) value).isLocal()) {
+						entry.locals.put((Symbol) value, ((Symbol) value).getType());
+					}
+				}
+			}
+			entry.units = visitor.units.getUnits();
+			entry.scopes = scopes.getNumberOfScopes();
+			entry.symbols = scopes.getNumberOfSymbols();
+			return entry;
+		}
+
+		private void visit(BodyVisitor visitor)
+		{
+			visitor.scopes.setInMethod(true);
+			if (parameters != null) {
+				for (ParameterContext parameter : parameters.parameter()) {
+					parameter.accept(visitor);
+				}
+			}
+			statement.accept(visitor);
+		}
+	}
+
+	/**
+	 * Annotations of a body, recorded for the cache instead of being made. The
+	 * symbol pass only writes its annotations.
+	 */
+	private static class RecordingProperty<V> extends ParseTreeProperty<V>
+	{
+		private final List<ParseTree> nodes;
+		private final List<Object> values;
+
+		RecordingProperty(BodyCache.Entry entry, int property)
+		{
+			nodes = entry.nodes.get(property);
+			values = entry.values.get(property);
+		}
+
+		@Override
+		public void put(ParseTree node, V value)
+		{
+			nodes.add(node);
+			values.add(value);
+		}
+	}
+
+	/**
+	 * The serial pass: everything but the method bodies, recording when each global
+	 * is declared so the bodies only see the ones declared before them.
+	 */
+	private static class Declarations extends DijkstraSymbolVisitor
+	{
+		final List<Body> bodies = new ArrayList<Body>();
+		int bodyTokens = 0;
+
+		private final SymbolTableManager stm;
+		private final SymbolTable global;
+		// For globals declared after a body was set aside: how many bodies were set aside before
+		private final IntMap<Integer> lateSymbols = new IntMap<Integer>();
+		private final IntMap<Integer> lateArrays = new IntMap<Integer>();
+		private final IntMap<Integer> lateFunctions = new IntMap<Integer>();
+		private final IntMap<Integer> lateProcedures = new IntMap<Integer>();
+
+		Declarations(CompilationContext context)
+		{
+			super(context);
+			stm = context.getSymbolTableManager();
+			global = stm.getCurrentSymbolTable();
+		}
+
+		@Override
+		public DijkstraType visitProcedureDeclaration(@NotNull ProcedureDeclarationContext ctx)
+		{
+			final int name = name(ctx.ID());
+			final MethodSymbol symbol = stm.addProcedure(name, PROCEDURE);
+			symbols.put(ctx, symbol);
+			declared(lateProcedures, name);
+			setAside(ctx, symbol, ctx.parameterList(), ctx.compoundStatement());
+			return null;
+		}
+
+		@Override
+		public DijkstraType visitFunctionDeclaration(@NotNull FunctionDeclarationContext ctx)
+		{
+			final DijkstraType t = ctx.type().accept(this);
+			final int name = name(ctx.ID());
+			final MethodSymbol symbol = stm.addFunction(name, t);
+			functions.put(ctx, symbol);
+			declared(lateFunctions, name);
+			setAside(ctx, symbol, ctx.parameterList(), ctx.compoundStatement());
+			return null;
+		}
+
+		@Override
+		public DijkstraType visitVariableDeclaration(@NotNull VariableDeclarationContext ctx)
+		{
+			final DijkstraType t = super.visitVariableDeclaration(ctx);
+			declared(lateSymbols, ctx.idList().ID());
+			return t;
+		}
+
+		@Override
+		public DijkstraType visitArrayDeclaration(@NotNull ArrayDeclarationContext ctx)
+		{
+			final DijkstraType t = super.visitArrayDeclaration(ctx);
+			declared(lateArrays, ctx.idList().ID());
+			return t;
+		}
+
+		@Override
+		public DijkstraType visitInputStatement(@NotNull InputStatementContext ctx)
+		{
+			final List<TerminalNode> undeclared = undeclared(ctx.idList().ID());
+			super.visitInputStatement(ctx);
+			declared(lateSymbols, undeclared);
+			return null;
+		}
+
+		@Override
+		public DijkstraType visitAssignStatement(@NotNull AssignStatementContext ctx)
+		{
+			final List<TerminalNode> ids = new ArrayList<TerminalNode>();
+			for (VarContext var : ctx.varList().var()) {
+				if (var.ID() != null) {
+					ids.add(var.ID());
+				}
+			}
+			final List<TerminalNode> undeclared = undeclared(ids);
+			super.visitAssignStatement(ctx);
+			declared(lateSymbols, undeclared);
+			return null;
+		}
+
+		@Override
+		void updateType(Symbol symbol, DijkstraType t)
+		{
+			if (symbol.updateType(t) && !bodies.isEmpty() && !symbol.isLocal()) {
+				final int name = stm.getNames().find(symbol.getId());
+				if (global.getSymbol(name) == symbol && declaredBefore(lateSymbols, name) < bodies.size()) {
+					throw new DependentBodies();
+				}
+			}
+		}
+
+		/**
+		 * Analyse the bodies set aside on this thread, for small programs.
+		 */
+		void finishBodies()
+		{
+			final List<BodyVisitor> visitors = new ArrayList<BodyVisitor>();
+			for (Body body : bodies) {
+				visitors.add(body.analyze(this));
+			}
+			merge(visitors);
+		}
+
+		/**
+		 * Use the cached results of the bodies that are unchanged and still see
+		 * the same globals, and analyse the others on this thread.
+		 */
+		void reuseBodies(BodyCache cache)
+		{
+			cache.begin();
+			final List<List<ParserRuleContext>> bodyUnits = new ArrayList<List<ParserRuleContext>>();
+			for (Body body : bodies) {
+				BodyCache.Entry entry = cache.get(body.statement);
+				boolean reused = entry != null && entry.parameters == body.parameters && replay(entry, body);
+				if (!reused) {
+					entry = body.record(this);
+					if (!replay(entry, body)) {
+						throw new IllegalStateException("Recorded body does not replay");
+					}
+				}
+				cache.keep(body.statement, entry, reused);
+				stm.addScopes(entry.scopes, entry.symbols);
+				bodyUnits.add(entry.units);
+			}
+			mergeUnits(bodyUnits);
+			cache.end();
+		}
+
+		/**
+		 * Add a cached body's annotations, with the globals it looked up replaced
+		 * by the ones they find now and its locals by copies as the symbol pass
+		 * left them, since later passes change symbols.
+		 * @return false if a name now finds a different kind or type of global
+		 */
+		private boolean replay(BodyCache.Entry entry, Body body)
+		{
+			final Map<Symbol, Symbol> now = new IdentityHashMap<Symbol, Symbol>();
+			for (BodyCache.Lookup lookup : entry.lookups) {
+				final Symbol symbol = global(lookup.kind, stm.getNames().intern(lookup.name), body.index);
+				if (symbol == null ? lookup.symbol != null
+						: lookup.symbol == null || symbol.getType() != lookup.type) {
+					return false;
+				}
+				if (symbol != null) {
+					now.put(lookup.symbol, symbol);
+				}
+			}
+			for (Map.Entry<Symbol, DijkstraType> local : entry.locals.entrySet()) {
+				now.put(local.getKey(), new Symbol(local.getKey().getId(), local.getValue(), true));
+			}
+			for (List<Object> values : entry.values) {
+				for (Object value : values) {
+					if (value instanceof Symbol && !now.containsKey(value)) {
+						return false;
+					}
+				}
+			}
+			replay(symbols, entry, 0, now);
+			replay(functions, entry, 1, now);
+			replay(arrays, entry, 2, now);
+			replay(types, entry, 3, now);
+			return true;
+		}
+
+		@SuppressWarnings("unchecked")
+		private <V> void replay(ParseTreeProperty<V> property, BodyCache.Entry entry, int p,
+				Map<Symbol, Symbol> now)
+		{
+			final List<ParseTree> nodes = entry.nodes.get(p);
+			final List<Object> values = entry.values.get(p);
+			for (int i = 0; i < nodes.size(); i++) {
+				final Object value = values.get(i);
+				property.put(nodes.get(i), (V) (value instanceof Symbol ? now.get(value) : value));
+			}
+		}
+
+		/**
+		 * @return the global of a kind a body with the given index can see, or null
+		 */
+		Symbol global(int kind, int name, int index)
+		{
+			switch (kind) {
+			case GLOBAL:
+				return declaredBefore(lateSymbols, name) <= index ? global.getSymbol(name) : null;
+			case GLOBAL_ARRAY:
+				return declaredBefore(lateArrays, name) <= index ? global.getArray(name) : null;
+			case GLOBAL_FUNCTION:
+				return declaredBefore(lateFunctions, name) <= index ? global.getFunction(name) : null;
+			default:
+				return declaredBefore(lateProcedures, name) <= index ? global.getProcedure(name) : null;
+			}
+		}
+
+		/**
+		 * Put the bodies' scopes and resolution units where one pass would have.
+		 */
+		void merge(List<BodyVisitor> visitors)
+		{
+			final List<List<ParserRuleContext>> bodyUnits = new ArrayList<List<ParserRuleContext>>();
+			for (int i = bodies.size() - 1; i >= 0; i--) {
+				stm.insertScopes(bodies.get(i).scopeIndex, visitors.get(i).scopes);
+			}
+			for (BodyVisitor visitor : visitors) {
+				bodyUnits.add(visitor.units.getUnits());
+			}
+			mergeUnits(bodyUnits);
+		}
+
+		private void mergeUnits(List<List<ParserRuleContext>> bodyUnits)
+		{
+			final List<ParserRuleContext> own = units.getUnits();
+			final ResolutionUnits merged = new ResolutionUnits();
+			int next = 0;
+			for (int i = 0; i < bodies.size(); i++) {
+				for (; next < bodies.get(i).unitIndex; next++) {
+					merged.add(own.get(next));
+				}
+				for (ParserRuleContext unit : bodyUnits.get(i)) {
+					merged.add(unit);
+				}
+			}
+			for (; next < own.size(); next++) {
+				merged.add(own.get(next));
+			}
+			units = merged;
+		}
+
+		/**
+		 * @return the number of bodies set aside before the global was declared
+		 */
+		int declaredBefore(IntMap<Integer> late, int name)
+		{
+			final Integer before = late.get(name);
+			return before == null ? 0 : before;
+		}
+
+		private void setAside(ParserRuleContext declaration, MethodSymbol symbol,
+				ParameterListContext parameters, CompoundStatementContext statement)
+		{
+			if (parameters != null) {
+				for (ParameterContext parameter : parameters.parameter()) {
+					symbol.addParameter(parameter.type() == null ? UNDEFINED : parameter.type().accept(this));
+				}
+			}
+			bodies.add(new Body(bodies.size(), parameters, statement,
+					units.getUnits().size(), stm.getNumberOfScopes()));
+			bodyTokens += statement.getStop().getTokenIndex() - declaration.getStart().getTokenIndex() + 1;
+		}
+
+		private List<TerminalNode> undeclared(List<TerminalNode> ids)
+		{
+			final List<TerminalNode> undeclared = new ArrayList<TerminalNode>();
+			if (!bodies.isEmpty() && stm.getCurrentSymbolTable() == global) {
+				for (TerminalNode id : ids) {
+					if (global.getSymbol(name(id)) == null) {
+						undeclared.add(id);
+					}
+				}
+			}
+			return undeclared;
+		}
+
+		private void declared(IntMap<Integer> late, List<TerminalNode> ids)
+		{
+			if (!bodies.isEmpty() && stm.getCurrentSymbolTable() == global) {
+				for (TerminalNode id : ids) {
+					declared(late, name(id));
+				}
+			}
+		}
+
+		private void declared(IntMap<Integer> late, int name)
+		{
+			if (!bodies.isEmpty() && late.get(name) == null) {
+				late.put(name, bodies.size());
+			}
+		}
+
+		private int name(TerminalNode id)
+		{
+			return stm.getNames().intern(id);
+		}
+	}
+
+	/**
+	 * The scopes of one body. Lookups that reach the globals only find the ones
+	 * declared before the body.
+	 */
+	private static class BodyScopes extends SymbolTableManager
+	{
+		private final Declarations declarations;
+		private final int index;
+		private final List<BodyCache.Lookup> lookups;		// null unless recording
+		private final Set<Long> looked = new HashSet<Long>();
+
+		BodyScopes(Declarations declarations, int index, List<BodyCache.Lookup> lookups)
+		{
+			super(new SymbolTable(null, declarations.global.getNames()));
+			this.declarations = declarations;
+			this.index = index;
+			this.lookups = lookups;
+			setKeepScopes(declarations.stm.getKeepScopes());
+		}
+
+		@Override
+		public Symbol getSymbol(int name)
+		{
+			final Symbol symbol = super.getSymbol(name);
+			return symbol != null ? symbol : global(GLOBAL, name);
+		}
+
+		@Override
+		public Symbol getArray(int name)
+		{
+			final Symbol symbol = super.getArray(name);
+			return symbol != null ? symbol : global(GLOBAL_ARRAY, name);
+		}
+
+		@Override
+		public MethodSymbol getFunction(int name)
+		{
+			final MethodSymbol symbol = super.getFunction(name);
+			return symbol != null ? symbol : (MethodSymbol) global(GLOBAL_FUNCTION, name);
+		}
+
+		@Override
+		public MethodSymbol getProcedure(int name)
+		{
+			final MethodSymbol symbol = super.getProcedure(name);
+			return symbol != null ? symbol : (MethodSymbol) global(GLOBAL_PROCEDURE, name);
+		}
+
+		private Symbol global(int kind, int name)
+		{
+			final Symbol symbol = declarations.global(kind, name, index);
+			if (lookups != null && looked.add((long) name << 2 | kind)) {
+				lookups.add(new BodyCache.Lookup(kind, getNames().textOf(name), symbol));
+			}
+			return symbol;
+		}
+	}
+
+	/**
+	 * The symbol pass over one body, which must not change the types of globals.
+	 */
+	private static class BodyVisitor extends DijkstraSymbolVisitor
+	{
+		final BodyScopes scopes;
+
+		BodyVisitor(Declarations declarations, BodyScopes scopes)
+		{
+			super(declarations, scopes);
+			this.scopes = scopes;
+		}
+
+		@Override
+		void updateType(Symbol symbol, DijkstraType t)
+		{
+			if (symbol.isLocal()) {
+				symbol.updateType(t);
+			} else if (new Symbol(symbol.getId(), symbol.getType(), false).updateType(t)) {
+				throw new DependentBodies();
+			}
+		}
+	}
+}
@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.symbol;
+
+import java.util.*;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+
+/**
+ * The parts of the tree type inference works on, recorded by the
+ * {@link DijkstraSymbolVisitor} in source order. A unit is an assignment,
+ * output, return, procedure call or array declaration, or a guard, of which
+ * only the expression belongs to the unit. Every expression is in exactly one
+ * unit, and no unit contains another, so inference never has to walk the
+ * declarations or the statements that only group other statements.
+ * @version Oct 18, 2026
+ */
+public class ResolutionUnits
+{
+	private final List<ParserRuleContext> units = new ArrayList<ParserRuleContext>();
+
+	/**
+	 * Add the next unit in source order.
+	 * @param unit the unit
+	 */
+	public void add(ParserRuleContext unit)
+	{
+		units.add(unit);
+	}
+
+	/**
+	 * @return every unit in source order
+	 */
+	public List<ParserRuleContext> getUnits()
+	{
+		return units;
+	}
+}
@@ -11,7 +11,6 @@
 package dijkstra.symbol;
 
 import static dijkstra.utility.DijkstraType.*;
-import dijkstra.codegen.JVMInfo;
 import dijkstra.semantic.DijkstraSemanticException;
 import dijkstra.utility.DijkstraType;
 
@@ -30,7 +29,6 @@ public class Symbol
 	private boolean isFieldInitialized;
 	private boolean isLocal;
 	public static final int NO_ADDRESS = Integer.MIN_VALUE	;
-	private static int curFieldNum = 0;
 
 	
 	/**
@@ -102,15 +100,20 @@ public class Symbol
 	}
 	
 	/**
-	 * @return the address
+	 * @return the address, or NO_ADDRESS if no local slot has been assigned yet
 	 */
 	public int getAddress()
 	{
-		if(address == NO_ADDRESS) {
-			address = JVMInfo.getNextAddress();
-		}
 		return address;
 	}
+	
+	/**
+	 * @param address the local variable slot to set
+	 */
+	public void setAddress(int address)
+	{
+		this.address = address;
+	}
 
 
 	/*
@@ -234,14 +237,6 @@ public class Symbol
 		}
 	}
 	
-	/**
-	 * Gets a unique name for this field
-	 * @return
-	 */
-	private static String getNewFieldName() {
-		return String.valueOf(++curFieldNum);
-	}
-	
 	/**
 	 * @return whether this symbol has been initialized as a field
 	 */
@@ -250,14 +245,18 @@ public class Symbol
 	}
 	
 	/**
-	 * @return get the field name of this symbol
+	 * @return get the field name of this symbol, or null if none has been assigned yet
 	 */
 	public String getFieldName() {
-		if(fieldName == null) {
-			fieldName = getNewFieldName();
-		}
 		return fieldName;
 	}
+	
+	/**
+	 * @param fieldName the field name to set
+	 */
+	public void setFieldName(String fieldName) {
+		this.fieldName = fieldName;
+	}
 
 	/**
 	 * @return the JVM type identifier for this symbol
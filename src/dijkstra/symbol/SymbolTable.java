@@ -11,34 +11,47 @@
 
 package dijkstra.symbol;
 
-import java.util.*;
-
-import dijkstra.utility.DijkstraType;
+import dijkstra.utility.IntMap;
 
 /**
- * A Dijkstra compiler symbol table
+ * A Dijkstra compiler symbol table. Entries are keyed on the integer names of a
+ * {@link Names} table shared by the whole scope chain; the String methods intern
+ * or look up the identifier first. The table of each kind is only allocated when
+ * the first entry of that kind is added, since most scopes declare few kinds.
+ * <p>
+ * Lookups here search the parent chain. {@link SymbolTableManager} answers lookups
+ * in the current scope in constant time instead.
  * @version Feb 6, 2015
  */
 public class SymbolTable
 {
 	private final SymbolTable parent;
-	private final Map<String, Symbol> symbols;
-	private final Map<String, MethodSymbol> functions;
-	private final Map<String, MethodSymbol> procedures;
-	private final Map<String, Symbol> arrays;
+	private final Names names;
+	private IntMap<Symbol> symbols;
+	private IntMap<MethodSymbol> functions;
+	private IntMap<MethodSymbol> procedures;
+	private IntMap<Symbol> arrays;
 	
 	/**
-	 * Sole constructor. Creates the symbol table with the specified parent. The parent
-	 * can be null for the global lexical level symbol table.
+	 * Creates the symbol table with the specified parent. The parent can be null for
+	 * the global lexical level symbol table, which then gets a new {@link Names}
+	 * table; otherwise the parent's is shared.
 	 * @param parent the symbol table at the enclosing lexical level.
 	 */
 	public SymbolTable(SymbolTable parent)
+	{
+		this(parent, parent == null ? new Names() : parent.names);
+	}
+	
+	/**
+	 * Creates the symbol table with the specified parent and identifier names.
+	 * @param parent the symbol table at the enclosing lexical level, or null
+	 * @param names the names every table in the scope chain is keyed on
+	 */
+	public SymbolTable(SymbolTable parent, Names names)
 	{
 		this.parent = parent;
-		symbols = new HashMap<String, Symbol>();
-		functions = new HashMap<String, MethodSymbol>();
-		procedures = new HashMap<String, MethodSymbol>();
-		arrays = new HashMap<String, Symbol>();
+		this.names = names;
 	}
 	
 	/**
@@ -49,7 +62,22 @@ public class SymbolTable
 	 */
 	public Symbol add(Symbol symbol) 
 	{
-		final Symbol s = symbols.put(symbol.getId(), symbol);
+		return add(names.intern(symbol.getId()), symbol);
+	}
+	
+	/**
+	 * Add the specified Symbol to the current symbol table under an interned name.
+	 * @param name the symbol's name in {@link #getNames()}
+	 * @param symbol the symbol to add to the table
+	 * @return the symbol that was added
+	 * @throws DijkstraSymbolException if the symbol already exists in this table
+	 */
+	public Symbol add(int name, Symbol symbol) 
+	{
+		if (symbols == null) {
+			symbols = new IntMap<Symbol>();
+		}
+		final Symbol s = symbols.put(name, symbol);
 		if (s != null) {	// Symbol was already in the table
 			throw new DijkstraSymbolException(
 					"Attempting to add a duplicate symbol to a symbol table" + s.getId());
@@ -65,7 +93,22 @@ public class SymbolTable
 	 */
 	public MethodSymbol addProcedure(MethodSymbol symbol) 
 	{
-		final MethodSymbol s = procedures.put(symbol.getId(), symbol);
+		return addProcedure(names.intern(symbol.getId()), symbol);
+	}
+	
+	/**
+	 * Add the specified Symbol to the current procedure table under an interned name.
+	 * @param name the symbol's name in {@link #getNames()}
+	 * @param symbol the symbol to add to the table
+	 * @return the symbol that was added
+	 * @throws DijkstraSymbolException if the symbol already exists in this table
+	 */
+	public MethodSymbol addProcedure(int name, MethodSymbol symbol) 
+	{
+		if (procedures == null) {
+			procedures = new IntMap<MethodSymbol>();
+		}
+		final MethodSymbol s = procedures.put(name, symbol);
 		if (s != null) {	// Symbol was already in the table
 			throw new DijkstraSymbolException(
 					"Attempting to add a duplicate symbol to a symbol table" + s.getId());
@@ -81,7 +124,22 @@ public class SymbolTable
 	 */
 	public MethodSymbol addFunction(MethodSymbol symbol) 
 	{
-		final MethodSymbol s = functions.put(symbol.getId(), symbol);
+		return addFunction(names.intern(symbol.getId()), symbol);
+	}
+	
+	/**
+	 * Add the specified Symbol to the current function table under an interned name.
+	 * @param name the symbol's name in {@link #getNames()}
+	 * @param symbol the symbol to add to the table
+	 * @return the symbol that was added
+	 * @throws DijkstraSymbolException if the symbol already exists in this table
+	 */
+	public MethodSymbol addFunction(int name, MethodSymbol symbol) 
+	{
+		if (functions == null) {
+			functions = new IntMap<MethodSymbol>();
+		}
+		final MethodSymbol s = functions.put(name, symbol);
 		if (s != null) {	// Symbol was already in the table
 			throw new DijkstraSymbolException(
 					"Attempting to add a duplicate symbol to a symbol table" + s.getId());
@@ -97,7 +155,22 @@ public class SymbolTable
 	 */
 	public Symbol addArray(Symbol symbol) 
 	{
-		final Symbol s = arrays.put(symbol.getId(), symbol);
+		return addArray(names.intern(symbol.getId()), symbol);
+	}
+	
+	/**
+	 * Add the specified Symbol to the current array table under an interned name.
+	 * @param name the symbol's name in {@link #getNames()}
+	 * @param symbol the symbol to add to the table
+	 * @return the symbol that was added
+	 * @throws DijkstraSymbolException if the symbol already exists in this table
+	 */
+	public Symbol addArray(int name, Symbol symbol) 
+	{
+		if (arrays == null) {
+			arrays = new IntMap<Symbol>();
+		}
+		final Symbol s = arrays.put(name, symbol);
 		if (s != null) {	// Symbol was already in the table
 			throw new DijkstraSymbolException(
 					"Attempting to add a duplicate symbol to a symbol table" + s.getId());
@@ -121,12 +194,24 @@ public class SymbolTable
 	 */
 	public Symbol getSymbol(String id)
 	{
-		Symbol symbol = symbols.get(id);
-		SymbolTable st = this;
-		if (symbol == null && st.parent != null) {
-			symbol = st.parent.getSymbol(id);
+		final int name = names.find(id);
+		return name < 0 ? null : getSymbol(name);
+	}
+	
+	/**
+	 * Get the symbol with the specified interned name in the current scope.
+	 * @param name the desired symbol's name in {@link #getNames()}
+	 * @return the symbol referenced or null if it does not exist.
+	 */
+	public Symbol getSymbol(int name)
+	{
+		for (SymbolTable st = this; st != null; st = st.parent) {
+			final Symbol symbol = st.symbols == null ? null : st.symbols.get(name);
+			if (symbol != null) {
+				return symbol;
+			}
 		}
-		return symbol;
+		return null;
 	}
 	
 	/**
@@ -136,12 +221,24 @@ public class SymbolTable
 	 */
 	public MethodSymbol getFunction(String id)
 	{
-		MethodSymbol symbol = functions.get(id);
-		SymbolTable st = this;
-		if (symbol == null && st.parent != null) {
-			symbol = st.parent.getFunction(id);
+		final int name = names.find(id);
+		return name < 0 ? null : getFunction(name);
+	}
+	
+	/**
+	 * Get the function symbol with the specified interned name in the current scope.
+	 * @param name the desired symbol's name in {@link #getNames()}
+	 * @return the symbol referenced or null if it does not exist.
+	 */
+	public MethodSymbol getFunction(int name)
+	{
+		for (SymbolTable st = this; st != null; st = st.parent) {
+			final MethodSymbol symbol = st.functions == null ? null : st.functions.get(name);
+			if (symbol != null) {
+				return symbol;
+			}
 		}
-		return symbol;
+		return null;
 	}
 	
 	/**
@@ -151,12 +248,24 @@ public class SymbolTable
 	 */
 	public MethodSymbol getProcedure(String id)
 	{
-		MethodSymbol symbol = procedures.get(id);
-		SymbolTable st = this;
-		if (symbol == null && st.parent != null) {
-			symbol = st.parent.getProcedure(id);
+		final int name = names.find(id);
+		return name < 0 ? null : getProcedure(name);
+	}
+	
+	/**
+	 * Get the procedure symbol with the specified interned name in the current scope.
+	 * @param name the desired symbol's name in {@link #getNames()}
+	 * @return the symbol referenced or null if it does not exist.
+	 */
+	public MethodSymbol getProcedure(int name)
+	{
+		for (SymbolTable st = this; st != null; st = st.parent) {
+			final MethodSymbol symbol = st.procedures == null ? null : st.procedures.get(name);
+			if (symbol != null) {
+				return symbol;
+			}
 		}
-		return symbol;
+		return null;
 	}
 	
 	/**
@@ -166,17 +275,50 @@ public class SymbolTable
 	 */
 	public Symbol getArray(String id)
 	{
-		Symbol symbol = arrays.get(id);
-		SymbolTable st = this;
-		if (symbol == null && st.parent != null) {
-			symbol = st.parent.getArray(id);
+		final int name = names.find(id);
+		return name < 0 ? null : getArray(name);
+	}
+	
+	/**
+	 * Get the array symbol with the specified interned name in the current scope.
+	 * @param name the desired symbol's name in {@link #getNames()}
+	 * @return the symbol referenced or null if it does not exist.
+	 */
+	public Symbol getArray(int name)
+	{
+		for (SymbolTable st = this; st != null; st = st.parent) {
+			final Symbol symbol = st.arrays == null ? null : st.arrays.get(name);
+			if (symbol != null) {
+				return symbol;
+			}
 		}
-		return symbol;
+		return null;
 	}
 	
 	public int getNumberOfSymbols()
 	{
-		return symbols.size();
+		return size(symbols);
+	}
+	
+	/**
+	 * @return the number of variables, arrays, functions and procedures in this table
+	 */
+	public int getNumberOfEntries()
+	{
+		return size(symbols) + size(arrays) + size(functions) + size(procedures);
+	}
+	
+	private static int size(IntMap<?> entries)
+	{
+		return entries == null ? 0 : entries.size();
+	}
+	
+	/**
+	 * @return the identifier names this table is keyed on
+	 */
+	public Names getNames()
+	{
+		return names;
 	}
 	
 	/**
@@ -195,10 +337,8 @@ public class SymbolTable
 		StringBuilder builder = new StringBuilder();
 		builder.append("Table\n");
 		builder.append("============\n");
-		Iterator it = symbols.entrySet().iterator();
-		while(it.hasNext()) {
-			Map.Entry pair = (Map.Entry)it.next();
-			builder.append(pair.getKey() + " : " + pair.getValue() + "\n");
+		for (int name : symbols == null ? new int[0] : symbols.keys()) {
+			builder.append(names.textOf(name) + " : " + symbols.get(name) + "\n");
 		}
 		return builder.toString();
 	}
@@ -15,27 +15,73 @@ import java.util.*;
 import dijkstra.utility.DijkstraType;
 
 /**
- * Singleton manager class that manages all symbol tables in the compilation.
+ * Manager class that manages all symbol tables in the compilation. Each
+ * compilation has its own instance in its {@link dijkstra.utility.CompilationContext}.
+ * <p>
+ * Lookups do not search the chain of scopes. For each kind of symbol the manager
+ * keeps, indexed by interned name, a stack of the declarations of that name in the
+ * open scopes, innermost on top, so a lookup takes constant time however deep the
+ * nesting. Every declaration is logged, and leaving a scope pops what it declared.
+ * Tables of scopes that have been left are dropped unless {@link #setKeepScopes(boolean)}
+ * asks for them to be kept for {@link #getSymbolTable(int)}.
  * 
  * @version Feb 7, 2015
  */
 public class SymbolTableManager
 {
-	private static SymbolTableManager instance =  null;
+	private static final int SYMBOL = 0, FUNCTION = 1, PROCEDURE = 2, ARRAY = 3;
+
 	private SymbolTable currentSymbolTable;
 	private final ArrayList<SymbolTable> tables;
 	public final Map<Integer, Symbol> symbols;
 	private boolean inMethod = false;
+	private boolean keepScopes = false;
+	private final Bindings[] bindings = new Bindings[4];
+	// (name << 2 | kind) of every declaration in the open scopes, and where each nested scope's ones begin
+	private int[] declarations = new int[64];
+	private int declared = 0;
+	private int[] scopeStarts = new int[16];
+	private int depth = 0;
+	private int scopes;
+	private int entries;
 
 	/**
 	 * Constructor that sets up the initial (global) symbol table.
 	 */
-	private SymbolTableManager()
+	public SymbolTableManager()
+	{
+		this(new SymbolTable(null));
+	}
+	
+	/**
+	 * Constructor for the scopes of a method body that is analysed on its own,
+	 * starting from the table of its parameters.
+	 * @param root the outermost table, which is current
+	 */
+	SymbolTableManager(SymbolTable root)
 	{
 		tables = new ArrayList<SymbolTable>();
-		currentSymbolTable = new SymbolTable(null);
-		tables.add(currentSymbolTable);
 		symbols = new HashMap<Integer, Symbol>();
+		for (int kind = 0; kind < bindings.length; kind++) {
+			bindings[kind] = new Bindings();
+		}
+		start(root);
+	}
+	
+	private void start(SymbolTable root)
+	{
+		currentSymbolTable = root;
+		tables.clear();
+		if (keepScopes) {
+			tables.add(root);
+		}
+		for (Bindings b : bindings) {
+			b.clear();
+		}
+		declared = 0;
+		depth = 0;
+		scopes = 1;
+		entries = 0;
 	}
 	
 	/**
@@ -44,28 +90,49 @@ public class SymbolTableManager
 	public void enterScope()
 	{
 		currentSymbolTable = new SymbolTable(currentSymbolTable);
-		tables.add(currentSymbolTable);
+		if (keepScopes) {
+			tables.add(currentSymbolTable);
+		}
+		scopes++;
+		if (depth == scopeStarts.length) {
+			scopeStarts = Arrays.copyOf(scopeStarts, 2 * depth);
+		}
+		scopeStarts[depth++] = declared;
 	}
 	
 	/**
-	 * Exit a scope.
+	 * Exit a scope, which hides everything it declared again.
 	 */
 	public void exitScope()
 	{
 		currentSymbolTable = currentSymbolTable.getParent();
+		final int start = depth == 0 ? 0 : scopeStarts[--depth];
+		while (declared > start) {
+			final int declaration = declarations[--declared];
+			bindings[declaration & 3].pop(declaration >>> 2);
+		}
 	}
-
+	
 	/**
-	 * @return the instance
+	 * Make a declaration just added to the current table the visible one.
+	 * @return the symbol
 	 */
-	public static SymbolTableManager getInstance()
+	private <S extends Symbol> S bind(int kind, int name, S symbol)
 	{
-		if (instance == null) {
-			instance = new SymbolTableManager();
+		bindings[kind].push(name, symbol);
+		if (declared == declarations.length) {
+			declarations = Arrays.copyOf(declarations, 2 * declared);
 		}
-		return instance;
+		declarations[declared++] = name << 2 | kind;
+		entries++;
+		return symbol;
 	}
 	
+	private <S extends Symbol> S bind(int kind, S symbol)
+	{
+		return bind(kind, getNames().find(symbol.getId()), symbol);
+	}
+
 	// The next methods are pass through methods to the current symbol table, but the
 	// symbol table manager takes care of creating the appropriate symbols.
 	
@@ -78,7 +145,7 @@ public class SymbolTableManager
 	 */
 	public Symbol add(Symbol symbol)
 	{
-		return currentSymbolTable.add(symbol);
+		return bind(SYMBOL, currentSymbolTable.add(symbol));
 	}
 	
 	/**
@@ -92,7 +159,19 @@ public class SymbolTableManager
 	public Symbol add(String id)
 	{
 		Symbol symbol = currentSymbolTable.add(new Symbol(id, inMethod));
-		return symbol;
+		return bind(SYMBOL, symbol);
+	}
+	
+	/**
+	 * Add a symbol to the current symbol table with a type of UNDEFINED.
+	 * @param name the symbol's interned name
+	 * @return the added symbol
+	 * @throws DijkstraSymbolException if the symbol already exists in this table
+	 * @see #getNames()
+	 */
+	public Symbol add(int name)
+	{
+		return bind(SYMBOL, name, currentSymbolTable.add(name, new Symbol(getNames().textOf(name), inMethod)));
 	}
 	
 	/**
@@ -107,7 +186,21 @@ public class SymbolTableManager
 	public MethodSymbol addFunction(String id, DijkstraType symbolType)
 	{
 		MethodSymbol symbol = currentSymbolTable.addFunction(new MethodSymbol(id, symbolType, inMethod));
-		return symbol;
+		return bind(FUNCTION, symbol);
+	}
+	
+	/**
+	 * Add a symbol to the current symbol function table with the type specified.
+	 * @param name the symbol's interned name
+	 * @param symbolType the symbol's type
+	 * @return the added symbol
+	 * @throws DijkstraSymbolException if the symbol already exists in this table
+	 * @see #getNames()
+	 */
+	public MethodSymbol addFunction(int name, DijkstraType symbolType)
+	{
+		return bind(FUNCTION, name,
+				currentSymbolTable.addFunction(name, new MethodSymbol(getNames().textOf(name), symbolType, inMethod)));
 	}
 	
 	/**
@@ -122,7 +215,21 @@ public class SymbolTableManager
 	public MethodSymbol addProcedure(String id, DijkstraType symbolType)
 	{
 		MethodSymbol symbol = currentSymbolTable.addProcedure(new MethodSymbol(id, symbolType, inMethod));
-		return symbol;
+		return bind(PROCEDURE, symbol);
+	}
+	
+	/**
+	 * Add a symbol to the current symbol function table with the type specified.
+	 * @param name the symbol's interned name
+	 * @param symbolType the symbol's type
+	 * @return the added symbol
+	 * @throws DijkstraSymbolException if the symbol already exists in this table
+	 * @see #getNames()
+	 */
+	public MethodSymbol addProcedure(int name, DijkstraType symbolType)
+	{
+		return bind(PROCEDURE, name,
+				currentSymbolTable.addProcedure(name, new MethodSymbol(getNames().textOf(name), symbolType, inMethod)));
 	}
 
 	/**
@@ -137,7 +244,20 @@ public class SymbolTableManager
 	public Symbol addArray(String id, DijkstraType symbolType)
 	{
 		Symbol symbol = currentSymbolTable.addArray(new Symbol(id, symbolType, inMethod));
-		return symbol;
+		return bind(ARRAY, symbol);
+	}
+	
+	/**
+	 * Add a symbol to the current symbol array table with the type specified.
+	 * @param name the symbol's interned name
+	 * @param symbolType the symbol's type
+	 * @return the added symbol
+	 * @throws DijkstraSymbolException if the symbol already exists in this table
+	 * @see #getNames()
+	 */
+	public Symbol addArray(int name, DijkstraType symbolType)
+	{
+		return bind(ARRAY, name, currentSymbolTable.addArray(name, new Symbol(getNames().textOf(name), symbolType, inMethod)));
 	}
 	
 	/**
@@ -152,51 +272,112 @@ public class SymbolTableManager
 	public Symbol add(String id, DijkstraType symbolType)
 	{
 		Symbol symbol = currentSymbolTable.add(new Symbol(id, symbolType, inMethod));
-		return symbol;
+		return bind(SYMBOL, symbol);
+	}
+	
+	/**
+	 * Add a symbol to the current symbol table with the type specified.
+	 * @param name the symbol's interned name
+	 * @param symbolType the symbol's type
+	 * @return the added symbol
+	 * @throws DijkstraSymbolException if the symbol already exists in this table
+	 * @see #getNames()
+	 */
+	public Symbol add(int name, DijkstraType symbolType)
+	{
+		return bind(SYMBOL, name, currentSymbolTable.add(name, new Symbol(getNames().textOf(name), symbolType, inMethod)));
 	}
 	
 	/**
 	 * Get the symbol with the specified key in the current scope.
 	 * @param id the desired symbol's ID
 	 * @return the symbol referenced or null if it does not exist.
-	 * @see SymbolTable#getSymbol(String)
 	 */
 	public Symbol getSymbol(String id)
 	{
-		return currentSymbolTable.getSymbol(id);
+		final int name = getNames().find(id);
+		return name < 0 ? null : getSymbol(name);
+	}
+	
+	/**
+	 * Get the symbol with the specified interned name in the current scope.
+	 * @param name the desired symbol's interned name
+	 * @return the symbol referenced or null if it does not exist.
+	 */
+	public Symbol getSymbol(int name)
+	{
+		return bindings[SYMBOL].get(name);
 	}
 	
 	/**
 	 * Get the function symbol with the specified key in the current scope.
 	 * @param id the desired symbol's ID
 	 * @return the symbol referenced or null if it does not exist.
-	 * @see SymbolTable#getSymbol(String)
 	 */
 	public MethodSymbol getFunction(String id)
 	{
-		return currentSymbolTable.getFunction(id);
+		final int name = getNames().find(id);
+		return name < 0 ? null : getFunction(name);
+	}
+	
+	/**
+	 * Get the function symbol with the specified interned name in the current scope.
+	 * @param name the desired symbol's interned name
+	 * @return the symbol referenced or null if it does not exist.
+	 */
+	public MethodSymbol getFunction(int name)
+	{
+		return (MethodSymbol) bindings[FUNCTION].get(name);
 	}
 	
 	/**
 	 * Get the function symbol with the specified key in the current scope.
 	 * @param id the desired symbol's ID
 	 * @return the symbol referenced or null if it does not exist.
-	 * @see SymbolTable#getSymbol(String)
 	 */
 	public MethodSymbol getProcedure(String id)
 	{
-		return currentSymbolTable.getProcedure(id);
+		final int name = getNames().find(id);
+		return name < 0 ? null : getProcedure(name);
+	}
+	
+	/**
+	 * Get the procedure symbol with the specified interned name in the current scope.
+	 * @param name the desired symbol's interned name
+	 * @return the symbol referenced or null if it does not exist.
+	 */
+	public MethodSymbol getProcedure(int name)
+	{
+		return (MethodSymbol) bindings[PROCEDURE].get(name);
 	}
 	
 	/**
 	 * Get the array symbol with the specified key in the current scope.
 	 * @param id the desired symbol's ID
 	 * @return the symbol referenced or null if it does not exist.
-	 * @see SymbolTable#getSymbol(String)
 	 */
 	public Symbol getArray(String id)
 	{
-		return currentSymbolTable.getArray(id);
+		final int name = getNames().find(id);
+		return name < 0 ? null : getArray(name);
+	}
+	
+	/**
+	 * Get the array symbol with the specified interned name in the current scope.
+	 * @param name the desired symbol's interned name
+	 * @return the symbol referenced or null if it does not exist.
+	 */
+	public Symbol getArray(int name)
+	{
+		return bindings[ARRAY].get(name);
+	}
+
+	/**
+	 * @return the interned identifier names of this compilation
+	 */
+	public Names getNames()
+	{
+		return currentSymbolTable.getNames();
 	}
 
 	/**
@@ -208,15 +389,84 @@ public class SymbolTableManager
 	}
 	
 	// Next methods added for testing and debugging
+	/**
+	 * Keep the table of every scope entered from now on, not only the open ones.
+	 * Set before the symbol pass; {@link #reset()} does not change it.
+	 * @param keep whether to keep the tables of scopes that have been left
+	 */
+	public void setKeepScopes(boolean keep)
+	{
+		keepScopes = keep;
+		if (keep && tables.isEmpty() && scopes == 1) {
+			tables.add(currentSymbolTable);
+		}
+	}
+	
+	/**
+	 * @return whether the tables of scopes that have been left are kept
+	 */
+	public boolean getKeepScopes()
+	{
+		return keepScopes;
+	}
+	
 	/**
 	 * @param i
 	 * @return the symbol table at index i in the symbol table array
+	 * @throws IllegalStateException if scopes are not being kept
+	 * @see #setKeepScopes(boolean)
 	 */
 	public SymbolTable getSymbolTable(int i)
 	{
+		if (!keepScopes) {
+			throw new IllegalStateException("Scopes are only kept after setKeepScopes(true)");
+		}
 		return tables.get(i);
 	}
 	
+	/**
+	 * @return the number of scopes entered, including the global scope
+	 */
+	public int getNumberOfScopes()
+	{
+		return scopes;
+	}
+	
+	/**
+	 * Add the scopes another manager entered, as if they had been entered here
+	 * when this manager had entered index scopes.
+	 * @param index where the other manager's scopes go in {@link #getSymbolTable(int)}
+	 * @param other the manager of a method body analysed on its own
+	 */
+	void insertScopes(int index, SymbolTableManager other)
+	{
+		if (keepScopes) {
+			tables.addAll(index, other.tables);
+		}
+		scopes += other.scopes;
+		entries += other.entries;
+	}
+	
+	/**
+	 * Count the scopes and symbols of a method body analysed on its own, whose
+	 * tables are not kept, as if they had been entered here.
+	 * @param scopes the number of scopes the body entered
+	 * @param symbols the number of symbols it declared
+	 */
+	void addScopes(int scopes, int symbols)
+	{
+		this.scopes += scopes;
+		entries += symbols;
+	}
+	
+	/**
+	 * @return the number of symbols declared in all scopes
+	 */
+	public int getNumberOfSymbols()
+	{
+		return entries;
+	}
+	
 	/**
 	 * Sets the
 	 * @param inMethod
@@ -227,9 +477,61 @@ public class SymbolTableManager
 	
 	public void reset()
 	{
-		tables.clear();
 		symbols.clear();
-		currentSymbolTable = new SymbolTable(null);
-		tables.add(currentSymbolTable);
+		start(new SymbolTable(null));
+	}
+	
+	/**
+	 * Forget every scope and symbol but keep the names, to analyse the same
+	 * tree again.
+	 */
+	void restart()
+	{
+		symbols.clear();
+		start(new SymbolTable(null, getNames()));
+	}
+	
+	/**
+	 * The visible declaration of each name of one kind, with the ones it shadows
+	 * below it.
+	 */
+	private static class Bindings
+	{
+		private Binding[] top = new Binding[64];
+		
+		Symbol get(int name)
+		{
+			return name < top.length && top[name] != null ? top[name].symbol : null;
+		}
+		
+		void push(int name, Symbol symbol)
+		{
+			if (name >= top.length) {
+				top = Arrays.copyOf(top, Math.max(2 * top.length, name + 1));
+			}
+			top[name] = new Binding(symbol, top[name]);
+		}
+		
+		void pop(int name)
+		{
+			top[name] = top[name].below;
+		}
+		
+		void clear()
+		{
+			Arrays.fill(top, null);
+		}
+	}
+	
+	private static class Binding
+	{
+		final Symbol symbol;
+		final Binding below;
+		
+		Binding(Symbol symbol, Binding below)
+		{
+			this.symbol = symbol;
+			this.below = below;
+		}
 	}
 }
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.utility;
+
+import dijkstra.codegen.JVMInfo;
+import dijkstra.symbol.SymbolTableManager;
+
+/**
+ * Holds all of the mutable state for compiling one program. Every pass gets the
+ * context from the pass before it, so separate compilations share nothing and can
+ * run on different threads at the same time.
+ */
+public class CompilationContext
+{
+	private final SymbolTableManager symbolTableManager;
+	private final JVMInfo jvmInfo;
+	private final CompilerStats stats;
+	private final NodeIds nodeIds;
+	
+	/**
+	 * Create a context with an empty global scope that records no statistics.
+	 */
+	public CompilationContext()
+	{
+		this(new CompilerStats(false));
+	}
+	
+	/**
+	 * Create a context with an empty global scope.
+	 * @param stats where phase timings and counters are recorded
+	 */
+	public CompilationContext(CompilerStats stats)
+	{
+		symbolTableManager = new SymbolTableManager();
+		jvmInfo = new JVMInfo();
+		this.stats = stats;
+		nodeIds = new NodeIds();
+	}
+
+	/**
+	 * @return the symbol tables for this compilation
+	 */
+	public SymbolTableManager getSymbolTableManager()
+	{
+		return symbolTableManager;
+	}
+
+	/**
+	 * @return the local and field allocator for the generated class
+	 */
+	public JVMInfo getJVMInfo()
+	{
+		return jvmInfo;
+	}
+
+	/**
+	 * @return the numbering of annotated parse tree nodes for this compilation
+	 */
+	public NodeIds getNodeIds()
+	{
+		return nodeIds;
+	}
+
+	/**
+	 * @return the statistics for this compilation
+	 */
+	public CompilerStats getStats()
+	{
+		return stats;
+	}
+}
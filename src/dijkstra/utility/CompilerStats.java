@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.utility;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+
+import dijkstra.jfr.CompilePhaseEvent;
+
+/**
+ * Wall time, allocated bytes and counters for the phases of one or more
+ * compilations. Phases and counters with the same name are summed, so one
+ * instance can collect a whole batch. A disabled instance ignores every call,
+ * which is what compilations get unless statistics were asked for. Allocated
+ * bytes are summed over every live thread, so they include what the
+ * ForkJoinPool workers allocate for a phase, and the thread bean that counts
+ * them is only created when an enabled instance times its first phase. Enabled
+ * or not, phases are reported to Java Flight Recorder as
+ * {@link CompilePhaseEvent}s while a recording has that event enabled. Flight
+ * Recorder is not started for this: the event class and its type are only
+ * looked up once it is running. Not thread safe.
+ */
+public class CompilerStats
+{
+	
+	private final boolean enabled;
+	private final Map<String, long[]> phases = new LinkedHashMap<String, long[]>();	// nanos, bytes, runs
+	private final Map<String, Long> counters = new LinkedHashMap<String, Long>();
+	private String phase = null;
+	private long phaseStart;
+	private long[] phaseThreads;
+	private long[] phaseBytes;
+	private String program = null;
+	private CompilePhaseEvent event = null;
+	
+	/**
+	 * @param enabled false to create an instance that records nothing
+	 */
+	public CompilerStats(boolean enabled)
+	{
+		this.enabled = enabled;
+	}
+	
+	/**
+	 * @return true if this instance records anything
+	 */
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+	
+	/**
+	 * Start timing a phase, ending the current one if there is one.
+	 * @param name the phase name
+	 */
+	public void beginPhase(String name)
+	{
+		endPhase();
+		if (FlightRecorder.isInitialized() && PhaseEvents.TYPE.isEnabled()) {
+			event = new CompilePhaseEvent();
+			event.phase = name;
+			event.begin();
+		}
+		if (!enabled) {
+			return;
+		}
+		phase = name;
+		final com.sun.management.ThreadMXBean threads = Allocation.THREADS;
+		if (threads != null) {
+			phaseThreads = threads.getAllThreadIds();
+			phaseBytes = threads.getThreadAllocatedBytes(phaseThreads);
+		}
+		phaseStart = System.nanoTime();
+	}
+	
+	/**
+	 * Name the program being compiled, for the Flight Recorder events. The driver
+	 * names it after its file before reading it, and compiling renames it after
+	 * the program's declared name once that has been parsed.
+	 * @param program the program name
+	 */
+	public void setProgram(String program)
+	{
+		this.program = program;
+	}
+	
+	/**
+	 * Stop timing the current phase.
+	 */
+	public void endPhase()
+	{
+		if (event != null) {
+			event.end();
+			if (event.shouldCommit()) {
+				event.program = program;
+				event.commit();
+			}
+			event = null;
+		}
+		if (!enabled || phase == null) {
+			return;
+		}
+		final long nanos = System.nanoTime() - phaseStart;
+		final long bytes = allocatedSince(phaseThreads, phaseBytes);
+		long[] totals = phases.get(phase);
+		if (totals == null) {
+			totals = new long[3];
+			phases.put(phase, totals);
+		}
+		totals[0] += nanos;
+		totals[1] += bytes;
+		totals[2]++;
+		phase = null;
+	}
+	
+	/**
+	 * Add to a counter.
+	 * @param name the counter name
+	 * @param amount the amount to add
+	 */
+	public void count(String name, long amount)
+	{
+		if (!enabled) {
+			return;
+		}
+		final Long total = counters.get(name);
+		counters.put(name, total == null ? amount : total + amount);
+	}
+	
+	/**
+	 * @param name the counter name
+	 * @return the counter's value, 0 if nothing was counted
+	 */
+	public long getCount(String name)
+	{
+		final Long total = counters.get(name);
+		return total == null ? 0 : total;
+	}
+	
+	/**
+	 * @return the phase names, in the order they first ran
+	 */
+	public Set<String> getPhases()
+	{
+		return Collections.unmodifiableSet(phases.keySet());
+	}
+	
+	/**
+	 * @param name the phase name
+	 * @return the total wall time of the phase in nanoseconds
+	 */
+	public long getNanos(String name)
+	{
+		final long[] totals = phases.get(name);
+		return totals == null ? 0 : totals[0];
+	}
+	
+	/**
+	 * Print the statistics as an aligned table.
+	 * @param out the stream to print to
+	 */
+	public void print(PrintStream out)
+	{
+		long nanos = 0;
+		long bytes = 0;
+		out.printf("%-16s %6s %12s %14s%n", "phase", "runs", "time (ms)", "allocated (KB)");
+		for (Map.Entry<String, long[]> entry : phases.entrySet()) {
+			final long[] totals = entry.getValue();
+			out.printf("%-16s %6d %12.3f %14s%n", entry.getKey(), totals[2], totals[0] / 1e6, 
+					kilobytes(totals[1]));
+			nanos += totals[0];
+			bytes += totals[1];
+		}
+		out.printf("%-16s %6s %12.3f %14s%n", "total", "", nanos / 1e6, kilobytes(bytes));
+		for (Map.Entry<String, Long> entry : counters.entrySet()) {
+			out.printf("%-23s %12d%n", entry.getKey(), entry.getValue());
+		}
+	}
+	
+	/**
+	 * Print the statistics as one JSON object. Allocated bytes are -1 when the
+	 * JVM cannot measure them.
+	 * @param out the stream to print to
+	 */
+	public void printJson(PrintStream out)
+	{
+		final StringBuilder json = new StringBuilder("{\"phases\":[");
+		String separator = "";
+		for (Map.Entry<String, long[]> entry : phases.entrySet()) {
+			final long[] totals = entry.getValue();
+			json.append(separator).append("{\"name\":\"").append(entry.getKey())
+				.append("\",\"runs\":").append(totals[2])
+				.append(",\"nanos\":").append(totals[0])
+				.append(",\"allocatedBytes\":").append(Allocation.THREADS == null ? -1 : totals[1])
+				.append('}');
+			separator = ",";
+		}
+		json.append("],\"counters\":{");
+		separator = "";
+		for (Map.Entry<String, Long> entry : counters.entrySet()) {
+			json.append(separator).append('"').append(entry.getKey()).append("\":")
+				.append(entry.getValue());
+			separator = ",";
+		}
+		out.println(json.append("}}"));
+	}
+	
+	private static String kilobytes(long bytes)
+	{
+		return Allocation.THREADS == null ? "n/a" : String.valueOf(bytes / 1024);
+	}
+	
+	/**
+	 * @param ids the threads that were alive when the phase began
+	 * @param bytes what each of them had allocated then
+	 * @return the bytes allocated since by the live threads, counting threads
+	 * 		started in between from zero; threads that ended in between are lost
+	 */
+	private static long allocatedSince(long[] ids, long[] bytes)
+	{
+		final com.sun.management.ThreadMXBean threads = Allocation.THREADS;
+		if (threads == null) {
+			return 0;
+		}
+		final Map<Long, Long> before = new HashMap<Long, Long>();
+		for (int i = 0; i < ids.length; i++) {
+			before.put(ids[i], bytes[i]);
+		}
+		final long[] now = threads.getAllThreadIds();
+		final long[] after = threads.getThreadAllocatedBytes(now);
+		long total = 0;
+		for (int i = 0; i < now.length; i++) {
+			if (after[i] >= 0) {
+				final Long start = before.get(now[i]);
+				total += after[i] - (start == null || start < 0 ? 0 : start);
+			}
+		}
+		return total;
+	}
+	
+	/**
+	 * @return the HotSpot thread bean with allocation counting on, or null if this JVM
+	 * 		does not have one
+	 */
+	private static com.sun.management.ThreadMXBean allocationBean()
+	{
+		try {
+			final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (bean instanceof com.sun.management.ThreadMXBean) {
+				final com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) bean;
+				if (hotspot.isThreadAllocatedMemorySupported()) {
+					hotspot.setThreadAllocatedMemoryEnabled(true);
+					return hotspot;
+				}
+			}
+		} catch (LinkageError | UnsupportedOperationException e) {
+			// not HotSpot
+		}
+		return null;
+	}
+	
+	/**
+	 * Holds the thread bean, which is created on first use.
+	 */
+	private static class Allocation
+	{
+		static final com.sun.management.ThreadMXBean THREADS = allocationBean();
+	}
+	
+	/**
+	 * Holds the phase event type, which is looked up on first use.
+	 */
+	private static class PhaseEvents
+	{
+		static final EventType TYPE = EventType.getEventType(CompilePhaseEvent.class);
+	}
+}
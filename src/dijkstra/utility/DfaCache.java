@@ -0,0 +1,485 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.utility;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.*;
+import org.antlr.v4.runtime.dfa.*;
+
+import dijkstra.lexparse.*;
+
+/**
+ * Saves the prediction DFAs that the Dijkstra parser builds while it runs, and
+ * loads them into the static DFA cache of a new process, so its first compile
+ * does not have to rebuild them from the ATN. The compiler scans with
+ * {@link DijkstraScanner} rather than the generated lexer, so the lexer's DFAs
+ * are neither saved nor loaded.
+ * <p>
+ * The file starts with a hash of the serialized parser ATN and the ANTLR runtime
+ * version; a file written for another grammar or runtime is ignored. States
+ * that need full context prediction are left out, because their conflicting
+ * alternatives cannot be restored through the runtime's public API. Edges to
+ * them are dropped as well, so the simulator simply computes those states again
+ * the first time it needs them.
+ * <p>
+ * Loads and saves are serialized, so compilers running in one process, such as
+ * the requests of a {@link dijkstra.DijkstraServer}, may share a cache file.
+ */
+public class DfaCache
+{
+	private static final int MAGIC = 0x444a4b44;	// "DJKD"
+	private static final int FORMAT = 2;
+	private static final int NO_INDEX = -1;
+	private static final int ERROR_INDEX = -2;
+
+	private DfaCache()
+	{
+		// static methods only
+	}
+
+	/**
+	 * Load the DFA states saved in a file into the parser cache. Nothing is loaded
+	 * if the file does not exist, was written for a different grammar, or if the
+	 * cache already holds states, as it does in a warm process.
+	 * @param file the cache file
+	 * @return true if states were loaded
+	 * @throws IOException if the file could not be read or is corrupt
+	 */
+	public static synchronized boolean load(Path file) throws IOException
+	{
+		if (!Files.exists(file) || size(parserDfa()) > 0) {
+			return false;
+		}
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+				return false;
+			}
+			final byte[] hash = new byte[length(in.readInt())];
+			in.readFully(hash);
+			if (!Arrays.equals(hash, grammarHash())) {
+				return false;
+			}
+			install(readAll(in, parserDfa()), parserDfa());
+			return true;
+		} catch (IndexOutOfBoundsException | ClassCastException e) {
+			throw new IOException("Corrupt DFA cache " + file, e);
+		}
+	}
+
+	/**
+	 * Write the current parser DFA states to a file. The file is replaced
+	 * atomically, so a concurrent {@link #load(Path)} sees the old or the new one.
+	 * @param file the cache file
+	 * @throws IOException if the file could not be written
+	 */
+	public static synchronized void save(Path file) throws IOException
+	{
+		final Path directory = file.toAbsolutePath().getParent();
+		Files.createDirectories(directory);
+		final Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT);
+				final byte[] hash = grammarHash();
+				out.writeInt(hash.length);
+				out.write(hash);
+				writeAll(out, parserDfa());
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * @return the number of DFA states the parser has built in this process,
+	 * 		loaded ones included
+	 */
+	public static int getNumberOfStates()
+	{
+		return size(parserDfa());
+	}
+
+	/**
+	 * @return SHA-256 of the serialized parser ATN and the runtime version
+	 */
+	static byte[] grammarHash()
+	{
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(DijkstraParser._serializedATN.getBytes(StandardCharsets.UTF_8));
+			digest.update(RuntimeMetaData.VERSION.getBytes(StandardCharsets.UTF_8));
+			return digest.digest();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static DFA[] parserDfa()
+	{
+		return DijkstraFactory.makeParser(new ANTLRInputStream("")).getInterpreter().decisionToDFA;
+	}
+
+	private static int size(DFA[] dfas)
+	{
+		int size = 0;
+		for (DFA dfa : dfas) {
+			size += dfa.states.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Copy loaded states into the shared caches, unless a compile in another
+	 * thread has started filling them in the meantime.
+	 */
+	private static void install(DFA[] loaded, DFA[] target)
+	{
+		for (int d = 0; d < target.length; d++) {
+			final DFA dfa = target[d];
+			synchronized (dfa.states) {
+				if (!dfa.states.isEmpty()) {
+					continue;
+				}
+				dfa.states.putAll(loaded[d].states);
+				if (dfa.isPrecedenceDfa()) {
+					final DFAState[] starts = loaded[d].s0.edges;
+					for (int p = 0; p < starts.length; p++) {
+						if (starts[p] != null) {
+							dfa.setPrecedenceStartState(p, starts[p]);
+						}
+					}
+				} else {
+					dfa.s0 = loaded[d].s0;
+				}
+			}
+		}
+	}
+
+	/* Writing */
+
+	private static void writeAll(DataOutputStream out, DFA[] dfas) throws IOException
+	{
+		out.writeInt(dfas.length);
+		for (DFA dfa : dfas) {
+			synchronized (dfa.states) {
+				write(out, dfa);
+			}
+		}
+	}
+
+	private static void write(DataOutputStream out, DFA dfa) throws IOException
+	{
+		final Map<DFAState, Integer> index = new IdentityHashMap<DFAState, Integer>();
+		final List<DFAState> states = new ArrayList<DFAState>();
+		for (DFAState state : dfa.states.keySet()) {
+			if (!state.requiresFullContext) {
+				index.put(state, states.size());
+				states.add(state);
+			}
+		}
+		final Map<PredictionContext, Integer> contexts = new IdentityHashMap<PredictionContext, Integer>();
+		final ByteArrayOutputStream contextBytes = new ByteArrayOutputStream();
+		final DataOutputStream contextOut = new DataOutputStream(contextBytes);
+		for (DFAState state : states) {
+			for (ATNConfig config : state.configs) {
+				writeContext(contextOut, config.context, contexts);
+			}
+		}
+		out.writeInt(contexts.size());
+		contextBytes.writeTo(out);
+
+		out.writeInt(states.size());
+		for (DFAState state : states) {
+			out.writeBoolean(state.configs.fullCtx);
+			out.writeInt(state.configs.uniqueAlt);
+			out.writeInt(state.configs.size());
+			for (ATNConfig config : state.configs) {
+				out.writeInt(config.state.stateNumber);
+				out.writeInt(config.alt);
+				out.writeInt(contexts.get(config.context));
+				out.writeInt(config.reachesIntoOuterContext);
+				writeSemanticContext(out, config.semanticContext);
+			}
+			out.writeBoolean(state.isAcceptState);
+			out.writeInt(state.prediction);
+			if (state.predicates == null) {
+				out.writeInt(NO_INDEX);
+			} else {
+				out.writeInt(state.predicates.length);
+				for (DFAState.PredPrediction prediction : state.predicates) {
+					writeSemanticContext(out, prediction.pred);
+					out.writeInt(prediction.alt);
+				}
+			}
+		}
+		for (DFAState state : states) {
+			writeEdges(out, state.edges, index);
+		}
+		if (dfa.isPrecedenceDfa()) {
+			writeEdges(out, dfa.s0.edges, index);
+		} else {
+			out.writeInt(targetIndex(dfa.s0, index));
+		}
+	}
+
+	/**
+	 * Contexts are written parents first, so each refers only to earlier ones.
+	 */
+	private static void writeContext(DataOutputStream out, PredictionContext context,
+			Map<PredictionContext, Integer> written) throws IOException
+	{
+		if (context == null || written.containsKey(context)) {
+			return;
+		}
+		for (int i = 0; i < context.size(); i++) {
+			writeContext(out, context.getParent(i), written);
+		}
+		if (context == PredictionContext.EMPTY) {
+			out.writeByte(0);
+		} else {
+			out.writeByte(context instanceof ArrayPredictionContext ? 2 : 1);
+			if (context instanceof ArrayPredictionContext) {
+				out.writeInt(context.size());
+			}
+			for (int i = 0; i < context.size(); i++) {
+				final PredictionContext parent = context.getParent(i);
+				out.writeInt(parent == null ? NO_INDEX : written.get(parent));
+				out.writeInt(context.getReturnState(i));
+			}
+		}
+		written.put(context, written.size());
+	}
+
+	private static void writeSemanticContext(DataOutputStream out, SemanticContext context)
+			throws IOException
+	{
+		if (context == SemanticContext.NONE) {
+			out.writeByte(0);
+		} else if (context instanceof SemanticContext.Predicate) {
+			final SemanticContext.Predicate predicate = (SemanticContext.Predicate) context;
+			out.writeByte(1);
+			out.writeInt(predicate.ruleIndex);
+			out.writeInt(predicate.predIndex);
+			out.writeBoolean(predicate.isCtxDependent);
+		} else if (context instanceof SemanticContext.PrecedencePredicate) {
+			out.writeByte(2);
+			out.writeInt(((SemanticContext.PrecedencePredicate) context).precedence);
+		} else {
+			final boolean and = context instanceof SemanticContext.AND;
+			final SemanticContext[] operands = and
+					? ((SemanticContext.AND) context).opnds : ((SemanticContext.OR) context).opnds;
+			out.writeByte(and ? 3 : 4);
+			out.writeInt(operands.length);
+			for (SemanticContext operand : operands) {
+				writeSemanticContext(out, operand);
+			}
+		}
+	}
+
+	private static void writeEdges(DataOutputStream out, DFAState[] edges, Map<DFAState, Integer> index)
+			throws IOException
+	{
+		if (edges == null) {
+			out.writeInt(NO_INDEX);
+			return;
+		}
+		int count = 0;
+		for (DFAState target : edges) {
+			if (targetIndex(target, index) != NO_INDEX) {
+				count++;
+			}
+		}
+		out.writeInt(edges.length);
+		out.writeInt(count);
+		for (int i = 0; count > 0; i++) {
+			final int target = targetIndex(edges[i], index);
+			if (target != NO_INDEX) {
+				out.writeInt(i);
+				out.writeInt(target);
+				count--;
+			}
+		}
+	}
+
+	private static int targetIndex(DFAState target, Map<DFAState, Integer> index)
+	{
+		if (target == ATNSimulator.ERROR) {
+			return ERROR_INDEX;
+		}
+		final Integer i = target == null ? null : index.get(target);
+		return i == null ? NO_INDEX : i;
+	}
+
+	/* Reading */
+
+	/**
+	 * @param length a length read from the file
+	 * @return the length
+	 * @throws IOException if it is negative, which only a corrupt file has
+	 */
+	private static int length(int length) throws IOException
+	{
+		if (length < 0) {
+			throw new IOException("Negative length in DFA cache");
+		}
+		return length;
+	}
+
+	private static DFA[] readAll(DataInputStream in, DFA[] shared) throws IOException
+	{
+		if (in.readInt() != shared.length) {
+			throw new IOException("DFA cache does not match the grammar");
+		}
+		final DFA[] dfas = new DFA[shared.length];
+		for (int d = 0; d < dfas.length; d++) {
+			dfas[d] = new DFA(shared[d].atnStartState, d);
+			read(in, dfas[d]);
+		}
+		return dfas;
+	}
+
+	private static void read(DataInputStream in, DFA dfa) throws IOException
+	{
+		final ATN atn = dfa.atnStartState.atn;
+		final List<PredictionContext> contexts = new ArrayList<PredictionContext>();
+		for (int n = in.readInt(); n > 0; n--) {
+			contexts.add(readContext(in, contexts));
+		}
+
+		final DFAState[] states = new DFAState[length(in.readInt())];
+		for (int s = 0; s < states.length; s++) {
+			final boolean fullCtx = in.readBoolean();
+			final ATNConfigSet configs = new ATNConfigSet(fullCtx);
+			final int uniqueAlt = in.readInt();
+			for (int n = in.readInt(); n > 0; n--) {
+				final ATNState atnState = atn.states.get(in.readInt());
+				final int alt = in.readInt();
+				final PredictionContext context = contexts.get(in.readInt());
+				final int outerContext = in.readInt();
+				final SemanticContext semanticContext = readSemanticContext(in);
+				final ATNConfig config = new ATNConfig(atnState, alt, context, semanticContext);
+				config.reachesIntoOuterContext = outerContext;
+				configs.add(config);
+			}
+			configs.uniqueAlt = uniqueAlt;
+			configs.setReadonly(true);
+			final DFAState state = new DFAState(configs);
+			state.stateNumber = s;
+			state.isAcceptState = in.readBoolean();
+			state.prediction = in.readInt();
+			final int predicates = in.readInt();
+			if (predicates != NO_INDEX) {
+				state.predicates = new DFAState.PredPrediction[length(predicates)];
+				for (int p = 0; p < predicates; p++) {
+					final SemanticContext predicate = readSemanticContext(in);
+					state.predicates[p] = new DFAState.PredPrediction(predicate, in.readInt());
+				}
+			}
+			states[s] = state;
+			dfa.states.put(state, state);
+		}
+		for (DFAState state : states) {
+			state.edges = readEdges(in, states);
+		}
+		if (dfa.isPrecedenceDfa()) {
+			final DFAState[] starts = readEdges(in, states);
+			if (starts != null) {
+				for (int p = 0; p < starts.length; p++) {
+					if (starts[p] != null) {
+						dfa.setPrecedenceStartState(p, starts[p]);
+					}
+				}
+			}
+		} else {
+			final int s0 = in.readInt();
+			dfa.s0 = s0 == NO_INDEX ? null : s0 == ERROR_INDEX ? ATNSimulator.ERROR : states[s0];
+		}
+	}
+
+	private static PredictionContext readContext(DataInputStream in, List<PredictionContext> contexts)
+			throws IOException
+	{
+		switch (in.readByte()) {
+		case 0:
+			return PredictionContext.EMPTY;
+		case 1:
+			final PredictionContext parent = parent(in.readInt(), contexts);
+			return SingletonPredictionContext.create(parent, in.readInt());
+		case 2:
+			final int size = length(in.readInt());
+			final PredictionContext[] parents = new PredictionContext[size];
+			final int[] returnStates = new int[size];
+			for (int i = 0; i < size; i++) {
+				parents[i] = parent(in.readInt(), contexts);
+				returnStates[i] = in.readInt();
+			}
+			return new ArrayPredictionContext(parents, returnStates);
+		default:
+			throw new IOException("Corrupt prediction context in DFA cache");
+		}
+	}
+
+	private static PredictionContext parent(int index, List<PredictionContext> contexts)
+	{
+		return index == NO_INDEX ? null : contexts.get(index);
+	}
+
+	private static SemanticContext readSemanticContext(DataInputStream in) throws IOException
+	{
+		final byte kind = in.readByte();
+		switch (kind) {
+		case 0:
+			return SemanticContext.NONE;
+		case 1:
+			return new SemanticContext.Predicate(in.readInt(), in.readInt(), in.readBoolean());
+		case 2:
+			return new SemanticContext.PrecedencePredicate(in.readInt());
+		case 3:
+		case 4:
+			SemanticContext result = null;
+			for (int n = in.readInt(); n > 0; n--) {
+				final SemanticContext operand = readSemanticContext(in);
+				result = result == null ? operand
+						: kind == 3 ? SemanticContext.and(result, operand) : SemanticContext.or(result, operand);
+			}
+			return result;
+		default:
+			throw new IOException("Corrupt semantic context in DFA cache");
+		}
+	}
+
+	private static DFAState[] readEdges(DataInputStream in, DFAState[] states) throws IOException
+	{
+		final int length = in.readInt();
+		if (length == NO_INDEX) {
+			return null;
+		}
+		// The simulators index edge arrays without checking their length
+		final DFAState[] edges = new DFAState[length(length)];
+		for (int count = in.readInt(); count > 0; count--) {
+			final int symbol = in.readInt();
+			final int target = in.readInt();
+			edges[symbol] = target == ERROR_INDEX ? ATNSimulator.ERROR : states[target];
+		}
+		return edges;
+	}
+}
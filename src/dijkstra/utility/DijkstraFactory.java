@@ -11,7 +11,14 @@
 
 package dijkstra.utility;
 
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.function.*;
+
 import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.*;
 import dijkstra.lexparse.*;
 
 /**
@@ -51,21 +58,203 @@ public class DijkstraFactory
 	 * @return the Dijkstra parser
 	 */
 	static public DijkstraParser makeParser(ANTLRInputStream inputText) {
-		final DijkstraLexer lexer = new DijkstraLexer(inputText);
-		final TokenStream tokens = new CommonTokenStream(lexer); 
+		return makeParser(new DijkstraLexer(inputText));
+	}
+	
+	/**
+	 * Create a hand-written Dijkstra scanner over the program text. It gives the same
+	 * tokens as a {@link DijkstraLexer} and can be used wherever one is.
+	 * @param text the program text, which is not copied
+	 * @param length the number of characters of text at the start of the array
+	 * @return the scanner
+	 */
+	static public DijkstraScanner makeScanner(char[] text, int length) {
+		return new DijkstraScanner(text, length);
+	}
+	
+	/**
+	 * Create a Djikstra parser reading from the specified token source
+	 * @param tokenSource a DijkstraLexer or DijkstraScanner
+	 * @return the Dijkstra parser
+	 */
+	static public DijkstraParser makeParser(TokenSource tokenSource) {
+		final TokenStream tokens = new CommonTokenStream(tokenSource); 
 		final DijkstraParser parser = new DijkstraParser(tokens);
 		
 		parser.removeErrorListeners();
-		parser.addErrorListener(
-				new BaseErrorListener() {
-					@Override
-					public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
-					int line, int charPositionInLine, String msg,
-					RecognitionException e)
-					{
-						throw new DijkstraParserException("Syntax error at line " + line + "[" + charPositionInLine + "] " + msg);
-					}
-				});
+		parser.addErrorListener(PARSER_ERROR_LISTENER);
 		return parser;
 	}
+	
+	/**
+	 * Parse the input starting at the given rule with the two-stage strategy. The
+	 * first attempt uses SLL prediction, which is much cheaper, and bails out on
+	 * the first error. Only if it fails is the input parsed again with full LL
+	 * prediction, which either succeeds or reports the syntax error exactly as a
+	 * parser from {@link #makeParser(ANTLRInputStream)} would. Child lists are
+	 * trimmed as each rule finishes, since the tree lives through code generation.
+	 * @param inputText the ANTLRInputStream that contains the program text
+	 * @param rule the start rule, e.g. DijkstraParser::dijkstraText
+	 * @return the parse tree
+	 * @throws DijkstraParserException on a syntax error
+	 */
+	static public <T extends ParserRuleContext> T parse(ANTLRInputStream inputText, 
+			Function<DijkstraParser, T> rule) {
+		return parse(new DijkstraLexer(inputText), rule);
+	}
+	
+	/**
+	 * Parse the tokens from a token source starting at the given rule with the
+	 * two-stage strategy.
+	 * @param tokenSource a DijkstraLexer or DijkstraScanner
+	 * @param rule the start rule, e.g. DijkstraParser::dijkstraText
+	 * @return the parse tree
+	 * @throws DijkstraParserException on a syntax error
+	 * @see #parse(ANTLRInputStream, Function)
+	 */
+	static public <T extends ParserRuleContext> T parse(TokenSource tokenSource, 
+			Function<DijkstraParser, T> rule) {
+		final DijkstraParser parser = makeParser(tokenSource);
+		parser.addParseListener(TRIM_CHILDREN);
+		parser.removeErrorListeners();
+		parser.setErrorHandler(new BailErrorStrategy());
+		parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+		try {
+			return rule.apply(parser);
+		} catch (ParseCancellationException e) {
+			// SLL failed: either a real syntax error or input that needs full context
+		}
+		parser.reset();		// rewinds the token stream, so the input is not lexed again
+		parser.setErrorHandler(new DefaultErrorStrategy());
+		parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+		parser.addErrorListener(PARSER_ERROR_LISTENER);
+		return rule.apply(parser);
+	}
+	
+	/**
+	 * Parse a whole Dijkstra program with the two-stage strategy.
+	 * @param inputText the ANTLRInputStream that contains the program text
+	 * @return the parse tree
+	 * @throws DijkstraParserException on a syntax error
+	 * @see #parse(ANTLRInputStream, Function)
+	 */
+	static public DijkstraParser.DijkstraTextContext parse(ANTLRInputStream inputText) {
+		return parse(inputText, DijkstraParser::dijkstraText);
+	}
+	
+	/**
+	 * Parse a whole Dijkstra program from a token source with the two-stage strategy.
+	 * @param tokenSource a DijkstraLexer or DijkstraScanner
+	 * @return the parse tree
+	 * @throws DijkstraParserException on a syntax error
+	 * @see #parse(ANTLRInputStream, Function)
+	 */
+	static public DijkstraParser.DijkstraTextContext parse(TokenSource tokenSource) {
+		return parse(tokenSource, DijkstraParser::dijkstraText);
+	}
+	
+	/**
+	 * A start rule for a run of top-level declarations and statements, as found in
+	 * a program after its header, for use with {@link #parse(TokenSource, Function)}.
+	 * The items have no parent until they are added to a ProgramContext.
+	 * @param parser the parser
+	 * @return a context holding the items, in order, as its children
+	 */
+	static public ParserRuleContext parseItems(DijkstraParser parser) {
+		final ParserRuleContext items = new ParserRuleContext();
+		while (parser.getInputStream().LA(1) != Token.EOF) {
+			switch (parser.getInputStream().LA(1)) {
+				case DijkstraParser.FLOAT:
+				case DijkstraParser.INT:
+				case DijkstraParser.BOOLEAN:
+				case DijkstraParser.PROC:
+				case DijkstraParser.FUN:
+					items.addChild(parser.declaration());
+					break;
+				default:
+					items.addChild(parser.statement());
+					break;
+			}
+		}
+		return items;
+	}
+	
+	/**
+	 * Parse a whole Dijkstra program without holding all of it in memory. Characters
+	 * and tokens are read through unbuffered streams, so only the lookahead the
+	 * parser needs at any moment is kept, and each top-level declaration or statement
+	 * is handed to the consumer as soon as it has been parsed and then dropped from
+	 * the program node. Memory use is bounded by the largest single declaration or
+	 * statement, not by the size of the source.
+	 * <p>
+	 * Tokens carry copies of their text because the characters behind them are
+	 * released. There is no SLL first stage: an unbuffered stream cannot be rewound.
+	 * @param source the program text
+	 * @param topLevel receives each DeclarationContext and StatementContext of the
+	 * 		program, in source order
+	 * @return the program node, holding only the PROGRAM keyword and the program ID
+	 * @throws DijkstraParserException on a syntax error
+	 */
+	static public DijkstraParser.ProgramContext parseStreaming(Reader source, 
+			Consumer<ParserRuleContext> topLevel) {
+		final DijkstraLexer lexer = new DijkstraLexer(new UnbufferedCharStream(source));
+		lexer.setTokenFactory(new CommonTokenFactory(true));
+		final DijkstraParser parser = new DijkstraParser(new UnbufferedTokenStream<CommonToken>(lexer));
+		parser.removeErrorListeners();
+		parser.addErrorListener(PARSER_ERROR_LISTENER);
+		parser.addParseListener(TRIM_CHILDREN);
+		parser.addParseListener(new ParseTreeListener() {
+			@Override
+			public void exitEveryRule(ParserRuleContext ctx)
+			{
+				if (ctx.getParent() instanceof DijkstraParser.ProgramContext) {
+					ctx.getParent().removeLastChild();
+					topLevel.accept(ctx);
+				}
+			}
+			
+			@Override
+			public void enterEveryRule(ParserRuleContext ctx) { }
+			
+			@Override
+			public void visitTerminal(TerminalNode node) { }
+			
+			@Override
+			public void visitErrorNode(ErrorNode node) { }
+		});
+		return parser.dijkstraText().program();
+	}
+	
+	/**
+	 * Most nodes have one to three children, but ANTLR's child lists start with room
+	 * for ten. On big programs the spare slots are a large share of the tree.
+	 */
+	private static final ParseTreeListener TRIM_CHILDREN = new ParseTreeListener() {
+		@Override
+		public void exitEveryRule(ParserRuleContext ctx)
+		{
+			if (ctx.children instanceof ArrayList) {
+				((ArrayList<ParseTree>) ctx.children).trimToSize();
+			}
+		}
+		
+		@Override
+		public void enterEveryRule(ParserRuleContext ctx) { }
+		
+		@Override
+		public void visitTerminal(TerminalNode node) { }
+		
+		@Override
+		public void visitErrorNode(ErrorNode node) { }
+	};
+	
+	private static final BaseErrorListener PARSER_ERROR_LISTENER = new BaseErrorListener() {
+		@Override
+		public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+		int line, int charPositionInLine, String msg,
+		RecognitionException e)
+		{
+			throw new DijkstraParserException("Syntax error at line " + line + "[" + charPositionInLine + "] " + msg);
+		}
+	};
 }
@@ -0,0 +1,619 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.utility;
+
+import java.util.*;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.misc.*;
+
+import dijkstra.lexparse.*;
+import dijkstra.lexparse.DijkstraParser.*;
+
+/**
+ * Parses successive versions of one program, as an editor or a watch mode sees
+ * them, reparsing only the top-level declarations and statements an edit
+ * touched. The caller says which characters changed. The top-level items from
+ * the one before the edit up to the first unchanged item that starts a line are
+ * scanned and parsed again, and spliced into the previous tree in place of the
+ * old ones. Every other item keeps its parse tree nodes and tokens.
+ * <p>
+ * The items are grouped into segments, each starting at the beginning of a line
+ * that starts an item and running to the next one. A token stores its offset,
+ * line and index relative to its segment, and the segments are kept in a
+ * balanced tree that sums their lengths, lines and tokens. A token's absolute
+ * position is computed when asked for, in time logarithmic in the number of
+ * segments, so an edit never moves the tokens after it; its cost depends on the
+ * size of the edited items, not of the program.
+ * <p>
+ * All tokens read their text from one stream that always holds the latest
+ * version, so the trees returned earlier must not be used after the next call.
+ * When the edit cannot be isolated, e.g. it is in the program header or the
+ * reparsed items do not parse on their own, the whole text is parsed again, so
+ * syntax errors are reported exactly as by {@link DijkstraFactory#parse(TokenSource)}.
+ * {@link dijkstra.symbol.BodyCache} keeps the symbol pass results of the methods
+ * an edit did not touch. Not thread safe.
+ */
+public class IncrementalParser
+{
+	private static final int FIRST_ITEM = 2;	// after PROGRAM and ID
+
+	private final Document document = new Document();
+	private final TokenFactory<RelativeToken> factory = new RelativeTokenFactory();
+	private final Random priorities = new Random(0);
+	private Segment root = null;
+	private int length = 0;
+	private DijkstraTextContext tree = null;
+	private RelativeToken eof = null;
+	private List<ParserRuleContext> reparsed = Collections.emptyList();
+
+	/**
+	 * Parse a whole version of the program, such as the first one.
+	 * @param text the program text; it is not copied, so it must not change
+	 * 		afterwards
+	 * @param length the number of characters of text at the start of the array
+	 * @return the parse tree
+	 * @throws DijkstraParserException on a syntax error
+	 */
+	public DijkstraTextContext parse(char[] text, int length)
+	{
+		tree = null;	// the old tokens may already read the new text
+		root = null;
+		document.replace(text, length);
+		final List<Token> all = scan(0, length, 1);
+		final DijkstraTextContext full = DijkstraFactory.parse(new ListTokenSource(all));
+		final ProgramContext program = full.program();
+		final List<ParserRuleContext> items = items(program, 0, program.getChildCount() - FIRST_ITEM);
+		root = segment(text, all, items, 0, length, 1);
+		this.length = length;
+		tree = full;
+		eof = (RelativeToken) all.get(all.size() - 1);
+		placeEof(eof);
+		reparsed = items;
+		return tree;
+	}
+
+	/**
+	 * Parse the next version of the program, after one edit of the previous one:
+	 * removed characters at offset were replaced by inserted ones.
+	 * @param text the program text; it is not copied, so it must not change
+	 * 		afterwards
+	 * @param length the number of characters of text at the start of the array
+	 * @param offset where the edit starts, in both versions
+	 * @param removed the number of characters of the previous version replaced
+	 * @param inserted the number of characters of this version that replaced them
+	 * @return the parse tree, sharing every unchanged item with the previous tree
+	 * @throws DijkstraParserException on a syntax error
+	 * @throws IllegalArgumentException if the edit does not fit the previous version
+	 */
+	public DijkstraTextContext edit(char[] text, int length, int offset, int removed, int inserted)
+	{
+		if (tree == null) {
+			return parse(text, length);
+		}
+		if (offset < 0 || removed < 0 || inserted < 0 || offset + removed > this.length
+				|| length != this.length - removed + inserted) {
+			throw new IllegalArgumentException("Edit at " + offset + " replacing " + removed + " by "
+					+ inserted + " characters does not fit a text of " + this.length);
+		}
+		try {
+			if (reparse(text, length, offset, removed, inserted)) {
+				return tree;
+			}
+		} catch (DijkstraParserException e) {
+			// the error may only come from where the region was cut; parse it all
+		}
+		return parse(text, length);
+	}
+
+	/**
+	 * @return the top-level declarations and statements parsed by the last call,
+	 * 		in source order; all of them if the whole text was parsed
+	 */
+	public List<ParserRuleContext> getReparsed()
+	{
+		return reparsed;
+	}
+
+	/**
+	 * Reparse only the segments around the edit.
+	 * @return false if the edit could not be isolated
+	 */
+	private boolean reparse(char[] newText, int newLength, int offset, int removed, int inserted)
+	{
+		if (removed == 0 && inserted == 0) {
+			document.replace(newText, newLength);
+			reparsed = Collections.emptyList();
+			return true;
+		}
+		final ProgramContext program = tree.program();
+		final int itemCount = program.getChildCount() - FIRST_ITEM;
+		final int delta = inserted - removed;
+
+		// From the item before the one the edit starts in, in case tokens or items merge
+		final Segment at = atOffset(offset);
+		int editItem = at.before(Segment.ITEMS) - 1;
+		for (int i = 0; i < at.own[Segment.ITEMS]; i++) {
+			if (item(program, editItem + 1).getStart().getStartIndex() > offset) {
+				break;
+			}
+			editItem++;
+		}
+		if (editItem < 0) {
+			return false;		// the edit is in the program header
+		}
+		final Segment first = atItem(Math.max(0, editItem - 1));
+		if (first.before(Segment.COUNT) == 0) {
+			return false;		// the items share their segment with the program header
+		}
+		// Up to the first unchanged segment that still starts a line
+		final int editEnd = offset + removed;
+		Segment next = atOffset(editEnd);
+		if (next.before(Segment.WIDTH) < editEnd || next.before(Segment.COUNT) <= at.before(Segment.COUNT)) {
+			next = next.next();
+		}
+		while (next != null && newText[next.before(Segment.WIDTH) + delta - 1] != '\n') {
+			next = next.next();
+		}
+
+		final int start = first.before(Segment.WIDTH);
+		final int line = first.before(Segment.LINES) + 1;
+		final int end = next == null ? newLength : next.before(Segment.WIDTH) + delta;
+		final int firstItem = first.before(Segment.ITEMS);
+		final int nextItem = next == null ? itemCount : next.before(Segment.ITEMS);
+		document.replace(newText, newLength);
+		final List<Token> region = scan(start, end, line);
+		final ParserRuleContext parsed = DijkstraFactory.parse(new ListTokenSource(region),
+				DijkstraFactory::parseItems);
+		if (itemCount - (nextItem - firstItem) + parsed.getChildCount() == 0) {
+			return false;		// a program needs at least one item
+		}
+
+		// Splice the segments
+		final List<ParserRuleContext> items = new ArrayList<ParserRuleContext>();
+		for (int i = 0; i < parsed.getChildCount(); i++) {
+			final ParserRuleContext item = (ParserRuleContext) parsed.getChild(i);
+			item.parent = program;
+			items.add(item);
+		}
+		final Segment[] before = split(root, first.before(Segment.COUNT));
+		final Segment[] after = split(before[1], next == null ? before[1].total[Segment.COUNT]
+				: next.before(Segment.COUNT) - first.before(Segment.COUNT));
+		root = join(join(before[0], segment(newText, region, items, start, end, line)), after[1]);
+		length = newLength;
+
+		// Splice the items; only references move
+		program.children.subList(FIRST_ITEM + firstItem, FIRST_ITEM + nextItem).clear();
+		program.children.addAll(FIRST_ITEM + firstItem, items);
+		if (next == null) {
+			placeEof((RelativeToken) region.get(region.size() - 1));
+			program.stop = item(program, program.getChildCount() - FIRST_ITEM - 1).getStop();
+		}
+		reparsed = items;
+		return true;
+	}
+
+	/**
+	 * Group the tokens of a region into new segments, making their positions
+	 * relative. A segment starts at the beginning of the line of each item that
+	 * starts a line, unless no token comes before it in the region.
+	 * @param text the new text
+	 * @param region the tokens from start to end, ending with EOF, which is left out
+	 * @param items the items parsed from them
+	 * @param start where the region starts, at the beginning of a line
+	 * @param end where the region ends
+	 * @param line the line number at start
+	 * @return the root of a tree of the new segments, or null if the region is empty
+	 */
+	private Segment segment(char[] text, List<Token> region, List<ParserRuleContext> items,
+			int start, int end, int line)
+	{
+		final int tokens = region.size() - 1;
+		Segment segments = null;
+		int base = start;
+		int baseLine = line;
+		int firstToken = 0;
+		int itemCount = 0;
+		for (int i = 0; i <= items.size(); i++) {
+			final int nextToken = i < items.size() ? items.get(i).getStart().getTokenIndex() : tokens;
+			final int nextBase = i < items.size() ? lineStart(text, items.get(i).getStart().getStartIndex()) : end;
+			if (i < items.size() && (nextToken == firstToken || nextBase < 0)) {
+				itemCount++;
+				continue;
+			}
+			final Segment segment = new Segment(priorities.nextInt());
+			int lines = 0;
+			for (int c = base; c < nextBase; c++) {
+				if (text[c] == '\n') {
+					lines++;
+				}
+			}
+			for (int t = firstToken; t < nextToken; t++) {
+				((RelativeToken) region.get(t)).place(segment, base, baseLine, firstToken);
+			}
+			segment.own[Segment.WIDTH] = nextBase - base;
+			segment.own[Segment.LINES] = lines;
+			segment.own[Segment.TOKENS] = nextToken - firstToken;
+			segment.own[Segment.ITEMS] = itemCount;
+			segment.update();
+			if (segment.own[Segment.WIDTH] > 0) {
+				segments = join(segments, segment);
+			}
+			base = nextBase;
+			baseLine += lines;
+			firstToken = nextToken;
+			itemCount = 1;
+		}
+		return segments;
+	}
+
+	/**
+	 * Put the EOF token of the tree at the end of the last segment, where the
+	 * given EOF token of a region is.
+	 */
+	private void placeEof(RelativeToken regionEof)
+	{
+		final Segment last = root.last();
+		final int line = regionEof.getLine();
+		final int column = regionEof.getCharPositionInLine();
+		final int start = regionEof.getStartIndex();
+		final int stop = regionEof.getStopIndex();
+		eof.segment = null;
+		eof.setLine(line);
+		eof.setCharPositionInLine(column);
+		eof.setStartIndex(start);
+		eof.setStopIndex(stop);
+		eof.setTokenIndex(root.total[Segment.TOKENS]);
+		eof.place(last, last.before(Segment.WIDTH), last.before(Segment.LINES) + 1,
+				last.before(Segment.TOKENS));
+	}
+
+	private Segment atOffset(int offset)
+	{
+		return offset >= length ? root.last() : root.find(Segment.WIDTH, offset);
+	}
+
+	private Segment atItem(int item)
+	{
+		return root.find(Segment.ITEMS, item);
+	}
+
+	private static ParserRuleContext item(ProgramContext program, int i)
+	{
+		return (ParserRuleContext) program.getChild(FIRST_ITEM + i);
+	}
+
+	private static List<ParserRuleContext> items(ProgramContext program, int from, int to)
+	{
+		final List<ParserRuleContext> items = new ArrayList<ParserRuleContext>(to - from);
+		for (int i = from; i < to; i++) {
+			items.add(item(program, i));
+		}
+		return items;
+	}
+
+	/**
+	 * @return the index after the newline before index, if only blanks come between
+	 * 		them, or -1
+	 */
+	private static int lineStart(char[] text, int index)
+	{
+		int i = index - 1;
+		while (i >= 0 && (text[i] == ' ' || text[i] == '\t' || text[i] == '\r')) {
+			i--;
+		}
+		return i < 0 || text[i] == '\n' ? i + 1 : -1;
+	}
+
+	/**
+	 * @return the tokens from start to end of the current text, ending with EOF,
+	 * 		positioned in the whole text and indexed from 0
+	 */
+	private List<Token> scan(int start, int end, int line)
+	{
+		final DijkstraScanner scanner = new DijkstraScanner(document.data(), document, start, end,
+				line, start);
+		scanner.setTokenFactory(factory);
+		final List<Token> scanned = new ArrayList<Token>();
+		Token token;
+		do {
+			token = scanner.nextToken();
+			((WritableToken) token).setTokenIndex(scanned.size());
+			scanned.add(token);
+		} while (token.getType() != Token.EOF);
+		return scanned;
+	}
+
+	/* The tree of segments, a treap ordered by position */
+
+	/**
+	 * @return the segments before the first count ones and the rest
+	 */
+	private static Segment[] split(Segment node, int count)
+	{
+		if (node == null) {
+			return new Segment[2];
+		}
+		final Segment[] parts;
+		if (Segment.total(node.left, Segment.COUNT) < count) {
+			parts = split(node.right, count - Segment.total(node.left, Segment.COUNT) - 1);
+			node.setRight(parts[0]);
+			parts[0] = node;
+		} else {
+			parts = split(node.left, count);
+			node.setLeft(parts[1]);
+			parts[1] = node;
+		}
+		node.update();
+		node.parent = null;
+		return parts;
+	}
+
+	private static Segment join(Segment left, Segment right)
+	{
+		if (left == null || right == null) {
+			return left == null ? right : left;
+		}
+		final Segment top;
+		if (left.priority > right.priority) {
+			left.setRight(join(left.right, right));
+			top = left;
+		} else {
+			right.setLeft(join(left, right.left));
+			top = right;
+		}
+		top.update();
+		top.parent = null;
+		return top;
+	}
+
+	/**
+	 * Consecutive lines holding some top-level items, with the sums of its subtree.
+	 */
+	private static class Segment
+	{
+		static final int WIDTH = 0;		// characters
+		static final int LINES = 1;		// newlines
+		static final int TOKENS = 2;	// EOF not included
+		static final int ITEMS = 3;
+		static final int COUNT = 4;		// segments
+
+		final int priority;
+		final int[] own = new int[5];
+		final int[] total = new int[5];
+		Segment left;
+		Segment right;
+		Segment parent;
+
+		Segment(int priority)
+		{
+			this.priority = priority;
+			own[COUNT] = 1;
+		}
+
+		void setLeft(Segment node)
+		{
+			left = node;
+			if (node != null) {
+				node.parent = this;
+			}
+		}
+
+		void setRight(Segment node)
+		{
+			right = node;
+			if (node != null) {
+				node.parent = this;
+			}
+		}
+
+		void update()
+		{
+			for (int k = 0; k < total.length; k++) {
+				total[k] = total(left, k) + own[k] + total(right, k);
+			}
+		}
+
+		static int total(Segment node, int kind)
+		{
+			return node == null ? 0 : node.total[kind];
+		}
+
+		/**
+		 * @return the sum over the segments before this one
+		 */
+		int before(int kind)
+		{
+			int sum = total(left, kind);
+			for (Segment node = this; node.parent != null; node = node.parent) {
+				if (node == node.parent.right) {
+					sum += total(node.parent.left, kind) + node.parent.own[kind];
+				}
+			}
+			return sum;
+		}
+
+		/**
+		 * @return the segment in this subtree holding the position-th unit of a kind
+		 */
+		Segment find(int kind, int position)
+		{
+			Segment node = this;
+			while (true) {
+				final int left = total(node.left, kind);
+				if (position < left) {
+					node = node.left;
+				} else if (position < left + node.own[kind] || node.right == null) {
+					return node;
+				} else {
+					position -= left + node.own[kind];
+					node = node.right;
+				}
+			}
+		}
+
+		Segment last()
+		{
+			Segment node = this;
+			while (node.right != null) {
+				node = node.right;
+			}
+			return node;
+		}
+
+		Segment next()
+		{
+			if (right != null) {
+				Segment node = right;
+				while (node.left != null) {
+					node = node.left;
+				}
+				return node;
+			}
+			Segment node = this;
+			while (node.parent != null && node == node.parent.right) {
+				node = node.parent;
+			}
+			return node.parent;
+		}
+	}
+
+	/**
+	 * A token positioned relative to its segment once it has one.
+	 */
+	@SuppressWarnings("serial")
+	private static class RelativeToken extends CommonToken
+	{
+		private Segment segment = null;
+
+		RelativeToken(Pair<TokenSource, CharStream> source, int type, int channel, int start, int stop)
+		{
+			super(source, type, channel, start, stop);
+		}
+
+		RelativeToken(int type, String text)
+		{
+			super(type, text);
+		}
+
+		/**
+		 * Make the position relative to a segment.
+		 */
+		void place(Segment segment, int base, int baseLine, int firstToken)
+		{
+			this.segment = segment;
+			start -= base;
+			stop -= base;
+			line -= baseLine;
+			index -= firstToken;
+		}
+
+		@Override
+		public int getStartIndex()
+		{
+			return segment == null ? start : segment.before(Segment.WIDTH) + start;
+		}
+
+		@Override
+		public int getStopIndex()
+		{
+			return segment == null ? stop : segment.before(Segment.WIDTH) + stop;
+		}
+
+		@Override
+		public int getLine()
+		{
+			return segment == null ? line : segment.before(Segment.LINES) + 1 + line;
+		}
+
+		@Override
+		public int getTokenIndex()
+		{
+			return segment == null ? index : segment.before(Segment.TOKENS) + index;
+		}
+
+		@Override
+		public void setTokenIndex(int index)
+		{
+			this.index = segment == null ? index : index - segment.before(Segment.TOKENS);
+		}
+
+		@Override
+		public String getText()
+		{
+			if (text != null) {
+				return text;
+			}
+			final CharStream input = getInputStream();
+			if (input == null) {
+				return null;
+			}
+			final int start = getStartIndex();
+			final int stop = getStopIndex();
+			return start < input.size() && stop < input.size()
+					? input.getText(Interval.of(start, stop)) : "<EOF>";
+		}
+
+		@Override
+		@SuppressWarnings("rawtypes")
+		public String toString(Recognizer recognizer)
+		{
+			final String typeName = recognizer == null ? String.valueOf(type)
+					: recognizer.getVocabulary().getDisplayName(type);
+			final String shown = getText() == null ? "<no text>"
+					: getText().replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t");
+			return "[@" + getTokenIndex() + "," + getStartIndex() + ":" + getStopIndex() + "='" + shown
+					+ "',<" + typeName + ">" + (channel > 0 ? ",channel=" + channel : "") + ","
+					+ getLine() + ":" + getCharPositionInLine() + "]";
+		}
+	}
+
+	private static class RelativeTokenFactory implements TokenFactory<RelativeToken>
+	{
+		@Override
+		public RelativeToken create(Pair<TokenSource, CharStream> source, int type, String text,
+				int channel, int start, int stop, int line, int charPositionInLine)
+		{
+			final RelativeToken token = new RelativeToken(source, type, channel, start, stop);
+			token.setLine(line);
+			token.setCharPositionInLine(charPositionInLine);
+			if (text != null) {
+				token.setText(text);
+			}
+			return token;
+		}
+
+		@Override
+		public RelativeToken create(int type, String text)
+		{
+			return new RelativeToken(type, text);
+		}
+	}
+
+	/**
+	 * The text every token reads from, switched to each new version in turn.
+	 */
+	private static class Document extends ANTLRInputStream
+	{
+		void replace(char[] text, int length)
+		{
+			data = text;
+			n = length;
+			p = 0;
+		}
+
+		char[] data()
+		{
+			return data;
+		}
+	}
+}
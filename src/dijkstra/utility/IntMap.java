@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.utility;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A map from non-negative int keys to values, stored as an open addressing table
+ * in two parallel arrays. Keys are not boxed and there is no entry object per
+ * mapping. Most scopes hold only a few names, so the table starts small.
+ * @param <V> the type of the values
+ */
+public class IntMap<V>
+{
+	private static final int FREE = -1;
+	private static final int INITIAL_CAPACITY = 8;
+
+	private int[] keys = newKeys(INITIAL_CAPACITY);
+	private Object[] values = new Object[INITIAL_CAPACITY];
+	private int size = 0;
+
+	/**
+	 * @param key the key, which must not be negative
+	 * @return the value mapped to the key or null if there is none
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key)
+	{
+		final int mask = keys.length - 1;
+		for (int i = hash(key) & mask; keys[i] != FREE; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return (V) values[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Map the key to the value, replacing any value it had before.
+	 * @param key the key, which must not be negative
+	 * @param value the value
+	 * @return the previous value or null if the key was not mapped
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value)
+	{
+		final int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		while (keys[i] != FREE) {
+			if (keys[i] == key) {
+				final V old = (V) values[i];
+				values[i] = value;
+				return old;
+			}
+			i = (i + 1) & mask;
+		}
+		if (2 * (size + 1) > keys.length) {
+			grow();
+			return put(key, value);
+		}
+		keys[i] = key;
+		values[i] = value;
+		size++;
+		return null;
+	}
+
+	/**
+	 * @return the number of keys mapped
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return the keys in ascending order
+	 */
+	public int[] keys()
+	{
+		final int[] result = new int[size];
+		int n = 0;
+		for (int key : keys) {
+			if (key != FREE) {
+				result[n++] = key;
+			}
+		}
+		Arrays.sort(result);
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void grow()
+	{
+		final int[] oldKeys = keys;
+		final Object[] oldValues = values;
+		keys = newKeys(oldKeys.length * 2);
+		values = new Object[oldKeys.length * 2];
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != FREE) {
+				put(oldKeys[i], (V) oldValues[i]);
+			}
+		}
+	}
+
+	private static int[] newKeys(int capacity)
+	{
+		final int[] keys = new int[capacity];
+		Arrays.fill(keys, FREE);
+		return keys;
+	}
+
+	private static int hash(int key)
+	{
+		// Keys are dense, so consecutive ones would otherwise fill a run of slots.
+		final int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/*
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode()
+	{
+		int result = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != FREE) {
+				result += keys[i] ^ (values[i] == null ? 0 : values[i].hashCode());
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof IntMap)) {
+			return false;
+		}
+		final IntMap<?> other = (IntMap<?>) obj;
+		if (size != other.size) {
+			return false;
+		}
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != FREE) {
+				if (!Objects.equals(values[i], other.get(keys[i]))) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+}
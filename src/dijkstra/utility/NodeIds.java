@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.utility;
+
+import java.lang.invoke.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.antlr.v4.runtime.tree.ParseTree;
+
+/**
+ * Gives the rule nodes of one parse tree dense integer IDs, starting at 0, in the
+ * order they are first annotated. The IDs index the arrays behind every
+ * {@link NodeProperty} of a compilation, so a node is hashed once no matter how
+ * many properties are read for it. Terminals do not need an ID here because their
+ * token index is already dense.
+ * <p>
+ * This is an open addressing identity table: keys and IDs live in two parallel
+ * arrays instead of one entry object per node.
+ * <p>
+ * Between {@link #beginShared(int)} and {@link #endShared()} several threads may
+ * give IDs at once, as long as each node is only looked up by the one thread that
+ * annotates it. Slots are claimed with a compare and set, and the table does not
+ * grow meanwhile.
+ */
+public class NodeIds
+{
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(Object[].class);
+
+	private Object[] keys = new Object[INITIAL_CAPACITY];
+	private int[] ids = new int[INITIAL_CAPACITY];
+	private int size = 0;
+
+	// Passes usually read several properties of the same node in a row.
+	private Object lastNode;
+	private int lastId = -1;
+
+	// Set while the table is shared by several threads.
+	private AtomicInteger next;
+	private int limit;
+
+	/**
+	 * Look up a node without giving it an ID.
+	 * @param node the node
+	 * @return its ID or -1 if it has never been annotated
+	 */
+	public int find(ParseTree node)
+	{
+		if (next != null) {
+			return sharedFind(node);
+		}
+		if (node == lastNode) {
+			return lastId;
+		}
+		final int mask = keys.length - 1;
+		for (int i = hash(node) & mask; keys[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == node) {
+				lastNode = node;
+				lastId = ids[i];
+				return lastId;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Look up a node, giving it the next ID if it does not have one yet.
+	 * @param node the node
+	 * @return its ID
+	 */
+	public int idOf(ParseTree node)
+	{
+		if (next != null) {
+			return sharedIdOf(node);
+		}
+		int id = find(node);
+		if (id < 0) {
+			if (2 * (size + 1) > keys.length) {
+				grow();
+			}
+			id = size++;
+			insert(node, id);
+			lastNode = node;
+			lastId = id;
+		}
+		return id;
+	}
+
+	/**
+	 * Let several threads give IDs until {@link #endShared()}. The table is grown
+	 * first, since it cannot grow while it is shared.
+	 * @param count the most nodes that will be given IDs meanwhile; one more
+	 * 		throws an IllegalStateException
+	 */
+	public void beginShared(int count)
+	{
+		limit = size + count;
+		while (2 * limit > keys.length) {
+			grow();
+		}
+		lastNode = null;
+		next = new AtomicInteger(size);
+	}
+
+	/**
+	 * Go back to one thread. The caller must have waited for every thread that
+	 * gave IDs, for instance by joining its tasks.
+	 */
+	public void endShared()
+	{
+		size = next.get();
+		next = null;
+	}
+
+	/**
+	 * @return the number of nodes that have an ID
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	private int sharedFind(ParseTree node)
+	{
+		final int mask = keys.length - 1;
+		for (int i = hash(node) & mask; ; i = (i + 1) & mask) {
+			final Object key = KEYS.getAcquire(keys, i);
+			if (key == null) {
+				return -1;
+			}
+			if (key == node) {
+				return ids[i];
+			}
+		}
+	}
+
+	private int sharedIdOf(ParseTree node)
+	{
+		final int mask = keys.length - 1;
+		for (int i = hash(node) & mask; ; i = (i + 1) & mask) {
+			final Object key = KEYS.getAcquire(keys, i);
+			if (key == node) {
+				return ids[i];
+			}
+			// Another thread's node can take the slot first; it is never this one
+			if (key == null && KEYS.compareAndSet(keys, i, null, node)) {
+				final int id = next.getAndIncrement();
+				ids[i] = id;
+				if (id >= limit) {
+					throw new IllegalStateException("More nodes than the " + (limit - size) + " reserved");
+				}
+				return id;
+			}
+		}
+	}
+
+	private void insert(Object node, int id)
+	{
+		final int mask = keys.length - 1;
+		int i = hash(node) & mask;
+		while (keys[i] != null) {
+			i = (i + 1) & mask;
+		}
+		keys[i] = node;
+		ids[i] = id;
+	}
+
+	private void grow()
+	{
+		final Object[] oldKeys = keys;
+		final int[] oldIds = ids;
+		keys = new Object[oldKeys.length * 2];
+		ids = new int[oldKeys.length * 2];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != null) {
+				insert(oldKeys[i], oldIds[i]);
+			}
+		}
+	}
+
+	private static int hash(Object node)
+	{
+		// Identity hash codes are not well spread in the low bits.
+		final int h = System.identityHashCode(node) * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.utility;
+
+import java.util.Arrays;
+
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeProperty;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+/**
+ * A parse tree annotation stored in arrays indexed by node ID instead of in a
+ * hash map per property. Rule nodes are numbered by the {@link NodeIds} shared by
+ * every property of a compilation; terminals are indexed by their token index.
+ * It is a drop-in replacement for a {@link ParseTreeProperty}.
+ * @param <V> the type of the annotation
+ */
+public class NodeProperty<V> extends ParseTreeProperty<V>
+{
+	private static final Object[] EMPTY = new Object[0];
+
+	private final NodeIds nodeIds;
+	private Object[] byNode = EMPTY;
+	private Object[] byToken = EMPTY;
+
+	/**
+	 * @param nodeIds the node numbering for the tree being annotated
+	 */
+	public NodeProperty(NodeIds nodeIds)
+	{
+		this.nodeIds = nodeIds;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(ParseTree node)
+	{
+		final int token = tokenIndex(node);
+		if (token >= 0) {
+			return token < byToken.length ? (V) byToken[token] : null;
+		}
+		final int id = nodeIds.find(node);
+		return id >= 0 && id < byNode.length ? (V) byNode[id] : null;
+	}
+
+	@Override
+	public void put(ParseTree node, V value)
+	{
+		final int token = tokenIndex(node);
+		if (token >= 0) {
+			byToken = ensure(byToken, token);
+			byToken[token] = value;
+		} else {
+			final int id = nodeIds.idOf(node);
+			byNode = ensure(byNode, id);
+			byNode[id] = value;
+		}
+	}
+
+	/**
+	 * Annotate a rule node by the ID {@link NodeIds#idOf(ParseTree)} gave it,
+	 * without hashing the node again.
+	 * @param id the ID of the node
+	 * @param value the annotation
+	 */
+	public void put(int id, V value)
+	{
+		byNode = ensure(byNode, id);
+		byNode[id] = value;
+	}
+
+	/**
+	 * Make room so that annotating nodes with smaller IDs and tokens with smaller
+	 * indexes does not grow the arrays. Until then several threads may annotate
+	 * different nodes at once, as long as the {@link NodeIds} are shared too.
+	 * @param nodes one more than the largest node ID that will be annotated
+	 * @param tokens one more than the largest token index that will be annotated
+	 */
+	public void reserve(int nodes, int tokens)
+	{
+		if (nodes > 0) {
+			byNode = ensure(byNode, nodes - 1);
+		}
+		if (tokens > 0) {
+			byToken = ensure(byToken, tokens - 1);
+		}
+	}
+
+	@Override
+	public V removeFrom(ParseTree node)
+	{
+		final V value = get(node);
+		if (value != null) {
+			put(node, null);
+		}
+		return value;
+	}
+
+	/**
+	 * Terminals made up by error recovery have no index and are numbered like rules.
+	 */
+	private static int tokenIndex(ParseTree node)
+	{
+		return node instanceof TerminalNode ? ((TerminalNode) node).getSymbol().getTokenIndex() : -1;
+	}
+
+	private static Object[] ensure(Object[] values, int index)
+	{
+		if (index < values.length) {
+			return values;
+		}
+		return Arrays.copyOf(values, Math.max(index + 1, Math.max(16, values.length * 2)));
+	}
+}
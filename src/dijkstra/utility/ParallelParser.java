@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.utility;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.tree.TerminalNodeImpl;
+
+import dijkstra.lexparse.*;
+import dijkstra.lexparse.DijkstraParser.*;
+import dijkstra.symbol.Names;
+
+/**
+ * Parses large programs on several threads. The whole text is scanned first,
+ * and the tokens are cut into chunks before top-level proc and fun keywords,
+ * which can only start a declaration when they are outside all braces. Each
+ * chunk is parsed on its own on a ForkJoinPool, and the chunks' top-level items
+ * are put together into the same tree a single parse gives. The parser DFA
+ * cache is shared by all threads, as the ANTLR runtime allows.
+ * <p>
+ * Tokens keep their places in the whole text, so lines in messages are right.
+ * If any chunk has a syntax error, the program is parsed again on one thread,
+ * so the error is reported exactly as by {@link DijkstraFactory#parse(TokenSource)}.
+ * Small programs are always parsed on one thread.
+ */
+public class ParallelParser
+{
+	private static final int MIN_CHUNK_TOKENS = 4096;
+
+	private ParallelParser()
+	{
+		// static methods only
+	}
+
+	/**
+	 * Parse a program on the common ForkJoinPool.
+	 * @param text the program text, which is not copied
+	 * @param length the number of characters of text at the start of the array
+	 * @return the parse tree
+	 * @throws DijkstraParserException on a syntax error
+	 */
+	public static DijkstraTextContext parse(char[] text, int length)
+	{
+		return parse(text, length, ForkJoinPool.commonPool(), null);
+	}
+
+	/**
+	 * Parse a program on the common ForkJoinPool, interning its identifiers
+	 * between scanning and parsing.
+	 * @param text the program text, which is not copied
+	 * @param length the number of characters of text at the start of the array
+	 * @param names the compilation's names; see {@link Names#internIds(char[], List)}
+	 * @return the parse tree
+	 * @throws DijkstraParserException on a syntax error
+	 */
+	public static DijkstraTextContext parse(char[] text, int length, Names names)
+	{
+		return parse(text, length, ForkJoinPool.commonPool(), names);
+	}
+
+	/**
+	 * Parse a program on the given pool.
+	 * @param text the program text, which is not copied
+	 * @param length the number of characters of text at the start of the array
+	 * @param pool where the chunks are parsed
+	 * @return the parse tree
+	 * @throws DijkstraParserException on a syntax error
+	 */
+	public static DijkstraTextContext parse(char[] text, int length, ForkJoinPool pool)
+	{
+		return parse(text, length, pool, null);
+	}
+
+	/**
+	 * Parse a program on the given pool, interning its identifiers between
+	 * scanning and parsing if names are given.
+	 * @param text the program text, which is not copied
+	 * @param length the number of characters of text at the start of the array
+	 * @param pool where the chunks are parsed
+	 * @param names the compilation's names to intern the identifiers in, or null
+	 * @return the parse tree
+	 * @throws DijkstraParserException on a syntax error
+	 */
+	public static DijkstraTextContext parse(char[] text, int length, ForkJoinPool pool, Names names)
+	{
+		final List<Token> tokens = scan(text, length);
+		if (names != null) {
+			names.internIds(text, tokens);
+		}
+		final int chunkTokens = Math.max(MIN_CHUNK_TOKENS, tokens.size() / (4 * pool.getParallelism()));
+		return parse(tokens, pool, chunkTokens);
+	}
+
+	/**
+	 * Parse scanned tokens, cutting chunks of at least chunkTokens tokens.
+	 */
+	static DijkstraTextContext parse(List<Token> tokens, ForkJoinPool pool, int chunkTokens)
+	{
+		final List<Integer> cuts = cuts(tokens, chunkTokens);
+		if (cuts.size() < 2) {
+			return DijkstraFactory.parse(new ListTokenSource(tokens));
+		}
+		final List<ForkJoinTask<ParserRuleContext>> chunks = new ArrayList<ForkJoinTask<ParserRuleContext>>();
+		for (int i = 0; i < cuts.size(); i++) {
+			final int from = i == 0 ? 0 : cuts.get(i - 1);
+			final int to = cuts.get(i);
+			final boolean first = i == 0;
+			chunks.add(pool.submit(() -> first
+					? DijkstraFactory.parse(new ListTokenSource(chunk(tokens, from, to)))
+					: DijkstraFactory.parse(new ListTokenSource(chunk(tokens, from, to)),
+							DijkstraFactory::parseItems)));
+		}
+		boolean failed = false;
+		for (ForkJoinTask<ParserRuleContext> chunk : chunks) {
+			chunk.quietlyJoin();		// every chunk must finish before the tokens are reused
+			failed |= chunk.isCompletedAbnormally();
+		}
+		if (failed) {
+			return DijkstraFactory.parse(new ListTokenSource(tokens));
+		}
+
+		// The first chunk was parsed as a program; add the other chunks' items to it
+		final DijkstraTextContext tree = (DijkstraTextContext) chunks.get(0).join();
+		final ProgramContext program = tree.program();
+		for (int i = 1; i < chunks.size(); i++) {
+			final ParserRuleContext items = chunks.get(i).join();
+			for (int j = 0; j < items.getChildCount(); j++) {
+				final ParserRuleContext item = (ParserRuleContext) items.getChild(j);
+				item.parent = program;
+				program.children.add(item);
+			}
+		}
+		((ArrayList<?>) program.children).trimToSize();
+		program.stop = ((ParserRuleContext) program.getChild(program.getChildCount() - 1)).getStop();
+		final Token eof = tokens.get(tokens.size() - 1);
+		((TerminalNodeImpl) tree.getChild(1)).symbol = eof;
+		tree.stop = eof;
+		for (int i = 0; i < tokens.size(); i++) {
+			((WritableToken) tokens.get(i)).setTokenIndex(i);
+		}
+		return tree;
+	}
+
+	/**
+	 * Find where to cut the tokens: before a proc or fun outside braces, once the
+	 * chunk has enough tokens. The last cut is at the EOF token.
+	 */
+	private static List<Integer> cuts(List<Token> tokens, int chunkTokens)
+	{
+		final List<Integer> cuts = new ArrayList<Integer>();
+		final int eof = tokens.size() - 1;
+		int depth = 0;
+		int start = 0;
+		for (int i = 0; i < eof; i++) {
+			switch (tokens.get(i).getType()) {
+				case DijkstraParser.LBRACE:
+					depth++;
+					break;
+				case DijkstraParser.RBRACE:
+					depth--;
+					break;
+				case DijkstraParser.PROC:
+				case DijkstraParser.FUN:
+					if (depth == 0 && i - start >= chunkTokens && eof - i >= chunkTokens / 2) {
+						cuts.add(i);
+						start = i;
+					}
+					break;
+			}
+		}
+		cuts.add(eof);
+		return cuts;
+	}
+
+	/**
+	 * @return the tokens from..to, ending with a new EOF token where the next
+	 * 		chunk starts
+	 */
+	private static List<Token> chunk(List<Token> tokens, int from, int to)
+	{
+		final List<Token> chunk = new ArrayList<Token>(tokens.subList(from, to));
+		final Token next = tokens.get(to);
+		final CommonToken eof = new CommonToken(Token.EOF, "<EOF>");
+		eof.setLine(next.getLine());
+		eof.setCharPositionInLine(next.getCharPositionInLine());
+		eof.setStartIndex(next.getStartIndex());
+		eof.setStopIndex(next.getStartIndex() - 1);
+		chunk.add(eof);
+		return chunk;
+	}
+
+	private static List<Token> scan(char[] text, int length)
+	{
+		final DijkstraScanner scanner = DijkstraFactory.makeScanner(text, length);
+		final List<Token> tokens = new ArrayList<Token>(length / 4);
+		Token token;
+		do {
+			token = scanner.nextToken();
+			tokens.add(token);
+		} while (token.getType() != Token.EOF);
+		return tokens;
+	}
+}
@@ -0,0 +1,362 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.utility;
+
+import java.io.PrintStream;
+import java.util.*;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.*;
+import org.antlr.v4.runtime.misc.IntervalSet;
+
+import dijkstra.lexparse.*;
+
+/**
+ * Parses programs with ANTLR's profiling ATN simulator and reports, for each
+ * prediction decision in the grammar, how much time it took and how hard it
+ * was: lookahead depth, fallbacks from SLL to full LL prediction, ambiguities
+ * and context sensitivities. Totals are summed over every program parsed with
+ * the same instance. Decisions are named by their rule and kind, and their
+ * alternatives by the tokens and rules they start with, as in Dijkstra.g4.
+ * <p>
+ * The parse uses LL prediction, so the numbers show what the fallback stage of
+ * {@link DijkstraFactory#parse(TokenSource)} costs; the simulator still tries
+ * SLL first for every decision and counts each fallback. Not thread safe.
+ */
+public class ParserProfile
+{
+	private static final int MAX_SYMBOLS = 5;
+
+	private final Map<Integer, Decision> decisions = new TreeMap<Integer, Decision>();
+	private int parses = 0;
+
+	/**
+	 * Parse a whole program with profiling turned on and add its decision
+	 * statistics to the totals.
+	 * @param tokenSource a DijkstraLexer or DijkstraScanner
+	 * @return the parse tree
+	 * @throws DijkstraParserException on a syntax error
+	 */
+	public DijkstraParser.DijkstraTextContext parse(TokenSource tokenSource)
+	{
+		final DijkstraParser parser = DijkstraFactory.makeParser(tokenSource);
+		parser.setProfile(true);
+		try {
+			return parser.dijkstraText();
+		} finally {
+			parses++;
+			add(parser);
+		}
+	}
+
+	private void add(DijkstraParser parser)
+	{
+		for (DecisionInfo info : parser.getParseInfo().getDecisionInfo()) {
+			if (info.invocations == 0) {
+				continue;
+			}
+			Decision decision = decisions.get(info.decision);
+			if (decision == null) {
+				decision = new Decision(parser, info.decision);
+				decisions.put(info.decision, decision);
+			}
+			decision.add(info);
+		}
+	}
+
+	/**
+	 * @return the number of programs parsed
+	 */
+	public int getParses()
+	{
+		return parses;
+	}
+
+	/**
+	 * @return every decision that was predicted at least once, the most expensive
+	 * 		first
+	 */
+	public List<Decision> getDecisions()
+	{
+		final List<Decision> ranked = new ArrayList<Decision>(decisions.values());
+		Collections.sort(ranked, new Comparator<Decision>() {
+			@Override
+			public int compare(Decision a, Decision b)
+			{
+				return a.nanos != b.nanos ? Long.compare(b.nanos, a.nanos)
+						: Integer.compare(a.decision, b.decision);
+			}
+		});
+		return ranked;
+	}
+
+	/**
+	 * Print the decisions ranked by prediction time. Decisions that fell back to
+	 * LL prediction, were ambiguous or were context sensitive are followed by
+	 * their alternatives, with the ambiguous ones marked.
+	 * @param out where the report is printed
+	 */
+	public void print(PrintStream out)
+	{
+		final List<Decision> ranked = getDecisions();
+		long total = 0;
+		for (Decision decision : ranked) {
+			total += decision.nanos;
+		}
+		out.printf("Parser decisions by prediction time, %d program%s, %.3f ms in prediction%n",
+				parses, parses == 1 ? "" : "s", total / 1e6);
+		out.printf("%10s %10s %9s %8s %9s %7s %7s %7s %7s  %s%n", "ms", "calls", "SLL avg",
+				"SLL max", "LL falls", "LL max", "ambig", "ctxsens", "errors", "decision");
+		for (Decision decision : ranked) {
+			out.printf("%10.3f %10d %9.2f %8d %9d %7d %7d %7d %7d  %s%n", decision.nanos / 1e6,
+					decision.invocations, decision.getAverageLookahead(), decision.sllMaxLook,
+					decision.llFallbacks, decision.llMaxLook, decision.ambiguities,
+					decision.contextSensitivities, decision.errors, decision);
+			if (decision.llFallbacks + decision.ambiguities + decision.contextSensitivities > 0) {
+				for (int alt = 1; alt <= decision.alternatives.length; alt++) {
+					out.printf("%12s%s %d: %s%n", "", decision.ambiguousAlternatives.get(alt) ? "*" : " ",
+							alt, decision.alternatives[alt - 1]);
+				}
+				if (decision.firstAmbiguityLine > 0) {
+					out.printf("%12s  first ambiguity at line %d%n", "", decision.firstAmbiguityLine);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The totals for one decision of the grammar.
+	 */
+	public static class Decision
+	{
+		private final int decision;
+		private final String rule;
+		private final String kind;
+		private final String[] alternatives;
+		private final BitSet ambiguousAlternatives = new BitSet();
+		private long invocations;
+		private long nanos;
+		private long sllTotalLook;
+		private long sllMaxLook;
+		private long llFallbacks;
+		private long llMaxLook;
+		private int ambiguities;
+		private int contextSensitivities;
+		private int errors;
+		private int firstAmbiguityLine = 0;
+
+		Decision(Parser parser, int decision)
+		{
+			this.decision = decision;
+			final DecisionState state = parser.getATN().decisionToState.get(decision);
+			rule = parser.getRuleNames()[state.ruleIndex];
+			kind = kindOf(state);
+			alternatives = new String[state.getNumberOfTransitions()];
+			for (int i = 0; i < alternatives.length; i++) {
+				alternatives[i] = describe(parser, state.transition(i).target);
+			}
+		}
+
+		void add(DecisionInfo info)
+		{
+			invocations += info.invocations;
+			nanos += info.timeInPrediction;
+			sllTotalLook += info.SLL_TotalLook;
+			sllMaxLook = Math.max(sllMaxLook, info.SLL_MaxLook);
+			llFallbacks += info.LL_Fallback;
+			llMaxLook = Math.max(llMaxLook, info.LL_MaxLook);
+			ambiguities += info.ambiguities.size();
+			contextSensitivities += info.contextSensitivities.size();
+			errors += info.errors.size();
+			for (AmbiguityInfo ambiguity : info.ambiguities) {
+				ambiguousAlternatives.or(ambiguity.ambigAlts);
+				if (firstAmbiguityLine == 0) {
+					firstAmbiguityLine = ambiguity.input.get(ambiguity.startIndex).getLine();
+				}
+			}
+		}
+
+		/**
+		 * @return the decision number in the ATN
+		 */
+		public int getDecision()
+		{
+			return decision;
+		}
+
+		/**
+		 * @return the name of the grammar rule the decision is in
+		 */
+		public String getRule()
+		{
+			return rule;
+		}
+
+		/**
+		 * @return the alternatives, each as the tokens and rules it starts with
+		 */
+		public List<String> getAlternatives()
+		{
+			return Arrays.asList(alternatives);
+		}
+
+		/**
+		 * @return the number of times the decision was predicted
+		 */
+		public long getInvocations()
+		{
+			return invocations;
+		}
+
+		/**
+		 * @return the total prediction time in nanoseconds
+		 */
+		public long getNanos()
+		{
+			return nanos;
+		}
+
+		/**
+		 * @return the mean number of tokens looked at by SLL prediction
+		 */
+		public double getAverageLookahead()
+		{
+			return invocations == 0 ? 0 : (double) sllTotalLook / invocations;
+		}
+
+		/**
+		 * @return the most tokens looked at by one SLL or LL prediction
+		 */
+		public long getMaxLookahead()
+		{
+			return Math.max(sllMaxLook, llMaxLook);
+		}
+
+		/**
+		 * @return the number of predictions that needed full LL context
+		 */
+		public long getLlFallbacks()
+		{
+			return llFallbacks;
+		}
+
+		/**
+		 * @return the number of ambiguities reported by LL prediction
+		 */
+		public int getAmbiguities()
+		{
+			return ambiguities;
+		}
+
+		/**
+		 * @return the number of predictions SLL got wrong and LL got right
+		 */
+		public int getContextSensitivities()
+		{
+			return contextSensitivities;
+		}
+
+		@Override
+		public String toString()
+		{
+			return rule + " #" + decision + " " + kind;
+		}
+
+		private static String kindOf(DecisionState state)
+		{
+			if (state instanceof StarLoopEntryState) {
+				return ((StarLoopEntryState) state).isPrecedenceDecision
+						? "(operator loop)" : "(...)* enter/exit";
+			} else if (state instanceof PlusLoopbackState) {
+				return "(...)+ repeat/exit";
+			} else if (state instanceof StarBlockStartState) {
+				return "(...)* alternatives";
+			} else if (state instanceof PlusBlockStartState) {
+				return "(...)+ alternatives";
+			}
+			return "alternatives";
+		}
+
+		/**
+		 * Describe an alternative by the tokens and rules along its path, stopping at
+		 * the end of the block, a nested decision, or after a few symbols. A nested
+		 * decision at the start is shown by how each of its alternatives starts,
+		 * e.g. [(PLUS | MINUS) expression / ...].
+		 */
+		private static String describe(Parser parser, ATNState state)
+		{
+			return describe(parser, state, MAX_SYMBOLS, true);
+		}
+
+		private static String describe(Parser parser, ATNState state, int maxSymbols, boolean nested)
+		{
+			final StringBuilder text = new StringBuilder();
+			int symbols = 0;
+			while (symbols < maxSymbols && !isEnd(state)) {
+				if (state.getNumberOfTransitions() != 1) {
+					if (nested && symbols == 0) {
+						final StringJoiner alternatives = new StringJoiner(" / ", " [", "]");
+						for (int i = 0; i < state.getNumberOfTransitions(); i++) {
+							alternatives.add(describe(parser, state.transition(i).target, 2, false));
+						}
+						text.append(alternatives);
+					}
+					text.append(" ...");
+					return text.substring(1);
+				}
+				final Transition transition = state.transition(0);
+				if (transition instanceof RuleTransition) {
+					text.append(' ').append(parser.getRuleNames()[((RuleTransition) transition).ruleIndex]);
+					state = ((RuleTransition) transition).followState;
+					symbols++;
+					continue;
+				} else if (transition.isEpsilon()) {
+					// predicates, actions and plain epsilon edges match nothing
+				} else if (transition instanceof AtomTransition) {
+					text.append(' ').append(parser.getVocabulary().getSymbolicName(
+							((AtomTransition) transition).label));
+					symbols++;
+				} else if (transition instanceof WildcardTransition) {
+					text.append(" .");
+					symbols++;
+				} else {
+					text.append(' ').append(setText(parser, transition.label()));
+					symbols++;
+				}
+				state = transition.target;
+			}
+			if (!isEnd(state)) {
+				text.append(" ...");
+			}
+			return text.length() == 0 ? "(empty)" : text.substring(1);
+		}
+
+		/**
+		 * @return the tokens in a set as in the grammar, e.g. (PLUS | MINUS)
+		 */
+		private static String setText(Parser parser, IntervalSet set)
+		{
+			final StringJoiner text = new StringJoiner(" | ", "(", ")");
+			for (int type : set.toList()) {
+				text.add(parser.getVocabulary().getSymbolicName(type));
+			}
+			return text.toString();
+		}
+
+		private static boolean isEnd(ATNState state)
+		{
+			return state instanceof BlockEndState || state instanceof RuleStopState
+					|| state instanceof LoopEndState || state instanceof StarLoopbackState
+					|| state instanceof PlusLoopbackState;
+		}
+	}
+}
@@ -5,34 +5,24 @@ import static org.junit.Assert.assertTrue;
 import org.antlr.v4.runtime.ANTLRInputStream;
 import org.antlr.v4.runtime.ParserRuleContext;
 
-import dijkstra.lexparse.DijkstraParser;
 import dijkstra.semantic.DijkstraTypeCheckVisitor;
-import dijkstra.semantic.DjikstraTypeFinalizerVisitor;
 import dijkstra.semantic.DjikstraTypeResolutionVisitor;
 import dijkstra.symbol.DijkstraSymbolVisitor;
-import dijkstra.symbol.SymbolTableManager;
 
 public class TypeCheckRunner {
 	
 	private static ParserRuleContext doParse(String programText)
 	{
-		DijkstraParser parser = DijkstraFactory.makeParser(new ANTLRInputStream(programText));
-		ParserRuleContext tree = parser.dijkstraText();
-		return tree;
+		return DijkstraFactory.parse(new ANTLRInputStream(programText));
 	}
 	
 	public static void check(String programText) {
-		SymbolTableManager.getInstance().reset();
 		ParserRuleContext tree = doParse(programText);
-		DijkstraSymbolVisitor visitor = new DijkstraSymbolVisitor();
+		DijkstraSymbolVisitor visitor = new DijkstraSymbolVisitor(new CompilationContext());
 		tree.accept(visitor);
 		DjikstraTypeResolutionVisitor resolver = new DjikstraTypeResolutionVisitor(visitor);
-		while(!resolver.isComplete()) {
-			tree.accept(resolver);
-		}
-		DjikstraTypeFinalizerVisitor finalizer = new DjikstraTypeFinalizerVisitor(resolver);
-		tree.accept(finalizer);
-		DijkstraTypeCheckVisitor checker = new DijkstraTypeCheckVisitor(finalizer);
+		resolver.resolve();
+		DijkstraTypeCheckVisitor checker = new DijkstraTypeCheckVisitor(resolver);
 		tree.accept(checker);
 	}
 }
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.jar.*;
+import java.util.zip.ZipEntry;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the directory and JAR class outputs.
+ */
+public class ClassOutputTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void directoryOutputCreatesPackageDirectories() throws Exception
+	{
+		CompiledProgram program = Dijkstra.compile("program Test print 1", "a.b");
+		try (ClassOutput output = new DirectoryClassOutput(folder.getRoot().getPath())) {
+			output.write(program);
+		}
+		File file = new File(folder.getRoot(), "a/b/Test.class");
+		assertTrue(file.isFile());
+		assertEquals(program.getCode().length, file.length());
+	}
+	
+	@Test
+	public void singleProgramJarHasMainClass() throws Exception
+	{
+		File jarFile = folder.newFile("one.jar");
+		CompiledProgram program = Dijkstra.compile("program Test print 1", "djkcode");
+		try (ClassOutput output = new JarClassOutput(jarFile, false)) {
+			output.write(program);
+		}
+		try (JarInputStream in = new JarInputStream(new FileInputStream(jarFile))) {
+			assertEquals("djkcode.Test", 
+					in.getManifest().getMainAttributes().getValue(Attributes.Name.MAIN_CLASS));
+			JarEntry entry = in.getNextJarEntry();
+			assertEquals("djkcode/Test.class", entry.getName());
+			assertNull(in.getNextJarEntry());
+		}
+	}
+	
+	@Test
+	public void storedJarHoldsEveryProgram() throws Exception
+	{
+		File jarFile = folder.newFile("many.jar");
+		try (ClassOutput output = new JarClassOutput(jarFile, true)) {
+			for (int i = 0; i < 3; i++) {
+				output.write(Dijkstra.compile("program P" + i + " print " + i, "djkcode"));
+			}
+		}
+		try (JarFile jar = new JarFile(jarFile)) {
+			assertNull(jar.getManifest());
+			List<String> names = new ArrayList<String>();
+			for (JarEntry entry : Collections.list(jar.entries())) {
+				assertEquals(ZipEntry.STORED, entry.getMethod());
+				names.add(entry.getName());
+			}
+			assertEquals(Arrays.asList("djkcode/P0.class", "djkcode/P1.class", "djkcode/P2.class"), 
+					names);
+		}
+	}
+}
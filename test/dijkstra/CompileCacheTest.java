@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the on-disk compile cache.
+ */
+public class CompileCacheTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private static final String SOURCE = "program cached print 42";
+	
+	@Test
+	public void missThenHit() throws Exception
+	{
+		CompileCache cache = new CompileCache(folder.getRoot().toPath(), 0);
+		assertNull(cache.get(SOURCE, "djkcode"));
+		CompiledProgram program = Dijkstra.compile(SOURCE, "djkcode");
+		cache.put(SOURCE, program);
+		CompiledProgram cached = cache.get(SOURCE, "djkcode");
+		assertEquals("cached", cached.getProgramName());
+		assertEquals("djkcode", cached.getPackageName());
+		assertArrayEquals(program.getCode(), cached.getCode());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+	
+	@Test
+	public void packageIsPartOfTheKey() throws Exception
+	{
+		CompileCache cache = new CompileCache(folder.getRoot().toPath(), 0);
+		cache.put(SOURCE, Dijkstra.compile(SOURCE, "djkcode"));
+		assertNull(cache.get(SOURCE, "other"));
+		assertNull(cache.get(SOURCE + " ", "djkcode"));
+	}
+	
+	@Test
+	public void entriesAreSharedBetweenInstances() throws Exception
+	{
+		new CompileCache(folder.getRoot().toPath(), 0)
+			.put(SOURCE, Dijkstra.compile(SOURCE, "djkcode"));
+		assertNotNull(new CompileCache(folder.getRoot().toPath(), 0).get(SOURCE, "djkcode"));
+		assertEquals(0, folder.getRoot().listFiles((dir, name) -> name.endsWith(".tmp")).length);
+	}
+	
+	@Test
+	public void leastRecentlyUsedEntriesAreEvicted() throws Exception
+	{
+		CompiledProgram first = Dijkstra.compile("program a print 1", "djkcode");
+		long entrySize = first.getCode().length + 64;
+		CompileCache cache = new CompileCache(folder.getRoot().toPath(), entrySize * 2);
+		cache.put("program a print 1", first);
+		folder.getRoot().listFiles()[0].setLastModified(System.currentTimeMillis() - 60000);
+		cache.put("program b print 2", Dijkstra.compile("program b print 2", "djkcode"));
+		for (File entry : folder.getRoot().listFiles()) {
+			if (entry.lastModified() > System.currentTimeMillis() - 60000) {
+				entry.setLastModified(System.currentTimeMillis() - 30000);
+			}
+		}
+		cache.put("program c print 3", Dijkstra.compile("program c print 3", "djkcode"));
+		assertNull(cache.get("program a print 1", "djkcode"));
+		assertNotNull(cache.get("program c print 3", "djkcode"));
+	}
+	
+	@Test
+	public void everyCompilerClassIsFingerprinted() throws Exception
+	{
+		final Set<String> fingerprinted = new HashSet<String>(
+				CompileCache.compilerClasses(CompileCache.codeSource()));
+		try (Stream<Path> sources = Files.walk(Paths.get("src"))) {
+			for (Path source : sources.filter(p -> p.toString().endsWith(".java")).collect(Collectors.toList())) {
+				final String name = Paths.get("src").relativize(source).toString()
+						.replace(File.separatorChar, '/').replaceAll("\\.java$", ".class");
+				assertTrue(name, fingerprinted.contains(name));
+			}
+		}
+		assertTrue(fingerprinted.contains("dijkstra/lexparse/DijkstraParser.class"));
+	}
+	
+	@Test
+	public void fingerprintChangesWithAnyCompilerClass() throws Exception
+	{
+		final Path copy = folder.newFolder("classes").toPath();
+		final Path classes = CompileCache.codeSource();
+		for (String name : CompileCache.compilerClasses(classes)) {
+			Files.createDirectories(copy.resolve(name).getParent());
+			Files.copy(classes.resolve(name), copy.resolve(name));
+		}
+		final byte[] before = CompileCache.fingerprint(copy);
+		final Path solver = copy.resolve("dijkstra/semantic/TypeConstraintSolver.class");
+		Files.write(solver, new byte[] { 0 }, StandardOpenOption.APPEND);
+		assertFalse(Arrays.equals(before, CompileCache.fingerprint(copy)));
+	}
+	
+	@Test(expected=IOException.class)
+	public void classesOnAnotherFileSystemCannotBeFingerprinted() throws Exception
+	{
+		final Path zip = folder.getRoot().toPath().resolve("nested.jar");
+		try (FileSystem jar = FileSystems.newFileSystem(URI.create("jar:" + zip.toUri()), 
+				Collections.singletonMap("create", "true"))) {
+			final Path inner = jar.getPath("compiler.jar");
+			Files.write(inner, new byte[] { 0 });
+			CompileCache.fingerprint(inner);
+		}
+	}
+}
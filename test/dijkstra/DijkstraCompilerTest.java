@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra;
+
+import static org.junit.Assert.*;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import dijkstra.runtime.DijkstraRuntime;
+
+/**
+ * Tests for the in-memory compile and run API.
+ */
+public class DijkstraCompilerTest
+{
+	private final DijkstraCompiler compiler = new DijkstraCompiler();
+	
+	@Test
+	public void runMain()
+	{
+		DijkstraProgram program = compiler.load("program Test print 42");
+		assertEquals("Test", program.getName());
+		program.run();
+		assertEquals("i=42", DijkstraRuntime.getLastMessage());
+	}
+	
+	@Test
+	public void callFunctionThroughHandle() throws Throwable
+	{
+		DijkstraProgram program = compiler.load(
+				"program Test fun sub(int a, int b) : int { return a - b; } print sub(1, 2);");
+		MethodHandle sub = program.getMethod("fsub");
+		assertEquals(7, (int) sub.invokeExact(10, 3));
+	}
+	
+	@Test
+	public void callProcedureThroughHandle() throws Throwable
+	{
+		DijkstraProgram program = compiler.load(
+				"program Test proc show(int a) { print a * 2; } show(1);");
+		assertEquals(1, program.getMethods().size());
+		program.getMethod("pshow").invokeExact(21);
+		assertEquals("i=42", DijkstraRuntime.getLastMessage());
+	}
+	
+	@Test
+	public void programsWithTheSameNameAreIndependent()
+	{
+		DijkstraProgram first = compiler.load("program Test print 1");
+		DijkstraProgram second = compiler.load("program Test print 2");
+		second.run();
+		assertEquals("i=2", DijkstraRuntime.getLastMessage());
+		first.run();
+		assertEquals("i=1", DijkstraRuntime.getLastMessage());
+	}
+	
+	@Test
+	public void classIsUnloadedWhenHandleIsDropped() throws Exception
+	{
+		WeakReference<Class<?>> ref = loadAndDrop();
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+		while (ref.get() != null && System.nanoTime() < deadline) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		assertNull(ref.get());
+	}
+	
+	@Test
+	public void programIsAHiddenClass()
+	{
+		Class<?> programClass = compiler.load("program Test print 1").getProgramClass();
+		assertTrue(programClass.isHidden());
+		assertEquals("djkcode", programClass.getPackageName());
+	}
+	
+	private WeakReference<Class<?>> loadAndDrop()
+	{
+		DijkstraProgram program = compiler.load("program Test print 1");
+		program.run();
+		return new WeakReference<Class<?>>(program.getProgramClass());
+	}
+}
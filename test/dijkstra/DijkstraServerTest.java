@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.*;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the compile server's socket.
+ */
+public class DijkstraServerTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private final ByteArrayOutputStream logged = new ByteArrayOutputStream();
+	private final PrintStream log = new PrintStream(logged, true);
+	
+	@Test
+	public void socketIsOwnerOnlyAndServesRequests() throws Exception
+	{
+		final Path socket = folder.getRoot().toPath().resolve("private/server.sock");
+		final Path source = folder.newFile("p.djk").toPath();
+		Files.write(source, "program p print 1".getBytes("UTF-8"));
+		final DijkstraServer server = new DijkstraServer(log);
+		final Thread thread = new Thread(() -> {
+			try {
+				server.listen(socket);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		thread.start();
+		for (int i = 0; i < 500 && !logged.toString().contains("listening"); i++) {
+			Thread.sleep(10);
+		}
+		assertEquals("rwx------", PosixFilePermissions.toString(
+				Files.getPosixFilePermissions(socket.getParent())));
+		assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(socket)));
+		
+		List<String> response = request(socket, "run\t" + folder.getRoot() + "\tp.djk");
+		assertEquals("end 0", response.get(response.size() - 1).replaceAll(" \\d+$", ""));
+		request(socket, "shutdown");
+		thread.join(5000);
+		assertFalse(thread.isAlive());
+		assertFalse(Files.exists(socket));
+	}
+	
+	@Test
+	public void runThatDoesNotFinishIsStoppedAndLaterRunsProceed() throws Exception
+	{
+		Files.write(folder.newFile("loop.djk").toPath(), 
+				"program loop x <- 0 do true :: x <- x + 1 od".getBytes("UTF-8"));
+		Files.write(folder.newFile("p.djk").toPath(), "program p print 1".getBytes("UTF-8"));
+		final String requests = "run\t" + folder.getRoot() + "\tloop.djk\n"
+				+ "run\t" + folder.getRoot() + "\tp.djk\n";
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new DijkstraServer(log, 200).serve(new ByteArrayInputStream(requests.getBytes("UTF-8")), out);
+		final List<String> response = Arrays.asList(out.toString("UTF-8").split("\n"));
+		assertTrue(response.toString(), response.get(0).startsWith("err Program loop did not finish in 200 ms"));
+		assertEquals("end 1", response.get(1).replaceAll(" \\d+$", ""));
+		assertEquals("out (int)> 1", response.get(2));
+		assertEquals("end 0", response.get(3).replaceAll(" \\d+$", ""));
+	}
+	
+	@Test(expected=IOException.class)
+	public void refusesADirectoryOthersCanEnter() throws Exception
+	{
+		final Path directory = folder.newFolder("shared").toPath();
+		Files.setPosixFilePermissions(directory, PosixFilePermissions.fromString("rwxr-xr-x"));
+		new DijkstraServer(log).listen(directory.resolve("server.sock"));
+	}
+	
+	private static List<String> request(Path socket, String request) throws IOException
+	{
+		try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+			Writer writer = new OutputStreamWriter(Channels.newOutputStream(channel), "UTF-8");
+			writer.write(request + "\n");
+			writer.flush();
+			BufferedReader reader = new BufferedReader(
+					new InputStreamReader(Channels.newInputStream(channel), "UTF-8"));
+			List<String> lines = new ArrayList<String>();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+				if (line.startsWith("end ")) {
+					break;
+				}
+			}
+			return lines;
+		}
+	}
+}
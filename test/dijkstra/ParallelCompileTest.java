@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.Test;
+
+/**
+ * Stress test that compiles the sample programs on many threads at once and
+ * checks that every class file matches the one from a serial compilation.
+ */
+public class ParallelCompileTest
+{
+	private static final int THREADS = 16;
+	private static final int ROUNDS = 8;
+	
+	@Test
+	public void parallelOutputMatchesSerial() throws Exception
+	{
+		final List<String> sources = readSamplePrograms();
+		final List<byte[]> serial = new ArrayList<byte[]>();
+		for (String source : sources) {
+			serial.add(Dijkstra.compile(source, "djkcode").getCode());
+		}
+		
+		final List<Callable<byte[]>> tasks = new ArrayList<Callable<byte[]>>();
+		for (int i = 0; i < THREADS * ROUNDS; i++) {
+			final String source = sources.get(i % sources.size());
+			tasks.add(() -> Dijkstra.compile(source, "djkcode").getCode());
+		}
+		final ForkJoinPool pool = new ForkJoinPool(THREADS);
+		try {
+			final List<Future<byte[]>> results = pool.invokeAll(tasks);
+			for (int i = 0; i < results.size(); i++) {
+				assertArrayEquals(serial.get(i % sources.size()), results.get(i).get());
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	public void repeatedCompilationIsDeterministic() throws Exception
+	{
+		for (String source : readSamplePrograms()) {
+			assertArrayEquals(Dijkstra.compile(source, "djkcode").getCode(), 
+					Dijkstra.compile(source, "djkcode").getCode());
+		}
+	}
+	
+	private List<String> readSamplePrograms() throws Exception
+	{
+		final File[] files = new File("SamplePrograms").listFiles((dir, name) -> name.endsWith(".djk"));
+		assertNotNull(files);
+		Arrays.sort(files);
+		final List<String> sources = new ArrayList<String>();
+		for (File file : files) {
+			sources.add(new String(Files.readAllBytes(file.toPath()), "UTF-8"));
+		}
+		assertFalse(sources.isEmpty());
+		return sources;
+	}
+}
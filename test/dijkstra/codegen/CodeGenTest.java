@@ -11,17 +11,16 @@ import org.junit.Test;
 import dijkstra.lexparse.DijkstraParser;
 import dijkstra.runtime.DijkstraRuntime;
 import dijkstra.semantic.DijkstraTypeCheckVisitor;
-import dijkstra.semantic.DjikstraTypeFinalizerVisitor;
 import dijkstra.semantic.DjikstraTypeResolutionVisitor;
 import dijkstra.symbol.DijkstraSymbolVisitor;
-import dijkstra.symbol.SymbolTableManager;
+import dijkstra.utility.CompilationContext;
 import dijkstra.utility.DijkstraException;
 import dijkstra.utility.DijkstraFactory;
 
 public class CodeGenTest extends ClassLoader {
 	private DijkstraParser parser;
 	private ParserRuleContext tree;
-	private SymbolTableManager stm = SymbolTableManager.getInstance();
+	private CompilationContext context;
 	private byte[] code;
 
 	@Test
@@ -488,6 +487,14 @@ public class CodeGenTest extends ClassLoader {
 	}
 	
 	
+	@Test
+	public void functionCallMixedParameterTypes() throws Exception
+	{
+		runCode("fun foo(float b, int a, boolean c) : int { print b; if c :: return a; ~c :: return 0; fi } "
+				+ "print foo(2.5, 10, true);");
+		assertEquals("i=10", DijkstraRuntime.getLastMessage());
+	}
+	
 	@Test
 	public void basicFunctionCallArray() throws Exception
 	{
@@ -561,19 +568,15 @@ public class CodeGenTest extends ClassLoader {
 	private CodeGenVisitor doCodeGen (String inputText)
 	{
 		//System.out.println(doParse(inputText));
-		stm.reset();
+		context = new CompilationContext();
 		doParse(inputText);
-		DijkstraSymbolVisitor visitor = new DijkstraSymbolVisitor();
+		DijkstraSymbolVisitor visitor = new DijkstraSymbolVisitor(context);
 		tree.accept(visitor);
 		DjikstraTypeResolutionVisitor resolver = new DjikstraTypeResolutionVisitor(visitor);
-		while(!resolver.isComplete()) {
-			tree.accept(resolver);
-		}
-		DjikstraTypeFinalizerVisitor finalizer = new DjikstraTypeFinalizerVisitor(resolver);
-		tree.accept(finalizer);
-		DijkstraTypeCheckVisitor checker = new DijkstraTypeCheckVisitor(finalizer);
+		resolver.resolve();
+		DijkstraTypeCheckVisitor checker = new DijkstraTypeCheckVisitor(resolver);
 		tree.accept(checker);
-		CodeGenVisitor generator = new CodeGenVisitor(finalizer);
+		CodeGenVisitor generator = new CodeGenVisitor(checker);
 		code = tree.accept(generator);
 		return generator;
 	}
@@ -585,7 +588,7 @@ public class CodeGenTest extends ClassLoader {
 		Class<?> testClass = loader.defineClass("djkcode.Test", code, 0, code.length);
 
 		// Run the dynamically generated class's main method.
-		testClass.getMethods()[0].invoke(null, new Object[] { null });
+		testClass.getMethod("main", String[].class).invoke(null, new Object[] { null });
 	}
 
 }
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.jfr;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.*;
+import java.util.*;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.*;
+
+import org.junit.Test;
+
+import dijkstra.*;
+import dijkstra.utility.DijkstraException;
+
+/**
+ * Checks that the compiler and runtime emit their Flight Recorder events.
+ */
+public class JfrEventsTest
+{
+	@Test
+	public void compileAndAbortEvents() throws Exception
+	{
+		List<RecordedEvent> events = record(() -> {
+			DijkstraProgram program = new DijkstraCompiler().load(
+					"program JfrTest\nx <- 1;\nif x > 2 :: print x; fi");
+			try {
+				program.run();
+				fail("The program should abort");
+			} catch (DijkstraException e) {
+				// expected
+			}
+		});
+		Set<String> phases = new HashSet<String>();
+		RecordedEvent generated = null;
+		RecordedEvent abort = null;
+		for (RecordedEvent event : events) {
+			switch (event.getEventType().getName()) {
+				case "dijkstra.CompilePhase":
+					assertEquals("JfrTest", event.getString("program"));
+					phases.add(event.getString("phase"));
+					break;
+				case "dijkstra.ClassGenerated":
+					generated = event;
+					break;
+				case "dijkstra.RuntimeAbort":
+					abort = event;
+					break;
+			}
+		}
+		assertTrue(phases.containsAll(Arrays.asList("symbols", "check", "codegen")));
+		assertEquals("djkcode.JfrTest", generated.getString("className"));
+		assertTrue(generated.getInt("bytecodeSize") > 0);
+		assertEquals("djkcode.JfrTest", abort.getString("program"));
+		assertEquals(3, abort.getInt("line"));
+	}
+	
+	@Test
+	public void batchPhasesAreNamedFromTheStart() throws Exception
+	{
+		Path directory = Files.createTempDirectory("dijkstra");
+		Path source = directory.resolve("Named.djk");
+		Files.write(source, "program JfrFile print 1".getBytes("UTF-8"));
+		List<RecordedEvent> events = record(() -> 
+				new Dijkstra(System.out, System.err, directory.toString())
+						.run(new String[] { "Named.djk", "-o", directory.toString() }));
+		Map<String, String> programs = new HashMap<String, String>();
+		for (RecordedEvent event : events) {
+			if (event.getEventType().getName().equals("dijkstra.CompilePhase")) {
+				programs.put(event.getString("phase"), event.getString("program"));
+			}
+		}
+		assertEquals("Named", programs.get("read"));
+		assertEquals("JfrFile", programs.get("parse"));
+		assertEquals("JfrFile", programs.get("write"));
+		Files.delete(directory.resolve("djkcode/JfrFile.class"));
+		Files.delete(directory.resolve("djkcode"));
+		Files.delete(source);
+		Files.delete(directory);
+	}
+	
+	private static List<RecordedEvent> record(Runnable action) throws Exception
+	{
+		Path file = Files.createTempFile("dijkstra", ".jfr");
+		try (Recording recording = new Recording()) {
+			recording.enable(CompilePhaseEvent.class);
+			recording.enable(ClassGeneratedEvent.class);
+			recording.enable(RuntimeAbortEvent.class);
+			recording.start();
+			action.run();
+			recording.stop();
+			recording.dump(file);
+			return RecordingFile.readAllEvents(file);
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
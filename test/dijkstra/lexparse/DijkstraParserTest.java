@@ -5,6 +5,7 @@ import static org.junit.Assert.*;
 import org.antlr.v4.runtime.ANTLRInputStream;
 import org.junit.Test;
 
+import dijkstra.lexparse.DijkstraParser.AssignStatementContext;
 import dijkstra.utility.DijkstraFactory;
 
 public class DijkstraParserTest {
@@ -677,6 +678,21 @@ public class DijkstraParserTest {
 		assertTrue(true);
 	}
 	
+	@Test
+	public void longListsAreFlat() {
+		StringBuilder vars = new StringBuilder("x0");
+		StringBuilder values = new StringBuilder("0");
+		for (int i = 1; i < 10000; i++) {
+			vars.append(", x").append(i);
+			values.append(", ").append(i);
+		}
+		makeParser(vars + " <- " + values);
+		AssignStatementContext assign = parser.assignStatement();
+		assertEquals(10000, assign.varList().var().size());
+		assertEquals(10000, assign.expressionList().expression().size());
+		assertEquals("x9999", assign.varList().var(9999).getText());
+	}
+	
 	public void programwithstatements() {
 		makeParser("program foo boolean a, b, c; if a = b :: print c fi");
 		parser.dijkstraText();
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.lexparse;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+
+import org.antlr.v4.runtime.*;
+import org.junit.Test;
+
+/**
+ * Differential test: the hand-written scanner must give the same tokens, token
+ * for token, as the generated lexer.
+ */
+public class DijkstraScannerTest
+{
+	@Test
+	public void samplePrograms() throws Exception
+	{
+		for (File file : new File("SamplePrograms").listFiles()) {
+			assertSameTokens(new String(Files.readAllBytes(file.toPath()), "UTF-8"));
+		}
+	}
+
+	@Test
+	public void everyToken()
+	{
+		assertSameTokens("boolean false fi if input int float print program proc fun true do od div mod return");
+		assertSameTokens("<- = > >= :: : ( [ { < <= - ~= + ) ] } ; / * ~ , | & .");
+		assertSameTokens("x <-1 a<=b c<-d e~=f ~g ::: x1 y_2 z? 007 3.14");
+	}
+
+	@Test
+	public void keywordPrefixesAndExtensionsAreIdentifiers()
+	{
+		assertSameTokens("i iff f fii do_ od? divx mo returns programs Boolean TRUE");
+	}
+
+	@Test
+	public void commentsAndLines()
+	{
+		assertSameTokens("# first\nprogram p\r\n\t# second\n print 1 # trailing");
+		assertSameTokens("#");
+		assertSameTokens("");
+		assertSameTokens("\n\n  \n");
+	}
+
+	@Test
+	public void badCharactersAreReportedAndSkipped()
+	{
+		assertSameTokens("x <- 1 $ 2 _y @ \"s\" 'c' ! ?");
+	}
+
+	@Test
+	public void randomTokenSoup()
+	{
+		String[] pieces = {"<", "-", "=", ">", ":", "~", "(", ")", "[", "]", "{", "}", "+", "*", "/",
+				";", ",", "|", "&", ".", "if", "fi", "do", "od", "x", "y1", "q?", "_", "12", "0",
+				" ", "\n", "\t", "#c\n", "$"};
+		Random random = new Random(42);
+		for (int round = 0; round < 200; round++) {
+			StringBuilder text = new StringBuilder();
+			for (int i = 0; i < 100; i++) {
+				text.append(pieces[random.nextInt(pieces.length)]);
+			}
+			assertSameTokens(text.toString());
+		}
+	}
+
+	private static void assertSameTokens(String text)
+	{
+		List<String> lexerErrors = new ArrayList<String>();
+		DijkstraLexer lexer = new DijkstraLexer(new ANTLRInputStream(text));
+		lexer.removeErrorListeners();
+		lexer.addErrorListener(collect(lexerErrors));
+
+		List<String> scannerErrors = new ArrayList<String>();
+		DijkstraScanner scanner = new DijkstraScanner(text.toCharArray(), text.length());
+		scanner.removeErrorListeners();
+		scanner.addErrorListener(collect(scannerErrors));
+
+		Token expected, actual;
+		do {
+			expected = lexer.nextToken();
+			actual = scanner.nextToken();
+			String where = " of " + expected + " in \"" + text + "\"";
+			assertEquals("type" + where, expected.getType(), actual.getType());
+			assertEquals("text" + where, expected.getText(), actual.getText());
+			assertEquals("start" + where, expected.getStartIndex(), actual.getStartIndex());
+			assertEquals("stop" + where, expected.getStopIndex(), actual.getStopIndex());
+			assertEquals("line" + where, expected.getLine(), actual.getLine());
+			assertEquals("column" + where, expected.getCharPositionInLine(), actual.getCharPositionInLine());
+			assertEquals("channel" + where, expected.getChannel(), actual.getChannel());
+		} while (expected.getType() != Token.EOF);
+		assertEquals(lexerErrors, scannerErrors);
+	}
+
+	private static BaseErrorListener collect(final List<String> errors)
+	{
+		return new BaseErrorListener() {
+			@Override
+			public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+					int line, int charPositionInLine, String msg, RecognitionException e)
+			{
+				errors.add(line + ":" + charPositionInLine + " " + msg);
+			}
+		};
+	}
+}
@@ -10,17 +10,19 @@ import org.junit.Test;
 import dijkstra.lexparse.DijkstraParser;
 import dijkstra.semantic.DijkstraSemanticException;
 import dijkstra.semantic.DijkstraTypeCheckVisitor;
-import dijkstra.semantic.DjikstraTypeFinalizerVisitor;
 import dijkstra.semantic.DjikstraTypeResolutionVisitor;
+import dijkstra.symbol.DijkstraSymbolException;
 import dijkstra.symbol.DijkstraSymbolVisitor;
 import dijkstra.symbol.SymbolTableManager;
+import dijkstra.utility.CompilationContext;
 import dijkstra.utility.DijkstraFactory;
 import dijkstra.utility.TypeCheckRunner;
 
 public class DijkstaTypeCheckVisitorTest {
 	private DijkstraParser parser;
 	private ParserRuleContext tree;
-	private SymbolTableManager stm = SymbolTableManager.getInstance();
+	private CompilationContext context = new CompilationContext();
+	private SymbolTableManager stm = context.getSymbolTableManager();
 	
 	@Before
 	public void setup() {
@@ -51,6 +53,26 @@ public class DijkstaTypeCheckVisitorTest {
 		assertTrue(true);
 	}
 
+	@Test
+	public void returnOutsideFunction() {
+		String[] programs = {"int a; a <- 1; return a", "proc p () { return 1 } p()"};
+		for(String program : programs) {
+			try {
+				doTypeCheck(program);
+				fail("expected an exception for " + program);
+			} catch (DijkstraSymbolException e) {
+				assertEquals("Return call outside of a function!", e.getMessage());
+			}
+		}
+	}
+
+	@Test
+	public void operandsAreFinalizedBeforeTheyAreChecked() {
+		doTypeCheck("input a; print a = 1");
+		doTypeCheck("input a; fun f () : int { return a div 2 } print f() = a");
+		assertTrue(true);
+	}
+
 	@Test
 	public void functionCallGoodParams() {
 		doTypeCheck("int a, b; fun foo (int a, float b) : int { return 4 } a <- foo(a, b)");
@@ -460,15 +482,11 @@ public class DijkstaTypeCheckVisitorTest {
 	{
 		stm.reset();
 		doParse(inputText);
-		DijkstraSymbolVisitor visitor = new DijkstraSymbolVisitor();
+		DijkstraSymbolVisitor visitor = new DijkstraSymbolVisitor(context);
 		tree.accept(visitor);
 		DjikstraTypeResolutionVisitor resolver = new DjikstraTypeResolutionVisitor(visitor);
-		while(!resolver.isComplete()) {
-			tree.accept(resolver);
-		}
-		DjikstraTypeFinalizerVisitor finalizer = new DjikstraTypeFinalizerVisitor(resolver);
-		tree.accept(finalizer);
-		DijkstraTypeCheckVisitor checker = new DijkstraTypeCheckVisitor(finalizer);
+		resolver.resolve();
+		DijkstraTypeCheckVisitor checker = new DijkstraTypeCheckVisitor(resolver);
 		tree.accept(checker);
 		return checker;
 	}
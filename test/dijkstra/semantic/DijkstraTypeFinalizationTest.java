@@ -37,7 +37,8 @@ public class DijkstraTypeFinalizationTest
 {
 	private DijkstraParser parser;
 	private ParserRuleContext tree;
-	private SymbolTableManager stm = SymbolTableManager.getInstance();
+	private CompilationContext context = new CompilationContext();
+	private SymbolTableManager stm = context.getSymbolTableManager();
 	
 	@Before
 	public void setup()
@@ -108,12 +109,10 @@ public class DijkstraTypeFinalizationTest
 		//System.out.println(doParse(inputText));
 		stm.reset();
 		doParse(inputText);
-		DijkstraSymbolVisitor visitor = new DijkstraSymbolVisitor();
+		DijkstraSymbolVisitor visitor = new DijkstraSymbolVisitor(context);
 		tree.accept(visitor);
 		DjikstraTypeResolutionVisitor resolver = new DjikstraTypeResolutionVisitor(visitor);
-		while(!resolver.isComplete()) {
-			tree.accept(resolver);
-		}
+		resolver.resolve();
 		DjikstraTypeFinalizerVisitor finalizer = new DjikstraTypeFinalizerVisitor(resolver);
 		tree.accept(finalizer);
 		return finalizer;
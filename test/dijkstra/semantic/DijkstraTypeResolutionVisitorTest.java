@@ -13,8 +13,12 @@ package dijkstra.semantic;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+
 import org.antlr.v4.runtime.*;
-import org.antlr.v4.runtime.tree.ParseTreeProperty;
+import org.antlr.v4.runtime.tree.*;
 import org.junit.*;
 
 import dijkstra.lexparse.*;
@@ -37,12 +41,14 @@ public class DijkstraTypeResolutionVisitorTest
 {
 	private DijkstraParser parser;
 	private ParserRuleContext tree;
-	private SymbolTableManager stm = SymbolTableManager.getInstance();
+	private CompilationContext context = new CompilationContext();
+	private SymbolTableManager stm = context.getSymbolTableManager();
 	
 	@Before
 	public void setup()
 	{
 		stm.reset();
+		stm.setKeepScopes(true);
 	}
 	
 	@Test
@@ -413,6 +419,69 @@ public class DijkstraTypeResolutionVisitorTest
 		assertTrue(true);
 	}
 	
+	@Test
+	public void chainWrittenBackwardsIsSolvedInLinearTime() {
+		final int n = 200;
+		StringBuilder text = new StringBuilder("input x1");
+		for(int i = 2; i <= n; i++) {
+			text.append(", x" + i);
+		}
+		for(int i = 1; i < n; i++) {
+			text.append("; x" + i + " <- x" + (i + 1) + " + 1");
+		}
+		text.append("; x" + n + " <- 1.5");
+		stm.reset();
+		doParse(text.toString());
+		DijkstraSymbolVisitor visitor = new DijkstraSymbolVisitor(context);
+		tree.accept(visitor);
+		DjikstraTypeResolutionVisitor resolver = new DjikstraTypeResolutionVisitor(visitor);
+		int evaluations = resolver.resolve();
+		assertEquals(FLOAT, stm.getSymbol("x1").getType());
+		assertTrue("evaluations " + evaluations, evaluations <= 5 * n);
+	}
+	
+	@Test
+	public void parenthesizedIdentifiersAreInferred() {
+		doSymbolTable("input a, b; c <- (a) + 1.5; d <- -(b)");
+		assertEquals(FLOAT, stm.getSymbol("a").getType());
+		assertEquals(NUM, stm.getSymbol("b").getType());
+	}
+	
+	@Test
+	public void loopAndArrayIndexInferInt() {
+		doSymbolTable("input a, b, c; do a < b :: c <- c + a od a <- c * 2; b <- 1; int[a] arr; arr[c] <- 1");
+		assertEquals(INT, stm.getSymbol("a").getType());
+		assertEquals(INT, stm.getSymbol("b").getType());
+		assertEquals(INT, stm.getSymbol("c").getType());
+		assertEquals(INT, stm.getArray("arr").getType());
+	}
+	
+	@Test
+	public void negationInfersBoolean() {
+		doSymbolTable("input a; boolean b; b <- a; a <- ~b");
+		assertEquals(BOOLEAN, stm.getSymbol("a").getType());
+		assertEquals(BOOLEAN, stm.getSymbol("b").getType());
+	}
+	
+	@Test(expected=DijkstraSemanticException.class)
+	public void numberPlusBoolean() {
+		doSymbolTable("input a; a <- 1; print a + true");
+	}
+	
+	@Test
+	public void samplesLeaveNoSymbolUndefined() throws Exception {
+		for(File file : new File("SamplePrograms").listFiles()) {
+			String text = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+			DijkstraSymbolVisitor visitor = doSymbolTable(text.replaceFirst("program\\s+\\S+", ""));
+			for(ParseTree node : Trees.getDescendants(tree)) {
+				Symbol s = visitor.symbols.get(node);
+				if(s != null) {
+					assertNotEquals(file.getName() + " " + node.getText(), UNDEFINED, s.getType());
+				}
+			}
+		}
+	}
+	
 /*	@Test(expected=DijkstraSymbolException.class)
 	public void cantCallProcAsFun() {
 		doSymbolTable("proc foo() { print 1 } a <- foo()");	
@@ -449,12 +518,10 @@ public class DijkstraTypeResolutionVisitorTest
 		//System.out.println(doParse(inputText));
 		stm.reset();
 		doParse(inputText);
-		DijkstraSymbolVisitor visitor = new DijkstraSymbolVisitor();
+		DijkstraSymbolVisitor visitor = new DijkstraSymbolVisitor(context);
 		tree.accept(visitor);
 		DjikstraTypeResolutionVisitor resolver = new DjikstraTypeResolutionVisitor(visitor);
-		while(!resolver.isComplete()) {
-			tree.accept(resolver);
-		}
+		resolver.resolve();
 		return visitor;
 	}
 
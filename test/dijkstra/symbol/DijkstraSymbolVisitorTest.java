@@ -31,12 +31,14 @@ public class DijkstraSymbolVisitorTest
 {
 	private DijkstraParser parser;
 	private ParserRuleContext tree;
-	private SymbolTableManager stm = SymbolTableManager.getInstance();
+	private CompilationContext context = new CompilationContext();
+	private SymbolTableManager stm = context.getSymbolTableManager();
 	
 	@Before
 	public void setup()
 	{
 		stm.reset();
+		stm.setKeepScopes(true);
 	}
 	
 	@Test(expected=DijkstraSemanticException.class)
@@ -496,7 +498,7 @@ public class DijkstraSymbolVisitorTest
 		//System.out.println(doParse(inputText));
 		stm.reset();
 		doParse(inputText);
-		DijkstraSymbolVisitor visitor = new DijkstraSymbolVisitor();
+		DijkstraSymbolVisitor visitor = new DijkstraSymbolVisitor(context);
 		tree.accept(visitor);
 		return visitor;
 	}
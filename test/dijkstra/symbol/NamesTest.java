@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.symbol;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.tree.TerminalNodeImpl;
+import org.junit.Test;
+
+import dijkstra.lexparse.*;
+
+/**
+ * Tests for interning identifiers from strings and from scanned characters.
+ */
+public class NamesTest
+{
+	private final Names names = new Names();
+	
+	@Test
+	public void charactersAndStringsShareNames()
+	{
+		final char[] data = "x count x2 count".toCharArray();
+		assertEquals(0, names.intern(data, 2, 7));
+		assertEquals(0, names.intern("count"));
+		assertEquals(1, names.intern("x"));
+		assertEquals(1, names.intern(data, 0, 1));
+		assertEquals(2, names.intern(data, 8, 10));
+		assertEquals(0, names.intern(data, 11, 16));
+		assertEquals("x2", names.textOf(2));
+		assertEquals(3, names.size());
+	}
+	
+	@Test
+	public void manyNamesSurviveGrowth()
+	{
+		for (int i = 0; i < 10000; i++) {
+			assertEquals(i, names.intern("v" + i));
+		}
+		for (int i = 0; i < 10000; i++) {
+			final char[] id = ("v" + i).toCharArray();
+			assertEquals(i, names.intern(id, 0, id.length));
+			assertEquals(i, names.find("v" + i));
+		}
+		assertEquals(-1, names.find("v10000"));
+		assertEquals(10000, names.size());
+	}
+	
+	@Test
+	public void scannedIdsAreNamedWithoutTheirText()
+	{
+		final char[] data = "program p a <- b; b <- a".toCharArray();
+		final DijkstraScanner scanner = new DijkstraScanner(data, data.length);
+		final List<Token> tokens = new ArrayList<Token>();
+		for (Token token = scanner.nextToken(); ; token = scanner.nextToken()) {
+			tokens.add(token);
+			if (token.getType() == Token.EOF) {
+				break;
+			}
+		}
+		names.internIds(data, tokens);
+		assertEquals(3, names.size());		// p, a and b
+		final CommonToken last = (CommonToken) tokens.get(tokens.size() - 2);
+		last.setTokenIndex(tokens.size() - 2);
+		last.setText("not the name");		// would be interned if the text were asked for
+		assertEquals(names.find("a"), names.intern(new TerminalNodeImpl(last)));
+		assertEquals(-1, names.find("not the name"));
+	}
+	
+	@Test
+	public void tokensPastTheReservedRangeAreNamedFromSeveralThreads() throws Exception
+	{
+		final int count = 20000;
+		final List<TerminalNodeImpl> nodes = new ArrayList<TerminalNodeImpl>();
+		for (int index = 0; index < count; index++) {
+			final CommonToken token = new CommonToken(DijkstraParser.ID, "v" + index % 100);
+			token.setTokenIndex(index);
+			nodes.add(new TerminalNodeImpl(token));
+		}
+		final Thread[] threads = new Thread[4];
+		final int[][] seen = new int[threads.length][count];
+		for (int t = 0; t < threads.length; t++) {
+			final int[] mine = seen[t];
+			threads[t] = new Thread(() -> {
+				for (int index = 0; index < count; index++) {
+					mine[index] = names.intern(nodes.get(index));
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(100, names.size());
+		for (int t = 0; t < threads.length; t++) {
+			for (int index = 0; index < count; index++) {
+				assertEquals(names.find("v" + index % 100), seen[t][index]);
+			}
+		}
+	}
+}
@@ -0,0 +1,298 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.symbol;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.tree.*;
+import org.junit.*;
+
+import dijkstra.lexparse.DijkstraParserException;
+import dijkstra.semantic.*;
+import dijkstra.utility.*;
+
+/**
+ * Checks that analysing method bodies on several threads, or taking them from a
+ * {@link BodyCache}, gives the same symbols, scopes, resolution units and final
+ * types as one symbol pass.
+ */
+public class ParallelSymbolAnalyzerTest
+{
+	private ForkJoinPool pool;
+
+	@Before
+	public void setup()
+	{
+		pool = new ForkJoinPool(4);
+	}
+
+	@After
+	public void cleanup()
+	{
+		pool.shutdown();
+	}
+
+	@Test
+	public void samplesWithEveryBodyOnItsOwn() throws Exception
+	{
+		for (File file : new File("SamplePrograms").listFiles()) {
+			String text = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+			assertEquals(file.getName(), outcome(text, false), outcome(text, true));
+		}
+	}
+
+	@Test
+	public void manyProcedures()
+	{
+		String text = program(300);
+		assertEquals(outcome(text, false), outcome(text, true));
+		assertTrue(analyzedInParallel(text));
+	}
+
+	@Test
+	public void bodiesOnlySeeWhatWasDeclaredBeforeThem()
+	{
+		String[] programs = {
+			"program p proc a() { x <- 1.5; print x } int x; proc b() { x <- 1 } a() b()",
+			"program p proc a() { b() } proc b() { print 1 } a()",
+			"program p fun f(int n) : int { return f(n - 1) } proc a() { print f(2) } a()",
+			"program p proc a() { print c[1] } int[3] c; a()",
+		};
+		for (String program : programs) {
+			assertEquals(program, outcome(program, false), outcome(program, true));
+		}
+		assertTrue(analyzedInParallel(programs[0]));
+	}
+
+	@Test
+	public void globalsChangingTypeAfterABodyFallBackToOnePass()
+	{
+		String[] programs = {
+			"program p input x; proc a() { y <- x; y <- 1.5; print y } x <- 1; a()",
+			"program p input x; proc a() { x <- 1 } proc b() { y <- x } a() b()",
+		};
+		for (String program : programs) {
+			assertEquals(program, outcome(program, false), outcome(program, true));
+			assertFalse(program, analyzedInParallel(program));
+		}
+	}
+
+	@Test
+	public void errorsAreReportedAsByOnePass()
+	{
+		String[] programs = {
+			"program p int x; proc a() { boolean x; x <- 1 } proc b() { y <- z } a() b()",
+			"program p proc a() { y <- z } proc b() { boolean x; x <- 1 } a() b()",
+			"program p proc a(int x, int x) { print x } a(1, 2)",
+			"program p proc a() { print 1 } proc a() { print 2 }",
+		};
+		for (String program : programs) {
+			String expected = outcome(program, false);
+			assertTrue(expected, expected.startsWith("error"));
+			assertEquals(program, expected, outcome(program, true));
+		}
+	}
+
+	@Test
+	public void cachedBodiesAfterEdits()
+	{
+		IncrementalParser parser = new IncrementalParser();
+		BodyCache cache = new BodyCache();
+		String text = program(30);
+		assertEquals(outcome(text, null), outcome(parser.parse(text.toCharArray(), text.length()), cache));
+		assertEquals(0, cache.getReused());
+		assertEquals(40, cache.getAnalyzed());
+
+		String edited = text.replace("z <- a * 2; x <- x + z; if z > 7 ", "z <- a * 3; x <- x + z; if z > 7 ");
+		assertEquals(outcome(edited, null), outcome(edit(parser, text, edited), cache));
+		assertTrue(cache.getAnalyzed() <= 2);
+		assertEquals(40, cache.getReused() + cache.getAnalyzed());
+
+		// Every procedure reads x, no function does
+		text = edited;
+		edited = text.replace("int x; float y;", "float x; float y;");
+		assertEquals(outcome(edited, null), outcome(edit(parser, text, edited), cache));
+		assertEquals(10, cache.getReused());
+
+		text = edited;
+		edited = text.replace("proc p4(int a)", "int p4z; proc p4(int a)");
+		assertEquals(outcome(edited, null), outcome(edit(parser, text, edited), cache));
+		assertTrue(cache.getReused() >= 38);
+	}
+
+	@Test
+	public void cachedBodiesAfterRandomEdits() throws Exception
+	{
+		String[] snippets = {"x", "1", " ", "\n", "+ 2", "1.5", "print y\n", "int q;\n", "float x;\n",
+				"y <- 3\n", "b", "}", "proc s() { print x }\n", "w <- true\n"};
+		Random random = new Random(11);
+		for (File file : new File("SamplePrograms").listFiles()) {
+			String text = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+			IncrementalParser parser = new IncrementalParser();
+			BodyCache cache = new BodyCache();
+			assertEquals(outcome(text, null), outcome(parser.parse(text.toCharArray(), text.length()), cache));
+			for (int edit = 0; edit < 60; edit++) {
+				int at = random.nextInt(text.length() + 1);
+				int removed = random.nextInt(Math.min(3, text.length() - at) + 1);
+				String inserted = random.nextBoolean() ? "" : snippets[random.nextInt(snippets.length)];
+				String edited = text.substring(0, at) + inserted + text.substring(at + removed);
+				String expected;
+				try {
+					expected = outcome(edited, null);
+				} catch (DijkstraParserException e) {
+					continue;
+				}
+				ParserRuleContext tree = parser.edit(edited.toCharArray(), edited.length(),
+						at, removed, inserted.length());
+				assertEquals(edited, expected, outcome(tree, cache));
+				text = edited;
+			}
+		}
+	}
+
+	private static ParserRuleContext edit(IncrementalParser parser, String text, String edited)
+	{
+		int offset = 0;
+		while (text.charAt(offset) == edited.charAt(offset)) {
+			offset++;
+		}
+		int suffix = 0;
+		while (text.charAt(text.length() - 1 - suffix) == edited.charAt(edited.length() - 1 - suffix)) {
+			suffix++;
+		}
+		suffix = Math.min(suffix, Math.min(text.length(), edited.length()) - offset);
+		return parser.edit(edited.toCharArray(), edited.length(), offset,
+				text.length() - offset - suffix, edited.length() - offset - suffix);
+	}
+
+	private static String program(int procedures)
+	{
+		StringBuilder text = new StringBuilder("program big\nint x; float y;\n");
+		for (int i = 0; i < procedures; i++) {
+			text.append("proc p" + i + "(int a) {\n  z <- a * 2; x <- x + z; if z > " + i
+					+ " :: y <- y + 0.5 z <= " + i + " :: { int w; w <- z; print w } fi }\n");
+			if (i % 3 == 0) {
+				text.append("fun f" + i + "(b) : int { return b - " + i + " }\np" + i + "(f" + i + "(x))\n");
+			}
+		}
+		return text.append("print x\n").toString();
+	}
+
+	private boolean analyzedInParallel(String text)
+	{
+		CompilationContext context = new CompilationContext();
+		ParserRuleContext tree = DijkstraFactory.parse(new ANTLRInputStream(text));
+		return ParallelSymbolAnalyzer.analyze(tree, context, pool, 0).getClass() != DijkstraSymbolVisitor.class;
+	}
+
+	/**
+	 * @return the outcome of one symbol pass over a fresh parse of the text, or of
+	 * 		an analysis with the cache
+	 */
+	private static String outcome(String text, BodyCache cache)
+	{
+		return outcome(DijkstraFactory.parse(new ANTLRInputStream(text)), cache);
+	}
+
+	/**
+	 * @return the annotations after the symbol pass and after type checking, or
+	 * 		the error, without the scopes, which the cache does not keep
+	 */
+	private static String outcome(ParserRuleContext tree, BodyCache cache)
+	{
+		CompilationContext context = new CompilationContext();
+		try {
+			DijkstraSymbolVisitor visitor;
+			if (cache != null) {
+				visitor = ParallelSymbolAnalyzer.analyze(tree, context, cache);
+			} else {
+				visitor = new DijkstraSymbolVisitor(context);
+				tree.accept(visitor);
+			}
+			String symbols = describe(tree, visitor, context.getSymbolTableManager());
+			DjikstraTypeResolutionVisitor resolver = new DjikstraTypeResolutionVisitor(visitor);
+			resolver.resolve();
+			tree.accept(new DijkstraTypeCheckVisitor(resolver));
+			return symbols + "\nchecked\n" + describe(tree, visitor, context.getSymbolTableManager());
+		} catch (RuntimeException e) {
+			return "error " + e.getClass().getSimpleName() + ": " + e.getMessage();
+		}
+	}
+
+	/**
+	 * @return the annotations after the symbol pass and after type checking, or the error
+	 */
+	private String outcome(String text, boolean parallel)
+	{
+		CompilationContext context = new CompilationContext();
+		context.getSymbolTableManager().setKeepScopes(true);
+		ParserRuleContext tree = DijkstraFactory.parse(new ANTLRInputStream(text));
+		try {
+			DijkstraSymbolVisitor visitor;
+			if (parallel) {
+				visitor = ParallelSymbolAnalyzer.analyze(tree, context, pool, 0);
+			} else {
+				visitor = new DijkstraSymbolVisitor(context);
+				tree.accept(visitor);
+			}
+			String symbols = describe(tree, visitor, context.getSymbolTableManager());
+			DjikstraTypeResolutionVisitor resolver = new DjikstraTypeResolutionVisitor(visitor);
+			resolver.resolve();
+			tree.accept(new DijkstraTypeCheckVisitor(resolver));
+			return symbols + "\nchecked\n" + describe(tree, visitor, context.getSymbolTableManager());
+		} catch (RuntimeException e) {
+			return "error " + e.getClass().getSimpleName() + ": " + e.getMessage();
+		}
+	}
+
+	private static String describe(ParserRuleContext tree, DijkstraSymbolVisitor visitor, SymbolTableManager stm)
+	{
+		Map<Symbol, Integer> numbers = new IdentityHashMap<Symbol, Integer>();
+		Map<ParseTree, Integer> nodes = new IdentityHashMap<ParseTree, Integer>();
+		StringBuilder out = new StringBuilder();
+		for (ParseTree node : Trees.getDescendants(tree)) {
+			nodes.put(node, nodes.size());
+			out.append(nodes.size()).append(' ')
+					.append(describe(numbers, visitor.symbols.get(node))).append(' ')
+					.append(describe(numbers, visitor.functions.get(node))).append(' ')
+					.append(describe(numbers, visitor.arrays.get(node))).append(' ')
+					.append(visitor.types.get(node)).append('\n');
+		}
+		out.append("units");
+		for (ParserRuleContext unit : visitor.units.getUnits()) {
+			out.append(' ').append(nodes.get(unit));
+		}
+		out.append("\nscopes ").append(stm.getNumberOfScopes())
+				.append(" symbols ").append(stm.getNumberOfSymbols()).append('\n');
+		for (int i = 0; stm.getKeepScopes() && i < stm.getNumberOfScopes(); i++) {
+			out.append(stm.getSymbolTable(i));
+		}
+		return out.toString();
+	}
+
+	private static String describe(Map<Symbol, Integer> numbers, Symbol symbol)
+	{
+		if (symbol == null) {
+			return "-";
+		}
+		if (!numbers.containsKey(symbol)) {
+			numbers.put(symbol, numbers.size());
+		}
+		return numbers.get(symbol) + ":" + symbol.getId() + ":" + symbol.getType() + ":" + symbol.isLocal();
+	}
+}
@@ -16,12 +16,12 @@ import org.junit.*;
 import static dijkstra.utility.DijkstraType.*;
 
 /**
- * Test cases for the SymbolTableManager singleton.
+ * Test cases for the SymbolTableManager.
  * @version Feb 8, 2015
  */
 public class SymbolTableManagerTest
 {
-	private SymbolTableManager stm = SymbolTableManager.getInstance();
+	private SymbolTableManager stm = new SymbolTableManager();
 	
 	@Before
 	public void setup()
@@ -74,4 +74,83 @@ public class SymbolTableManagerTest
 		stm.exitScope();
 		assertTrue(stm.getSymbol("a") == a1);
 	}
+	
+	@Test
+	public void deepShadowingIsUndoneScopeByScope()
+	{
+		final Symbol[] a = new Symbol[100];
+		for (int i = 0; i < a.length; i++) {
+			if (i > 0) {
+				stm.enterScope();
+			}
+			a[i] = stm.add("a");
+			if (i % 2 == 0) {
+				stm.addArray("a", INT);
+			}
+		}
+		final Symbol b = stm.add("b");
+		assertTrue(stm.getSymbol("b") == b);
+		for (int i = a.length - 1; i > 0; i--) {
+			assertTrue(stm.getSymbol("a") == a[i]);
+			stm.exitScope();
+		}
+		assertTrue(stm.getSymbol("a") == a[0]);
+		assertNull(stm.getSymbol("b"));
+		assertNotNull(stm.getArray("a"));
+	}
+	
+	@Test(expected=DijkstraSymbolException.class)
+	public void addSymbolTwiceInANestedScope()
+	{
+		stm.add("a");
+		stm.enterScope();
+		stm.add("a");
+		stm.add("a");
+	}
+	
+	@Test
+	public void kindsAreSeparate()
+	{
+		stm.addFunction("f", INT);
+		stm.enterScope();
+		stm.addProcedure("f", UNDEFINED);
+		assertNull(stm.getSymbol("f"));
+		assertEquals(INT, stm.getFunction("f").getType());
+		assertNotNull(stm.getProcedure("f"));
+		stm.exitScope();
+		assertNull(stm.getProcedure("f"));
+	}
+	
+	@Test
+	public void countsWithoutKeepingScopes()
+	{
+		stm.add("a");
+		stm.enterScope();
+		stm.add("a");
+		stm.addArray("b", INT);
+		stm.exitScope();
+		stm.enterScope();
+		stm.exitScope();
+		assertEquals(3, stm.getNumberOfScopes());
+		assertEquals(3, stm.getNumberOfSymbols());
+	}
+	
+	@Test(expected=IllegalStateException.class)
+	public void pastScopesAreOnlyKeptOnRequest()
+	{
+		stm.enterScope();
+		stm.exitScope();
+		stm.getSymbolTable(1);
+	}
+	
+	@Test
+	public void keptScopesStillHoldTheirSymbols()
+	{
+		stm.setKeepScopes(true);
+		stm.enterScope();
+		final Symbol a = stm.add("a");
+		stm.exitScope();
+		assertNull(stm.getSymbol("a"));
+		assertTrue(stm.getSymbolTable(1).getSymbol("a") == a);
+	}
 }
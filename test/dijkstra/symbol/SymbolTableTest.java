@@ -65,6 +65,36 @@ public class SymbolTableTest
 		assertFalse(a == symbol1);
 	}
 	
+	@Test
+	public void lookupByInternedName()
+	{
+		st.add(a);
+		st1.add(b);
+		final Names names = st1.getNames();
+		assertTrue(names == st.getNames());
+		assertEquals(a, st1.getSymbol(names.find("a")));
+		assertEquals(b, st1.getSymbol(names.find("b")));
+		assertNull(st.getSymbol(names.find("b")));
+		assertEquals(-1, names.find("c"));
+	}
+	
+	@Test
+	public void namesAreDense()
+	{
+		final Names names = st.getNames();
+		assertEquals(0, names.intern("x"));
+		assertEquals(1, names.intern("y"));
+		assertEquals(0, names.intern("x"));
+		assertEquals("y", names.textOf(1));
+		assertEquals(2, names.size());
+	}
+	
+	@Test
+	public void tablesOfSeparateCompilationsDoNotShareNames()
+	{
+		assertFalse(st.getNames() == new SymbolTable(null).getNames());
+	}
+	
 //	@Test
 //	public void addIfNew()
 //	{
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.utility;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import dijkstra.*;
+
+/**
+ * Tests for the per-phase compiler statistics.
+ */
+public class CompilerStatsTest
+{
+	private static final String PROGRAM = "program Test fun f(int a) : int { return a; } x <- f(1); print x;";
+	
+	@Test
+	public void compilationRecordsEveryPhase()
+	{
+		CompilerStats stats = new CompilerStats(true);
+		CompiledProgram program = Dijkstra.compile(CharBuffer.wrap(PROGRAM.toCharArray()), "djkcode", stats);
+		assertTrue(stats.getPhases().containsAll(
+				Arrays.asList("parse", "symbols", "resolve", "check", "codegen")));
+		assertTrue(stats.getNanos("parse") > 0);
+		assertEquals(program.getCode().length, stats.getCount("bytecode bytes"));
+		assertEquals(3, stats.getCount("methods"));	// <init>, main and f
+		assertEquals(3, stats.getCount("scopes"));	// global, f and its body
+		assertTrue(stats.getCount("constraint evaluations") >= 2);
+		assertTrue(stats.getCount("tokens") > 0);
+	}
+	
+	@Test
+	public void batchTotalsAreSummed()
+	{
+		CompilerStats stats = new CompilerStats(true);
+		Dijkstra.compile(CharBuffer.wrap(PROGRAM.toCharArray()), "djkcode", stats);
+		long bytes = stats.getCount("bytecode bytes");
+		Dijkstra.compile(CharBuffer.wrap(PROGRAM.toCharArray()), "djkcode", stats);
+		assertEquals(2 * bytes, stats.getCount("bytecode bytes"));
+	}
+	
+	@Test
+	public void disabledStatsRecordNothing()
+	{
+		CompilerStats stats = new CompilerStats(false);
+		Dijkstra.compile(CharBuffer.wrap(PROGRAM.toCharArray()), "djkcode", stats);
+		assertTrue(stats.getPhases().isEmpty());
+		assertEquals(0, stats.getCount("tokens"));
+	}
+	
+	@Test
+	public void jsonOutput()
+	{
+		CompilerStats stats = new CompilerStats(true);
+		stats.beginPhase("parse");
+		stats.endPhase();
+		stats.count("tokens", 12);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		stats.printJson(new PrintStream(bytes));
+		String json = bytes.toString().trim();
+		assertTrue(json.startsWith("{\"phases\":[{\"name\":\"parse\",\"runs\":1,"));
+		assertTrue(json.endsWith("\"counters\":{\"tokens\":12}}"));
+	}
+}
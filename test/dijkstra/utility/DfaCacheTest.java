@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.utility;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.junit.*;
+
+import dijkstra.lexparse.DijkstraParser;
+
+/**
+ * Checks that saved DFAs load into cold caches and parse exactly as before.
+ */
+public class DfaCacheTest
+{
+	private Path file;
+
+	@Before
+	public void setup() throws IOException
+	{
+		file = Files.createTempFile("dfa", ".cache");
+		Files.delete(file);
+	}
+
+	@After
+	public void cleanup() throws IOException
+	{
+		Files.deleteIfExists(file);
+	}
+
+	@Test
+	public void loadedStatesParseTheSamples() throws Exception
+	{
+		List<String> expected = parseSamples();
+		DfaCache.save(file);
+		clearDfa();
+		assertEquals(0, DfaCache.getNumberOfStates());
+		assertTrue(DfaCache.load(file));
+		assertTrue(DfaCache.getNumberOfStates() > 0);
+		assertEquals(expected, parseSamples());
+	}
+
+	@Test
+	public void warmCachesAreNotReplaced() throws Exception
+	{
+		parseSamples();
+		DfaCache.save(file);
+		assertFalse(DfaCache.load(file));
+	}
+
+	@Test
+	public void cacheForAnotherGrammarIsIgnored() throws Exception
+	{
+		try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+			out.writeInt(0x444a4b44);
+			out.writeInt(2);
+			out.writeInt(1);
+			out.writeByte(0);
+		}
+		clearDfa();
+		assertFalse(DfaCache.load(file));
+		assertEquals(0, DfaCache.getNumberOfStates());
+	}
+
+	@Test(expected=IOException.class)
+	public void negativeLengthIsReportedAsCorrupt() throws Exception
+	{
+		byte[] hash = DfaCache.grammarHash();
+		try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+			out.writeInt(0x444a4b44);
+			out.writeInt(2);
+			out.writeInt(hash.length);
+			out.write(hash);
+			out.writeInt(DijkstraFactory.makeParser(new ANTLRInputStream("")).getInterpreter().decisionToDFA.length);
+			out.writeInt(0);	// prediction contexts
+			out.writeInt(-5);	// states
+		}
+		clearDfa();
+		DfaCache.load(file);
+	}
+
+	@Test
+	public void missingCacheIsIgnored() throws Exception
+	{
+		clearDfa();
+		assertFalse(DfaCache.load(file));
+	}
+
+	private static List<String> parseSamples() throws IOException
+	{
+		List<String> trees = new ArrayList<String>();
+		for (File sample : new File("SamplePrograms").listFiles()) {
+			String text = new String(Files.readAllBytes(sample.toPath()), "UTF-8");
+			DijkstraParser parser = DijkstraFactory.makeParser(new ANTLRInputStream(text));
+			trees.add(DijkstraFactory.parse(new ANTLRInputStream(text)).toStringTree(parser));
+		}
+		return trees;
+	}
+
+	private static void clearDfa()
+	{
+		DijkstraFactory.makeParser(new ANTLRInputStream("")).getInterpreter().clearDFA();
+	}
+}
@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.utility;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.tree.*;
+import org.junit.Test;
+
+import dijkstra.lexparse.*;
+import dijkstra.lexparse.DijkstraParser.DijkstraTextContext;
+
+/**
+ * Checks that incremental reparsing gives the same trees and tokens as parsing
+ * each version from scratch, and that it keeps the items an edit did not touch.
+ */
+public class IncrementalParserTest
+{
+	private static final String PROGRAM = "program edits\n"
+			+ "int a, b;\n"
+			+ "fun twice(int x) : int { return x * 2; }\n"
+			+ "proc show(int x) {\n"
+			+ "  print x;\n"
+			+ "}\n"
+			+ "a <- 1;\n"
+			+ "b <- twice(a) + 3;  # comment\n"
+			+ "if a < b :: show(a) b <= a :: show(b) fi\n"
+			+ "proc last() { print a + b }\n"
+			+ "last()\n";
+
+	private final IncrementalParser parser = new IncrementalParser();
+	private String current = null;
+
+	@Test
+	public void editInsideOneProcedureReparsesOnlyNearIt()
+	{
+		DijkstraTextContext before = parse(PROGRAM);
+		ParseTree firstItem = before.program().getChild(2);
+		ParseTree lastItem = before.program().getChild(before.program().getChildCount() - 1);
+		DijkstraTextContext after = parse(PROGRAM.replace("print x;", "print x * x;"));
+		assertSame(before, after);
+		assertSame(firstItem, after.program().getChild(2));
+		assertSame(lastItem, after.program().getChild(after.program().getChildCount() - 1));
+		assertEquals(2, parser.getReparsed().size());
+	}
+
+	@Test
+	public void linesAndIndexesAfterTheEditMove()
+	{
+		parse(PROGRAM);
+		parse(PROGRAM.replace("print x;", "print x;\n\n  print x + 1;"));
+		parse(PROGRAM.replace("a <- 1;", "a <- 12345;"));
+		parse(PROGRAM.replace("a <- 1;\n", ""));
+	}
+
+	@Test
+	public void editsAtTheEnds()
+	{
+		parse(PROGRAM);
+		parse(PROGRAM + "print b\n");
+		parse("# header comment\n" + PROGRAM + "print b\n");
+		parse(PROGRAM.replace("program edits", "program renamed"));
+		parse(PROGRAM.substring(0, PROGRAM.indexOf("last()\n")) + "show(b)");
+	}
+
+	@Test
+	public void tokensThatMergeAcrossItems()
+	{
+		parse("program p\nx <- 1\ny <- 2\nprint x\n");
+		parse("program p\nx <- 1y <- 2\nprint x\n");
+		parse("program p\nx <- 1 # y <- 2\nprint x\n");
+		parse("program p\nx <- 1\ny <- 2\nprint x\n");
+	}
+
+	@Test
+	public void unchangedTextKeepsTheTree()
+	{
+		DijkstraTextContext before = parse(PROGRAM);
+		assertSame(before, parse(PROGRAM));
+		assertTrue(parser.getReparsed().isEmpty());
+	}
+
+	@Test
+	public void itemsAfterTheEditKeepTheirTokens()
+	{
+		DijkstraTextContext before = parse(PROGRAM);
+		Token last = before.program().getStop();
+		int line = last.getLine();
+		int start = last.getStartIndex();
+		parse(PROGRAM.replace("a <- 1;", "a <- 1;\nb <- 2;"));
+		assertSame(last, before.program().getStop());
+		assertEquals(line + 1, last.getLine());
+		assertEquals(start + 8, last.getStartIndex());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void editThatDoesNotFitTheTextIsRejected()
+	{
+		parse(PROGRAM);
+		parser.edit(PROGRAM.toCharArray(), PROGRAM.length(), 3, 1, 2);
+	}
+
+	@Test
+	public void syntaxErrorsAreReportedAsByAFullParse()
+	{
+		parse(PROGRAM);
+		String broken = PROGRAM.replace("a <- 1;", "a <- 1 + ;");
+		String expected = null;
+		try {
+			DijkstraFactory.parse(new ANTLRInputStream(broken));
+		} catch (DijkstraParserException e) {
+			expected = e.getMessage();
+		}
+		assertNotNull(expected);
+		try {
+			parse(broken);
+			fail("expected a syntax error");
+		} catch (DijkstraParserException e) {
+			assertEquals(expected, e.getMessage());
+		}
+		parse(PROGRAM);
+	}
+
+	@Test
+	public void randomEditsOfTheSamples() throws Exception
+	{
+		String[] snippets = {"x", "1", " ", "\n", "+ 2", ";", "print y\n", "# note\n", "{", "}",
+				"int q;\n", "y <- 3\n", "(", ")", "fi", "::"};
+		Random random = new Random(7);
+		int partial = 0;
+		for (File file : new File("SamplePrograms").listFiles()) {
+			String text = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+			IncrementalParser incremental = new IncrementalParser();
+			incremental.parse(text.toCharArray(), text.length());
+			for (int edit = 0; edit < 200; edit++) {
+				int at = random.nextInt(text.length() + 1);
+				int removed = random.nextInt(Math.min(4, text.length() - at) + 1);
+				String inserted = random.nextBoolean() ? "" : snippets[random.nextInt(snippets.length)];
+				String edited = text.substring(0, at) + inserted + text.substring(at + removed);
+				if (parses(edited)) {
+					DijkstraTextContext tree = incremental.edit(edited.toCharArray(), edited.length(),
+							at, removed, inserted.length());
+					assertSameAsFullParse(edited, tree);
+					if (incremental.getReparsed().size() < tree.program().getChildCount() - 2) {
+						partial++;
+					}
+					text = edited;
+				}
+			}
+		}
+		assertTrue(partial > 0);
+	}
+
+	/**
+	 * Parse the first version, or hand the parser the one edit that turns the
+	 * last version into this one.
+	 */
+	private DijkstraTextContext parse(String text)
+	{
+		DijkstraTextContext tree;
+		if (current == null) {
+			tree = parser.parse(text.toCharArray(), text.length());
+		} else {
+			int limit = Math.min(current.length(), text.length());
+			int prefix = 0;
+			while (prefix < limit && current.charAt(prefix) == text.charAt(prefix)) {
+				prefix++;
+			}
+			int suffix = 0;
+			while (suffix < limit - prefix && current.charAt(current.length() - 1 - suffix)
+					== text.charAt(text.length() - 1 - suffix)) {
+				suffix++;
+			}
+			tree = parser.edit(text.toCharArray(), text.length(), prefix,
+					current.length() - prefix - suffix, text.length() - prefix - suffix);
+		}
+		current = text;
+		assertSameAsFullParse(text, tree);
+		return tree;
+	}
+
+	private static boolean parses(String text)
+	{
+		try {
+			DijkstraFactory.parse(new ANTLRInputStream(text));
+			return true;
+		} catch (DijkstraParserException e) {
+			return false;
+		}
+	}
+
+	private static void assertSameAsFullParse(String text, DijkstraTextContext tree)
+	{
+		DijkstraParser parser = DijkstraFactory.makeParser(new ANTLRInputStream(text));
+		DijkstraTextContext expected = DijkstraFactory.parse(new ANTLRInputStream(text));
+		assertEquals(expected.toStringTree(parser), tree.toStringTree(parser));
+		List<Token> expectedTokens = tokens(expected);
+		List<Token> actualTokens = tokens(tree);
+		assertEquals(expectedTokens.size(), actualTokens.size());
+		for (int i = 0; i < expectedTokens.size(); i++) {
+			Token e = expectedTokens.get(i);
+			Token a = actualTokens.get(i);
+			String where = " of " + e + " in \"" + text + "\"";
+			assertEquals("text" + where, e.getText(), a.getText());
+			assertEquals("index" + where, e.getTokenIndex(), a.getTokenIndex());
+			assertEquals("start" + where, e.getStartIndex(), a.getStartIndex());
+			assertEquals("stop" + where, e.getStopIndex(), a.getStopIndex());
+			assertEquals("line" + where, e.getLine(), a.getLine());
+			assertEquals("column" + where, e.getCharPositionInLine(), a.getCharPositionInLine());
+		}
+		assertParents(tree);
+	}
+
+	private static List<Token> tokens(ParseTree tree)
+	{
+		List<Token> tokens = new ArrayList<Token>();
+		for (ParseTree node : Trees.getDescendants(tree)) {
+			if (node instanceof TerminalNode) {
+				tokens.add(((TerminalNode) node).getSymbol());
+			}
+		}
+		return tokens;
+	}
+
+	private static void assertParents(ParseTree tree)
+	{
+		for (int i = 0; i < tree.getChildCount(); i++) {
+			assertSame(tree, tree.getChild(i).getParent());
+			assertParents(tree.getChild(i));
+		}
+	}
+}
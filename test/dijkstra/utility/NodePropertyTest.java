@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.utility;
+
+import static org.junit.Assert.*;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.junit.Test;
+
+import dijkstra.lexparse.DijkstraParser.*;
+
+/**
+ * Checks that the array backed annotations behave like a ParseTreeProperty.
+ */
+public class NodePropertyTest
+{
+	private final NodeIds ids = new NodeIds();
+
+	@Test
+	public void rulesAndTerminalsKeepTheirValues()
+	{
+		DijkstraTextContext tree = DijkstraFactory.parse(new ANTLRInputStream("program p x <- 1; print x"));
+		NodeProperty<String> names = new NodeProperty<String>(ids);
+		names.put(tree, "text");
+		names.put(tree.program(), "program");
+		names.put(tree.program().ID(), "id");
+		assertEquals("text", names.get(tree));
+		assertEquals("program", names.get(tree.program()));
+		assertEquals("id", names.get(tree.program().ID()));
+		assertNull(names.get(tree.EOF()));
+	}
+
+	@Test
+	public void propertiesShareNodeIds()
+	{
+		DijkstraTextContext tree = DijkstraFactory.parse(new ANTLRInputStream("program p print 1"));
+		NodeProperty<String> first = new NodeProperty<String>(ids);
+		NodeProperty<DijkstraType> second = new NodeProperty<DijkstraType>(ids);
+		first.put(tree.program(), "program");
+		assertNull(second.get(tree.program()));
+		second.put(tree.program(), DijkstraType.INT);
+		assertEquals(1, ids.size());
+		assertEquals("program", first.get(tree.program()));
+		assertEquals(DijkstraType.INT, second.get(tree.program()));
+	}
+
+	@Test
+	public void removeFromClearsTheValue()
+	{
+		DijkstraTextContext tree = DijkstraFactory.parse(new ANTLRInputStream("program p print 1"));
+		NodeProperty<String> names = new NodeProperty<String>(ids);
+		names.put(tree, "text");
+		assertEquals("text", names.removeFrom(tree));
+		assertNull(names.get(tree));
+	}
+
+	@Test
+	public void manyNodesGrowTheTable()
+	{
+		NodeProperty<Integer> numbers = new NodeProperty<Integer>(ids);
+		ProgramContext[] nodes = new ProgramContext[5000];
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i] = new ProgramContext(null, 0);
+			numbers.put(nodes[i], i);
+		}
+		for (int i = 0; i < nodes.length; i++) {
+			assertEquals(Integer.valueOf(i), numbers.get(nodes[i]));
+		}
+		assertEquals(nodes.length, ids.size());
+	}
+}
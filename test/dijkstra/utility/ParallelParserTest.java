@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.utility;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.tree.*;
+import org.junit.*;
+
+import dijkstra.lexparse.*;
+import dijkstra.lexparse.DijkstraParser.DijkstraTextContext;
+
+/**
+ * Checks that parsing chunks of a program on several threads gives the same
+ * tree and tokens as one parse.
+ */
+public class ParallelParserTest
+{
+	private ForkJoinPool pool;
+
+	@Before
+	public void setup()
+	{
+		pool = new ForkJoinPool(4);
+	}
+
+	@After
+	public void cleanup()
+	{
+		pool.shutdown();
+	}
+
+	@Test
+	public void samplesCutIntoTheSmallestChunks() throws Exception
+	{
+		for (File file : new File("SamplePrograms").listFiles()) {
+			String text = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+			assertSameAsOneParse(text, ParallelParser.parse(scan(text), pool, 1));
+		}
+	}
+
+	@Test
+	public void largeProgram()
+	{
+		String text = program(2000);
+		assertSameAsOneParse(text, ParallelParser.parse(text.toCharArray(), text.length(), pool));
+	}
+
+	@Test
+	public void procedureKeywordsInsideBracesDoNotCut()
+	{
+		String text = "program p\nproc a() { proc b() { } }\nint x;\nproc c() { x <- 1 }\nc()";
+		try {
+			ParallelParser.parse(scan(text), pool, 1);
+			fail("expected a syntax error");
+		} catch (DijkstraParserException e) {
+			assertEquals(errorOfOneParse(text), e.getMessage());
+		}
+	}
+
+	@Test
+	public void syntaxErrorsAreReportedAsByOneParse()
+	{
+		String text = program(50).replace("proc p40() {", "proc p40() { x <- ;");
+		try {
+			ParallelParser.parse(scan(text), pool, 10);
+			fail("expected a syntax error");
+		} catch (DijkstraParserException e) {
+			assertEquals(errorOfOneParse(text), e.getMessage());
+			assertTrue(e.getMessage(), e.getMessage().contains("line 111["));
+		}
+	}
+
+	private static String program(int procedures)
+	{
+		StringBuilder text = new StringBuilder("program big\nint x;\n");
+		for (int i = 0; i < procedures; i++) {
+			text.append("proc p" + i + "() {\n  x <- x + " + i + "; print x * 2 }\n");
+			if (i % 3 == 0) {
+				text.append("fun f" + i + "(int a) : int { return a - " + i + " }\np" + i + "()\n");
+			}
+		}
+		return text.append("print x\n").toString();
+	}
+
+	private static List<Token> scan(String text)
+	{
+		DijkstraScanner scanner = new DijkstraScanner(text.toCharArray(), text.length());
+		List<Token> tokens = new ArrayList<Token>();
+		Token token;
+		do {
+			token = scanner.nextToken();
+			tokens.add(token);
+		} while (token.getType() != Token.EOF);
+		return tokens;
+	}
+
+	private static String errorOfOneParse(String text)
+	{
+		try {
+			DijkstraFactory.parse(new ANTLRInputStream(text));
+		} catch (DijkstraParserException e) {
+			return e.getMessage();
+		}
+		fail("expected a syntax error");
+		return null;
+	}
+
+	private static void assertSameAsOneParse(String text, DijkstraTextContext tree)
+	{
+		DijkstraParser parser = DijkstraFactory.makeParser(new ANTLRInputStream(text));
+		DijkstraTextContext expected = DijkstraFactory.parse(new ANTLRInputStream(text));
+		assertEquals(expected.toStringTree(parser), tree.toStringTree(parser));
+		assertSame(tree.getStart(), tree.program().getStart());
+		assertEquals(expected.program().getStop().getTokenIndex(), tree.program().getStop().getTokenIndex());
+		assertEquals(Token.EOF, tree.getStop().getType());
+		List<Token> expectedTokens = tokens(expected);
+		List<Token> actualTokens = tokens(tree);
+		assertEquals(expectedTokens.size(), actualTokens.size());
+		for (int i = 0; i < expectedTokens.size(); i++) {
+			Token e = expectedTokens.get(i);
+			Token a = actualTokens.get(i);
+			assertEquals("index of " + e, e.getTokenIndex(), a.getTokenIndex());
+			assertEquals("start of " + e, e.getStartIndex(), a.getStartIndex());
+			assertEquals("line of " + e, e.getLine(), a.getLine());
+			assertEquals("column of " + e, e.getCharPositionInLine(), a.getCharPositionInLine());
+		}
+		assertParents(tree);
+	}
+
+	private static List<Token> tokens(ParseTree tree)
+	{
+		List<Token> tokens = new ArrayList<Token>();
+		for (ParseTree node : Trees.getDescendants(tree)) {
+			if (node instanceof TerminalNode) {
+				tokens.add(((TerminalNode) node).getSymbol());
+			}
+		}
+		return tokens;
+	}
+
+	private static void assertParents(ParseTree tree)
+	{
+		for (int i = 0; i < tree.getChildCount(); i++) {
+			assertSame(tree, tree.getChild(i).getParent());
+			assertParents(tree.getChild(i));
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.utility;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.junit.Test;
+
+import dijkstra.lexparse.*;
+
+/**
+ * Checks the parser decision profile and its report.
+ */
+public class ParserProfileTest
+{
+	@Test
+	public void profiledParseGivesTheSameTree() throws Exception
+	{
+		ParserProfile profile = new ParserProfile();
+		for (File file : new File("SamplePrograms").listFiles()) {
+			String text = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+			DijkstraParser parser = DijkstraFactory.makeParser(new ANTLRInputStream(text));
+			assertEquals(DijkstraFactory.parse(new ANTLRInputStream(text)).toStringTree(parser),
+					profile.parse(new DijkstraLexer(new ANTLRInputStream(text))).toStringTree(parser));
+		}
+		assertEquals(new File("SamplePrograms").listFiles().length, profile.getParses());
+	}
+
+	@Test
+	public void decisionsAreRankedByTime()
+	{
+		ParserProfile profile = profile("program p int a, b; a <- 1; b <- (a + 2) * -a; print a < b & b > 0;");
+		List<ParserProfile.Decision> decisions = profile.getDecisions();
+		assertFalse(decisions.isEmpty());
+		for (int i = 0; i < decisions.size(); i++) {
+			assertTrue(decisions.get(i).getInvocations() > 0);
+			if (i > 0) {
+				assertTrue(decisions.get(i - 1).getNanos() >= decisions.get(i).getNanos());
+			}
+		}
+	}
+
+	@Test
+	public void alternativesAreNamedFromTheGrammar()
+	{
+		ParserProfile profile = profile("program p x <- (a + b) * -c; if x > 1 :: print f(x) fi");
+		assertNotNull(find(profile, "expression", "LPAR expression RPAR"));
+		assertNotNull(find(profile, "expression", "SLASH | STAR"));
+		assertNotNull(find(profile, "statement", "assignStatement separator"));
+	}
+
+	@Test
+	public void syntaxErrorsAreStillCounted()
+	{
+		ParserProfile profile = new ParserProfile();
+		try {
+			profile.parse(new DijkstraLexer(new ANTLRInputStream("program p x <- 1 + ; print x")));
+			fail("expected a syntax error");
+		} catch (DijkstraParserException e) {
+			assertEquals(1, profile.getParses());
+		}
+	}
+
+	@Test
+	public void reportListsDecisions()
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		profile("program p print 1 + 2 * 3").print(new PrintStream(bytes));
+		String report = bytes.toString();
+		assertTrue(report.startsWith("Parser decisions by prediction time, 1 program,"));
+		assertTrue(report.contains(" expression #"));
+	}
+
+	private static ParserProfile profile(String text)
+	{
+		ParserProfile profile = new ParserProfile();
+		profile.parse(DijkstraFactory.makeScanner(text.toCharArray(), text.length()));
+		return profile;
+	}
+
+	/**
+	 * @return a decision of the rule with an alternative containing the text
+	 */
+	private static ParserProfile.Decision find(ParserProfile profile, String rule, String text)
+	{
+		for (ParserProfile.Decision decision : profile.getDecisions()) {
+			for (String alternative : decision.getAlternatives()) {
+				if (decision.getRule().equals(rule) && alternative.contains(text)) {
+					return decision;
+				}
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.utility;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.*;
+
+import org.antlr.v4.runtime.*;
+import org.junit.Test;
+
+import dijkstra.lexparse.*;
+import dijkstra.lexparse.DijkstraParser.*;
+
+/**
+ * Checks that the streaming parse hands over the same top-level nodes a whole
+ * program parse would produce.
+ */
+public class StreamingParseTest
+{
+	@Test
+	public void topLevelNodesArriveInOrder()
+	{
+		String text = "program p int x, y; x <- 1; proc q() { print x } y <- x + 2; print y";
+		List<String> streamed = new ArrayList<String>();
+		ProgramContext program = DijkstraFactory.parseStreaming(new StringReader(text),
+				ctx -> streamed.add(ctx.getText()));
+
+		List<String> whole = new ArrayList<String>();
+		ProgramContext expected = DijkstraFactory.parse(new ANTLRInputStream(text)).program();
+		for (int i = 2; i < expected.getChildCount(); i++) {
+			whole.add(expected.getChild(i).getText());
+		}
+		assertEquals(whole, streamed);
+		assertEquals("p", program.ID().getText());
+		assertEquals(2, program.getChildCount());
+	}
+
+	@Test
+	public void nodesAreDeclarationsOrStatements()
+	{
+		List<ParserRuleContext> streamed = new ArrayList<ParserRuleContext>();
+		DijkstraFactory.parseStreaming(new StringReader("program p boolean b; b <- true"), streamed::add);
+		assertEquals(2, streamed.size());
+		assertTrue(streamed.get(0) instanceof DeclarationContext);
+		assertTrue(streamed.get(1) instanceof StatementContext);
+	}
+
+	@Test(expected=DijkstraParserException.class)
+	public void syntaxErrorsAreReported()
+	{
+		DijkstraFactory.parseStreaming(new StringReader("program p x <- 1 + ; print x"), ctx -> { });
+	}
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Gary F. Pollice
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Used in CS4533/CS544 at Worcester Polytechnic Institute
+ *******************************************************************************/
+
+package dijkstra.utility;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.antlr.v4.runtime.*;
+import org.junit.Test;
+
+import dijkstra.lexparse.*;
+
+/**
+ * Checks that the SLL-then-LL parse gives the same trees and errors as a full
+ * LL parse.
+ */
+public class TwoStageParseTest
+{
+	@Test
+	public void samplesParseToTheSameTree() throws Exception
+	{
+		for (File file : new File("SamplePrograms").listFiles()) {
+			String text = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+			assertSameTree(text);
+		}
+	}
+	
+	@Test
+	public void expressionsParseToTheSameTree()
+	{
+		assertSameTree("program p x <- (a + b) * -c / d mod 2 > 3 = ~(e | f & g) ; print f(x, a[1 + 2]);");
+	}
+	
+	@Test
+	public void otherStartRules()
+	{
+		ParserRuleContext tree = DijkstraFactory.parse(new ANTLRInputStream("a < b + 1"), 
+				DijkstraParser::expression);
+		assertEquals("a<b+1", tree.getText());
+	}
+	
+	@Test
+	public void syntaxErrorsMatchFullParse()
+	{
+		String text = "program p x <- 1 + ; print x";
+		String expected = null;
+		try {
+			DijkstraFactory.makeParser(new ANTLRInputStream(text)).dijkstraText();
+			fail("expected a syntax error");
+		} catch (DijkstraParserException e) {
+			expected = e.getMessage();
+		}
+		try {
+			DijkstraFactory.parse(new ANTLRInputStream(text));
+			fail("expected a syntax error");
+		} catch (DijkstraParserException e) {
+			assertEquals(expected, e.getMessage());
+		}
+	}
+	
+	private static void assertSameTree(String text)
+	{
+		DijkstraParser parser = DijkstraFactory.makeParser(new ANTLRInputStream(text));
+		String expected = parser.dijkstraText().toStringTree(parser);
+		assertEquals(expected, DijkstraFactory.parse(new ANTLRInputStream(text)).toStringTree(parser));
+	}
+}